@@ -0,0 +1,109 @@
+package lsi.ubu.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import lsi.ubu.util.EjecutorScript;
+
+/**
+ * Data source de una base de datos H2 en memoria en modo Oracle, creada con
+ * sql/alquiler_coches_h2.sql (con EjecutorScript) al construirlo. Sirve para que
+ * los benchmarks no dependan de un servidor Oracle.
+ * <p>
+ * No es un pool: cada getConnection abre una conexion nueva. Benchmarks pone
+ * delante el pool de H2 con getUrl antes de pasarlo a
+ * PoolDeConexiones.inicializar. El driver de H2 debe estar en el classpath.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class BaseDatosEmbebida implements DataSource {
+
+	public static final String SCRIPT = "sql/alquiler_coches_h2.sql";
+
+	private final String url;
+	private int timeoutLogin;
+	private PrintWriter logWriter;
+
+	public BaseDatosEmbebida(String nombre) throws SQLException {
+		// DB_CLOSE_DELAY=-1 mantiene la base de datos viva entre conexiones
+		this.url = "jdbc:h2:mem:" + nombre + ";MODE=Oracle;DB_CLOSE_DELAY=-1";
+		Connection con = getConnection();
+		try {
+			con.setAutoCommit(false);
+			Reader script = new InputStreamReader(new FileInputStream(SCRIPT), StandardCharsets.UTF_8);
+			try {
+				EjecutorScript.ejecutar(con, script, SCRIPT);
+			} finally {
+				script.close();
+			}
+		} catch (IOException e) {
+			throw new SQLException("No se puede leer el script " + SCRIPT, e);
+		} finally {
+			con.close();
+		}
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return DriverManager.getConnection(url, "sa", "");
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return DriverManager.getConnection(url, username, password);
+	}
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return logWriter;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) {
+		this.logWriter = out;
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) {
+		this.timeoutLogin = seconds;
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return timeoutLogin;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("No es un " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) {
+		return iface.isInstance(this);
+	}
+}
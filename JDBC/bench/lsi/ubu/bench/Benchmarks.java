@@ -0,0 +1,279 @@
+package lsi.ubu.bench;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.Misc;
+import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.servicios.BackendAlquilerJDBC;
+import lsi.ubu.servicios.OperacionesFactura;
+import lsi.ubu.servicios.SentenciasAlquiler;
+import lsi.ubu.servicios.Servicio;
+import lsi.ubu.servicios.ServicioImpl;
+import lsi.ubu.util.PoolDeConexiones;
+
+/**
+ * Benchmarks del camino de alquiler sobre una base de datos H2 embebida en modo
+ * Oracle: alquilar completo (backend JDBC, H2 no tiene PL/SQL) y, por
+ * separado, sacar una conexion del pool, la consulta de solapes, el calculo de
+ * la factura con BigDecimal y las fechas de Misc. PoolDeConexiones va sobre el
+ * pool de conexiones de H2 (JdbcConnectionPool), asi que pool.getConnection
+ * mide un prestamo de verdad: sacar una conexion abierta y prepararla, no abrir
+ * una sesion nueva.
+ * <p>
+ * Se lanza con su main desde el directorio del proyecto, con el driver de H2 en
+ * el classpath. Los argumentos, si los hay, filtran los benchmarks cuyo nombre
+ * los contenga. Propiedades de sistema:
+ * <ul>
+ * <li>bench.calentamiento y bench.medicion: segundos de cada fase (5 y 10)</li>
+ * <li>bench.hilos: hilos que ejecutan cada operacion a la vez (1)</li>
+ * <li>bench.resultados: fichero CSV donde guardar los resultados</li>
+ * <li>bench.referencia: CSV de una ejecucion anterior; si alguna operacion baja
+ * mas de bench.tolerancia por ciento (10) de operaciones por segundo, se
+ * informa y el proceso termina con codigo 1</li>
+ * </ul>
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class Benchmarks {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Benchmarks.class);
+
+	private static final String[] MATRICULAS = { "1234-ABC", "1111-ABC", "2222-ABC" };
+	private static final String[] CLIENTES = { "12345678A", "11111111B" };
+
+	private static final long UN_DIA = TimeUnit.DAYS.toMillis(1);
+
+	public static void main(String[] args) throws Exception {
+		int hilos = Integer.getInteger("bench.hilos", 1);
+
+		// Crea el esquema; las conexiones las da el pool de H2, con al menos una por hilo. El dialecto (H2) se detecta
+		// al inicializar PoolDeConexiones
+		BaseDatosEmbebida baseDatos = new BaseDatosEmbebida("alquiler");
+		JdbcConnectionPool poolH2 = JdbcConnectionPool.create(baseDatos.getUrl(), "sa", "");
+		poolH2.setMaxConnections(Math.max(10, hilos));
+		PoolDeConexiones.inicializar(poolH2);
+
+		Medidor medidor = new Medidor(Integer.getInteger("bench.calentamiento", 5),
+				Integer.getInteger("bench.medicion", 10), TimeUnit.SECONDS, hilos);
+
+		List<Medidor.Resultado> resultados = new ArrayList<Medidor.Resultado>();
+		for (Map.Entry<String, Medidor.Operacion> benchmark : benchmarks().entrySet()) {
+			if (seleccionado(benchmark.getKey(), args)) {
+				Medidor.Resultado resultado = medidor.medir(benchmark.getKey(), benchmark.getValue());
+				LOGGER.info(resultado.toString());
+				resultados.add(resultado);
+			}
+		}
+
+		String ficheroResultados = System.getProperty("bench.resultados");
+		if (ficheroResultados != null) {
+			guardar(resultados, ficheroResultados);
+		}
+		String ficheroReferencia = System.getProperty("bench.referencia");
+		if (ficheroReferencia != null
+				&& !comparar(resultados, ficheroReferencia, Integer.getInteger("bench.tolerancia", 10))) {
+			System.exit(1);
+		}
+	}
+
+	// Benchmarks en orden de ejecucion
+	private static Map<String, Medidor.Operacion> benchmarks() {
+		Map<String, Medidor.Operacion> benchmarks = new LinkedHashMap<String, Medidor.Operacion>();
+
+		final Servicio servicio = new ServicioImpl(new BackendAlquilerJDBC());
+		// Cada alquiler ocupa el dia siguiente libre de uno de los vehiculos, asi nunca solapan
+		final AtomicLong alquileres = new AtomicLong();
+		final long inicio = Misc.truncDate(new Date()).getTime();
+		benchmarks.put("alquilar", new Medidor.Operacion() {
+			@Override
+			public Object ejecutar() throws Exception {
+				long n = alquileres.getAndIncrement();
+				Date fechaIni = new Date(inicio + (n / MATRICULAS.length) * UN_DIA);
+				servicio.alquilar(CLIENTES[(int) (n % CLIENTES.length)], MATRICULAS[(int) (n % MATRICULAS.length)],
+						fechaIni, new Date(fechaIni.getTime() + UN_DIA));
+				return fechaIni;
+			}
+		});
+
+		// El mismo vehiculo y dia siempre: la primera vez se reserva y el resto son rechazos por vehiculo ocupado
+		final Date fechaOcupada = new Date(inicio - 1000 * UN_DIA);
+		benchmarks.put("alquilar.rechazado", new Medidor.Operacion() {
+			@Override
+			public Object ejecutar() throws Exception {
+				try {
+					return servicio.alquilar(CLIENTES[0], MATRICULAS[0], fechaOcupada,
+							new Date(fechaOcupada.getTime() + UN_DIA));
+				} catch (AlquilerCochesException e) {
+					return e;
+				}
+			}
+		});
+
+		benchmarks.put("pool.getConnection", new Medidor.Operacion() {
+			@Override
+			public Object ejecutar() throws Exception {
+				Connection con = PoolDeConexiones.getInstance().getConnection();
+				con.close();
+				return con;
+			}
+		});
+
+		final Date fechaIni = Misc.getCurrentDate();
+		final Date fechaFin = Misc.addDays(fechaIni, 2);
+		benchmarks.put("consulta.solapes", new Medidor.Operacion() {
+			@Override
+			public Object ejecutar() throws Exception {
+				Connection con = PoolDeConexiones.getInstance().getConnection();
+				try {
+					PreparedStatement st = con.prepareStatement(SentenciasAlquiler.RESERVAS_SOLAPADAS.getSql());
+					try {
+						st.setString(1, MATRICULAS[0]);
+						st.setDate(2, new java.sql.Date(fechaIni.getTime()));
+						st.setDate(3, new java.sql.Date(fechaFin.getTime()));
+						ResultSet rs = st.executeQuery();
+						boolean ocupado = rs.next();
+						rs.close();
+						return ocupado;
+					} finally {
+						st.close();
+					}
+				} finally {
+					con.close();
+				}
+			}
+		});
+
+		// Politica de precios frente al calculo con BigDecimal y concatenacion al que sustituye
+		benchmarks.put("factura.politica", new Medidor.Operacion() {
+			private long dias;
+
+			@Override
+			public Object ejecutar() {
+				return OperacionesFactura.calcular(1 + (dias++ & 15));
+			}
+		});
+
+		benchmarks.put("factura.bigdecimal", new Medidor.Operacion() {
+			private long dias;
+
+			@Override
+			public Object ejecutar() {
+				return OperacionesFactura.importeFacturaBigDecimal(1 + (dias++ & 15));
+			}
+		});
+
+		benchmarks.put("factura.concatenacion", new Medidor.Operacion() {
+			private long dias;
+
+			@Override
+			public Object ejecutar() {
+				return OperacionesFactura.conceptosConcatenando(1 + (dias++ & 15));
+			}
+		});
+
+		final Date ahora = new Date();
+		benchmarks.put("misc.addDays", new Medidor.Operacion() {
+			@Override
+			public Object ejecutar() {
+				return Misc.addDays(ahora, 4);
+			}
+		});
+
+		benchmarks.put("misc.howManyDaysBetween", new Medidor.Operacion() {
+			@Override
+			public Object ejecutar() {
+				return Misc.howManyDaysBetween(fechaFin, ahora);
+			}
+		});
+
+		return benchmarks;
+	}
+
+	private static boolean seleccionado(String nombre, String[] filtros) {
+		if (filtros.length == 0) {
+			return true;
+		}
+		for (String filtro : filtros) {
+			if (nombre.contains(filtro)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// CSV: nombre;hilos;op/s;p50;p99;p999 (latencias en microsegundos)
+	private static void guardar(List<Medidor.Resultado> resultados, String fichero) throws IOException {
+		PrintWriter out = new PrintWriter(
+				new OutputStreamWriter(new FileOutputStream(fichero), StandardCharsets.UTF_8));
+		try {
+			out.println("nombre;hilos;ops;p50_us;p99_us;p999_us");
+			for (Medidor.Resultado r : resultados) {
+				out.println(String.format(Locale.ROOT, "%s;%d;%.1f;%.1f;%.1f;%.1f", r.getNombre(), r.getHilos(),
+						r.getOperacionesPorSegundo(), r.getLatencias().getPercentil(50, TimeUnit.MICROSECONDS),
+						r.getLatencias().getPercentil(99, TimeUnit.MICROSECONDS),
+						r.getLatencias().getPercentil(99.9, TimeUnit.MICROSECONDS)));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// Devuelve false si alguna operacion ha perdido mas de la tolerancia respecto a la referencia
+	private static boolean comparar(List<Medidor.Resultado> resultados, String fichero, int tolerancia)
+			throws IOException {
+		Map<String, Double> referencia = new HashMap<String, Double>();
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(fichero), StandardCharsets.UTF_8));
+		try {
+			in.readLine(); // cabecera
+			String linea;
+			while ((linea = in.readLine()) != null) {
+				String[] campos = linea.split(";");
+				referencia.put(campos[0] + "/" + campos[1], Double.valueOf(campos[2]));
+			}
+		} finally {
+			in.close();
+		}
+
+		boolean correcto = true;
+		for (Medidor.Resultado r : resultados) {
+			Double anterior = referencia.get(r.getNombre() + "/" + r.getHilos());
+			if (anterior == null) {
+				continue;
+			}
+			double cambio = 100 * (r.getOperacionesPorSegundo() - anterior) / anterior;
+			if (cambio < -tolerancia) {
+				LOGGER.info(String.format("MAL %s: %.1f op/s, %.1f%% menos que la referencia", r.getNombre(),
+						r.getOperacionesPorSegundo(), -cambio));
+				correcto = false;
+			} else {
+				LOGGER.info(String.format("OK %s: %+.1f%% respecto a la referencia", r.getNombre(), cambio));
+			}
+		}
+		return correcto;
+	}
+}
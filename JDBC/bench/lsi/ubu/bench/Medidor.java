@@ -0,0 +1,152 @@
+package lsi.ubu.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lsi.ubu.util.metricas.Histograma;
+
+/**
+ * Arnes de medida de los benchmarks: ejecuta una operacion en bucle desde uno
+ * o varios hilos, primero durante el calentamiento (para que el JIT compile el
+ * camino medido) y despues durante la medicion, registrando la latencia de cada
+ * ejecucion en un {@link Histograma}.
+ * <p>
+ * El resultado de cada ejecucion se guarda en un campo volatil para que el JIT
+ * no pueda eliminar la operacion como codigo muerto. Medir cada ejecucion cuesta
+ * un par de llamadas a System.nanoTime (unas decenas de nanosegundos), lo que
+ * hay que tener en cuenta en las operaciones mas cortas.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Medidor {
+
+	/**
+	 * Operacion a medir. Debe poder ejecutarse a la vez desde varios hilos si se
+	 * mide con mas de uno.
+	 */
+	public interface Operacion {
+		Object ejecutar() throws Exception;
+	}
+
+	/**
+	 * Resultado de medir una operacion.
+	 */
+	public static final class Resultado {
+		private final String nombre;
+		private final int hilos;
+		private final double segundos;
+		private final Histograma latencias;
+
+		Resultado(String nombre, int hilos, double segundos, Histograma latencias) {
+			this.nombre = nombre;
+			this.hilos = hilos;
+			this.segundos = segundos;
+			this.latencias = latencias;
+		}
+
+		public String getNombre() {
+			return nombre;
+		}
+
+		public int getHilos() {
+			return hilos;
+		}
+
+		public long getOperaciones() {
+			return latencias.getTotal();
+		}
+
+		public double getOperacionesPorSegundo() {
+			return latencias.getTotal() / segundos;
+		}
+
+		public Histograma getLatencias() {
+			return latencias;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-28s %2d hilos %12.1f op/s  %s", nombre, hilos, getOperacionesPorSegundo(),
+					latencias.resumen());
+		}
+	}
+
+	private final long calentamientoNanos;
+	private final long medicionNanos;
+	private final int hilos;
+
+	private volatile Object sumidero;
+
+	public Medidor(long calentamiento, long medicion, TimeUnit unidad, int hilos) {
+		if (hilos < 1) {
+			throw new IllegalArgumentException("Numero de hilos no valido: " + hilos);
+		}
+		this.calentamientoNanos = unidad.toNanos(calentamiento);
+		this.medicionNanos = unidad.toNanos(medicion);
+		this.hilos = hilos;
+	}
+
+	/**
+	 * Calienta y mide la operacion.
+	 *
+	 * @param nombre    nombre del benchmark
+	 * @param operacion operacion a medir
+	 * @return resultado de la medicion
+	 * @throws Exception la primera excepcion lanzada por la operacion
+	 */
+	public Resultado medir(String nombre, final Operacion operacion) throws Exception {
+		final Histograma calentamiento = new Histograma();
+		final Histograma medicion = new Histograma();
+		// Todos los hilos empiezan y terminan cada fase a la vez
+		final CyclicBarrier barrera = new CyclicBarrier(hilos);
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+		List<Thread> trabajadores = new ArrayList<Thread>(hilos);
+		for (int i = 0; i < hilos; i++) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						barrera.await();
+						bucle(operacion, calentamiento, System.nanoTime() + calentamientoNanos, error);
+						barrera.await();
+						bucle(operacion, medicion, System.nanoTime() + medicionNanos, error);
+					} catch (Exception e) {
+						error.compareAndSet(null, e);
+						// Libera a los hilos que esperan en la barrera
+						barrera.reset();
+					}
+				}
+			}, "bench-" + nombre + "-" + i);
+			trabajadores.add(t);
+		}
+
+		for (Thread t : trabajadores) {
+			t.start();
+		}
+		for (Thread t : trabajadores) {
+			t.join();
+		}
+
+		if (error.get() != null) {
+			throw error.get();
+		}
+		return new Resultado(nombre, hilos, medicionNanos / 1e9, medicion);
+	}
+
+	private void bucle(Operacion operacion, Histograma latencias, long fin, AtomicReference<Exception> error)
+			throws Exception {
+		long ahora = System.nanoTime();
+		while (ahora < fin && error.get() == null) {
+			Object valor = operacion.ejecutar();
+			long despues = System.nanoTime();
+			latencias.registrar(despues - ahora);
+			sumidero = valor;
+			ahora = despues;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+
+/**
+ * Acceso para los benchmarks al calculo de la factura, que es de paquete: la
+ * politica de precios estandar y, como referencia, el calculo con BigDecimal
+ * que hacia antes alquilar, con los datos del primer modelo de inicializa_test.
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public final class OperacionesFactura {
+
+	private static final DatosFacturacion DATOS = new DatosFacturacion(1, new BigDecimal("15"), 50, "Gasolina",
+			new BigDecimal("1.5"));
+
+	private static final ThreadLocal<LineasFactura> LINEAS = new ThreadLocal<LineasFactura>() {
+		@Override
+		protected LineasFactura initialValue() {
+			return new LineasFactura();
+		}
+	};
+
+	private OperacionesFactura() {
+	}
+
+	// Importes y conceptos con CalculadoraPrecios sobre unas lineas reutilizadas
+	public static long calcular(long dias) {
+		LineasFactura lineas = LINEAS.get();
+		CalculadoraPrecios.getInstance().calcular(DATOS, dias, lineas);
+		return lineas.getCentimosTotal();
+	}
+
+	public static BigDecimal importeFacturaBigDecimal(long dias) {
+		return DATOS.getPrecioDia().multiply(new BigDecimal(dias))
+				.add(DATOS.getPrecioLitro().multiply(new BigDecimal(DATOS.getCapacidadDeposito())));
+	}
+
+	public static String conceptosConcatenando(long dias) {
+		return dias + " dias de alquiler, vehiculo modelo " + DATOS.getIdModelo() + "   " + "Deposito lleno de "
+				+ DATOS.getCapacidadDeposito() + " litros de " + DATOS.getTipoCombustible() + " ";
+	}
+}
@@ -49,6 +49,12 @@ create table reservas(
 	check (fecha_fin >= fecha_ini)
 );
 
+--Comprobacion de disponibilidad: una reserva ocupa [fecha_ini, fecha_fin), y si no tiene fecha_fin los 4 dias
+--que se facturan por defecto. Con el fin efectivo en segunda posicion, la busqueda "fin > inicio pedido" solo
+--recorre las reservas del vehiculo que aun no han terminado, por muchas reservas pasadas que tenga.
+--El 4 tiene que coincidir con ServicioImpl.DIAS_DE_ALQUILER: si no, las consultas no usan el indice.
+create index reservas_disponibilidad on reservas(matricula, nvl(fecha_fin, fecha_ini + 4), fecha_ini);
+
 create sequence seq_num_fact;
 create table facturas(
 	nroFactura	integer primary key,
@@ -62,6 +68,11 @@ create table lineas_factura(
 	importe		numeric( 7, 2),
 	primary key ( nroFactura, concepto)
 );
+
+--Consultas por cliente (reservasCliente y facturasCliente): paginan por clave, asi que con la clave detras del
+--cliente el indice da las filas de la pagina ya ordenadas y la consulta para al llenarla.
+create index reservas_cliente on reservas(cliente, idReserva);
+create index facturas_cliente on facturas(cliente, nroFactura);
 	
 
 create or replace procedure reset_seq( p_seq_name varchar )
@@ -87,6 +98,114 @@ begin
 end;
 /
 
+create or replace procedure alquilar_vehiculo(
+	p_cliente	varchar,
+	p_matricula	varchar,
+	p_fecha_ini	date,
+	p_fecha_fin	date,		--Se guarda tal cual en la reserva (puede ser null)
+	p_fecha_fin_alq	date,		--Fin efectivo para comprobar la disponibilidad
+	p_dias		integer,
+	p_bloquear	integer,	--1 para bloquear la fila del vehiculo hasta el commit (ControlConcurrencia.BLOQUEO_FILA)
+	p_id_reserva	out integer,
+	p_nro_factura	out integer,
+	p_importe_alquiler	out numeric,
+	p_importe_combustible	out numeric,
+	--Datos para facturar que ya tiene CacheDatosReferencia: si llegan, no se consultan vehiculos, modelos ni
+	--precio_combustible, y si el vehiculo ya no existe lo detecta la clave ajena de reservas
+	p_id_modelo	integer default null,
+	p_precio_dia	numeric default null,
+	p_capacidad	integer default null,
+	p_combustible	varchar default null,
+	p_precio_litro	numeric default null
+)
+--Alquiler completo en un solo viaje: los errores de negocio se lanzan como -20000 - codigo de AlquilerCochesException
+is
+	v_id_modelo		modelos.id_modelo%type;
+	v_precio_dia		modelos.precio_cada_dia%type;
+	v_capacidad		modelos.capacidad_deposito%type;
+	v_combustible		modelos.tipo_combustible%type;
+	v_precio_litro		precio_combustible.precio_por_litro%type;
+	v_importe_alquiler	lineas_factura.importe%type;
+	v_importe_combustible	lineas_factura.importe%type;
+	v_existe		integer;
+	v_bloqueado		vehiculos.matricula%type;
+begin
+	--Primero el vehiculo y luego el cliente, igual que en el backend JDBC
+	if p_id_modelo is not null then
+		v_id_modelo := p_id_modelo;
+		v_precio_dia := p_precio_dia;
+		v_capacidad := p_capacidad;
+		v_combustible := p_combustible;
+		v_precio_litro := p_precio_litro;
+	else
+		begin
+			select m.id_modelo, m.precio_cada_dia, m.capacidad_deposito, m.tipo_combustible, pc.precio_por_litro
+			into v_id_modelo, v_precio_dia, v_capacidad, v_combustible, v_precio_litro
+			from vehiculos v join modelos m on v.id_modelo = m.id_modelo
+			join precio_combustible pc on m.tipo_combustible = pc.tipo_combustible
+			where v.matricula = p_matricula;
+		exception
+			when no_data_found then
+				raise_application_error(-20002, 'Vehiculo inexistente');
+		end;
+	end if;
+
+	select count(*) into v_existe from clientes where NIF = p_cliente;
+	if v_existe = 0 then
+		raise_application_error(-20001, 'Cliente inexistente');
+	end if;
+
+	--Los alquileres del mismo vehiculo esperan aqui al commit del anterior, asi ven su reserva al comprobar el solape
+	if p_bloquear = 1 then
+		begin
+			select matricula into v_bloqueado from vehiculos where matricula = p_matricula for update;
+		exception
+			when no_data_found then
+				raise_application_error(-20002, 'Vehiculo inexistente');
+		end;
+	end if;
+
+	--Solape de intervalos semiabiertos [fecha_ini, fecha_fin), como en SentenciasAlquiler.RESERVAS_SOLAPADAS
+	--(el 4 tiene que coincidir con ServicioImpl.DIAS_DE_ALQUILER y con el indice reservas_disponibilidad)
+	select count(*) into v_existe from reservas
+	where matricula = p_matricula
+		and nvl(fecha_fin, fecha_ini + 4) > p_fecha_ini
+		and fecha_ini < p_fecha_fin_alq
+		and rownum = 1;
+	if v_existe > 0 then
+		raise_application_error(-20004, 'El vehiculo no esta disponible');
+	end if;
+
+	--El cliente ya se ha comprobado: si falla la clave ajena es la del vehiculo (datos de la cache obsoletos)
+	begin
+		insert into reservas (idReserva, cliente, matricula, fecha_ini, fecha_fin)
+		values (seq_reservas.nextval, p_cliente, p_matricula, p_fecha_ini, p_fecha_fin)
+		returning idReserva into p_id_reserva;
+	exception
+		when others then
+			if sqlcode = -2291 then
+				raise_application_error(-20002, 'Vehiculo inexistente');
+			end if;
+			raise;
+	end;
+
+	v_importe_alquiler := v_precio_dia * p_dias;
+	v_importe_combustible := v_precio_litro * v_capacidad;
+
+	insert into facturas (nroFactura, importe, cliente)
+	values (seq_num_fact.nextval, v_importe_alquiler + v_importe_combustible, p_cliente)
+	returning nroFactura into p_nro_factura;
+
+	insert into lineas_factura (nroFactura, concepto, importe)
+	values (p_nro_factura, p_dias || ' dias de alquiler, vehiculo modelo ' || v_id_modelo || '   ', v_importe_alquiler);
+	insert into lineas_factura (nroFactura, concepto, importe)
+	values (p_nro_factura, 'Deposito lleno de ' || v_capacidad || ' litros de ' || v_combustible || ' ', v_importe_combustible);
+
+	p_importe_alquiler := v_importe_alquiler;
+	p_importe_combustible := v_importe_combustible;
+end;
+/
+
 create or replace procedure inicializa_test is
 begin
   	reset_seq( 'seq_modelos' );
@@ -0,0 +1,94 @@
+-- Esquema de alquiler_coches.sql para H2 en modo Oracle, con los datos de inicializa_test.
+-- Lo usan los benchmarks (bench/) sobre una base de datos embebida en memoria: no hay PL/SQL, asi que solo sirve
+-- con el backend JDBC, y el indice de disponibilidad no puede ser por expresion.
+-- Se puede volver a lanzar sobre una base de datos ya creada (DatosPrueba.cargarScript): primero borra lo que haya.
+
+drop sequence if exists seq_modelos;
+drop sequence if exists seq_num_fact;
+drop sequence if exists seq_reservas;
+
+drop table if exists lineas_factura cascade;
+drop table if exists facturas cascade;
+drop table if exists reservas cascade;
+drop table if exists vehiculos cascade;
+drop table if exists modelos cascade;
+drop table if exists clientes cascade;
+drop table if exists precio_combustible cascade;
+
+create table clientes(
+	NIF	varchar(9) primary key,
+	nombre	varchar(20) not null,
+	ape1	varchar(20) not null,
+	ape2	varchar(20) not null,
+	direccion varchar(40) 
+);
+
+create table precio_combustible(
+	tipo_combustible	varchar(10) primary key,
+	precio_por_litro	numeric(4,2) not null
+);
+
+create sequence seq_modelos;
+
+create table modelos(
+	id_modelo 		integer primary key,
+	nombre			varchar(30) not null,
+	precio_cada_dia 	numeric(6,2) not null check (precio_cada_dia>=0),
+	capacidad_deposito	integer not null check (capacidad_deposito>0),
+	tipo_combustible	varchar(10) not null references precio_combustible);
+
+create table vehiculos(
+	matricula	varchar(8)  primary key,
+	id_modelo	integer  not null references modelos,
+	color		varchar(10)
+);
+
+create sequence seq_reservas;
+create table reservas(
+	idReserva	integer primary key,
+	cliente  	varchar(9) references clientes,
+	matricula	varchar(8) references vehiculos,
+	fecha_ini	date not null,
+	fecha_fin	date,
+	check (fecha_fin >= fecha_ini)
+);
+
+-- Disponibilidad: H2 no admite indices sobre expresiones, asi que en lugar de nvl(fecha_fin, fecha_ini + 4) el
+-- indice lleva fecha_fin en la misma posicion que el de Oracle. Tiene todas las columnas de la consulta de solapes,
+-- asi que H2 la resuelve leyendo solo las entradas del vehiculo en el indice, sin ir a la tabla; lo que no puede es
+-- saltarse por el fin efectivo las reservas que ya han terminado.
+create index reservas_disponibilidad on reservas(matricula, fecha_fin, fecha_ini);
+
+create sequence seq_num_fact;
+create table facturas(
+	nroFactura	integer primary key,
+	importe		numeric( 8, 2),
+	cliente		varchar(9) not null references clientes
+);
+
+create table lineas_factura(
+	nroFactura	integer references facturas,
+	concepto	char(40),
+	importe		numeric( 7, 2),
+	primary key ( nroFactura, concepto)
+);
+
+-- Consultas por cliente (reservasCliente y facturasCliente): paginan por clave, asi que con la clave detras del
+-- cliente el indice da las filas de la pagina ya ordenadas y la consulta para al llenarla.
+create index reservas_cliente on reservas(cliente, idReserva);
+create index facturas_cliente on facturas(cliente, nroFactura);
+
+insert into clientes values ('12345678A', 'Pepe', 'Perez', 'Porras', 'C/Perezoso n1');
+insert into clientes values ('11111111B', 'Beatriz', 'Barbosa', 'Bernardez', 'C/Barriocanal n1');
+
+insert into precio_combustible values ('Gasolina', 1.5);
+insert into precio_combustible values ('Gasoil',   1.4);
+
+insert into modelos values ( seq_modelos.nextval, 'Renault Clio Gasolina', 15, 50, 'Gasolina');
+insert into vehiculos values ( '1234-ABC', seq_modelos.currval, 'VERDE');
+
+insert into modelos values ( seq_modelos.nextval, 'Renault Clio Gasoil', 16,   50, 'Gasoil');
+insert into vehiculos values ( '1111-ABC', seq_modelos.currval, 'VERDE');
+insert into vehiculos values ( '2222-ABC', seq_modelos.currval, 'GRIS');
+
+commit;
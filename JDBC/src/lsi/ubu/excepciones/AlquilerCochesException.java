@@ -21,6 +21,9 @@ public class AlquilerCochesException extends SQLException {
 	public static final int SIN_DIAS = 3;
 	public static final int VEHICULO_OCUPADO = 4;
 	
+	public static final String PROPIEDAD_TRAZA_PILA = "alquiler.excepciones.trazaPila";
+	private static final boolean TRAZA_PILA = Boolean.getBoolean(PROPIEDAD_TRAZA_PILA);
+	
 	private int codigo; // = -1;
 	private String mensaje;
 	
@@ -45,13 +48,22 @@ public class AlquilerCochesException extends SQLException {
 			break;
 		}
 		
-		LOGGER.debug(mensaje);
-		// Traza_de_pila
-		for (StackTraceElement ste : Thread.currentThread().getStackTrace()) {
-			LOGGER.debug(ste.toString());
+		// Traza de pila solo si se ha pedido: entonces la registra el propio logger
+		if (TRAZA_PILA && LOGGER.isDebugEnabled()) {
+			LOGGER.debug(mensaje, this);
 		}
 	}
 	
+	/**
+	 * Los rechazos de negocio (vehiculo ocupado, cliente inexistente...) son un resultado normal y frecuente del
+	 * alquiler, no un fallo del programa: por defecto no se captura la traza de pila, que es lo que mas cuesta de
+	 * crear una excepcion. Con la propiedad de sistema alquiler.excepciones.trazaPila=true se captura como siempre.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return TRAZA_PILA ? super.fillInStackTrace() : this;
+	}
+	
 	@Override
 	public String getMessage() { // Redefinicion del metodo de la clase Exception
 		return mensaje;
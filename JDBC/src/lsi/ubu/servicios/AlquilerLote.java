@@ -0,0 +1,406 @@
+package lsi.ubu.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.util.AsignadorIdentificadores;
+import lsi.ubu.util.PoolDeConexiones;
+import lsi.ubu.util.RegistroSentencias;
+
+/**
+ * AlquilerLote: implementación de Servicio.alquilarLote. Cada bloque de solicitudes se resuelve en una transacción:
+ * clientes, vehículos y reservas existentes se consultan de una vez para todo el bloque, las comprobaciones se hacen en
+ * memoria (incluidos los solapes entre solicitudes del mismo bloque) y las inserciones se envían con addBatch/executeBatch,
+ * con los identificadores ya asignados desde AsignadorIdentificadores.
+ * Si el envío del bloque falla, se deshace y sus solicitudes se reintentan una a una con el alquiler individual, de
+ * modo que una fila problemática no tumba la carga completa.
+ * @version 1.0
+ * @since 1.1
+ */
+final class AlquilerLote {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AlquilerLote.class);
+
+	// Huecos de las listas IN de las consultas por conjuntos (Oracle admite hasta 1000)
+	static final int MAX_PARAMETROS_IN = 100;
+
+	// Con BLOQUEO_LOCAL cada bloque tiene las franjas de CerrojosVehiculo de todos sus vehículos desde antes de pedir
+	// la conexión hasta el commit, y los alquileres individuales de esas franjas esperan detrás. Bloques más pequeños
+	// suponen más commits en la carga, pero con 50 vehículos se ocupa como mucho un 5% de las 1024 franjas y por poco
+	// tiempo.
+	static final int MAX_BLOQUE_LOCAL = 50;
+
+	private final ServicioImpl servicio;
+
+	AlquilerLote(ServicioImpl servicio) {
+		this.servicio = servicio;
+	}
+
+	// Solicitud del bloque con sus fechas ya calculadas
+	private static final class Pendiente {
+		final int posicion;
+		final SolicitudAlquiler solicitud;
+		final Date fechaIni;
+		final Date fechaFin;
+		final Date fechaFinAlq;
+		final long dias;
+
+		Pendiente(int posicion, SolicitudAlquiler solicitud, long dias) {
+			this.posicion = posicion;
+			this.solicitud = solicitud;
+			this.fechaIni = solicitud.getFechaIni();
+			this.fechaFin = solicitud.getFechaFin();
+			this.fechaFinAlq = ServicioImpl.calcularFechaFin(fechaIni, fechaFin);
+			this.dias = dias;
+		}
+	}
+
+	List<ResultadoAlquiler> alquilar(List<SolicitudAlquiler> solicitudes, int tamanoBloque) throws SQLException {
+		ResultadoAlquiler[] resultados = new ResultadoAlquiler[solicitudes.size()];
+		if (servicio.getControl() == ControlConcurrencia.BLOQUEO_LOCAL) {
+			tamanoBloque = Math.min(tamanoBloque, MAX_BLOQUE_LOCAL);
+		}
+
+		for (int desde = 0; desde < resultados.length; desde += tamanoBloque) {
+			int hasta = Math.min(resultados.length, desde + tamanoBloque);
+			if (!alquilarBloque(solicitudes, desde, hasta, resultados)) {
+				alquilarUnoAUno(solicitudes, desde, hasta, resultados);
+			}
+		}
+		return Arrays.asList(resultados);
+	}
+
+	// Devuelve false si el bloque se ha deshecho por un error de base de datos
+	private boolean alquilarBloque(List<SolicitudAlquiler> solicitudes, int desde, int hasta,
+			ResultadoAlquiler[] resultados) throws SQLException {
+		// Fechas: las solicitudes sin días se descartan sin ir a la base de datos
+		List<Pendiente> pendientes = new ArrayList<Pendiente>(hasta - desde);
+		for (int i = desde; i < hasta; i++) {
+			SolicitudAlquiler solicitud = solicitudes.get(i);
+			try {
+				long dias = ServicioImpl.calcularDias(solicitud.getFechaIni(), solicitud.getFechaFin());
+				pendientes.add(new Pendiente(i, solicitud, dias));
+			} catch (AlquilerCochesException e) {
+				resultados[i] = ResultadoAlquiler.erroneo(solicitud, e);
+			}
+		}
+		if (pendientes.isEmpty()) {
+			return true;
+		}
+
+		// Con BLOQUEO_LOCAL se bloquean a la vez todos los vehículos del bloque, antes de pedir la conexión
+		List<ReentrantLock> cerrojos = Collections.<ReentrantLock>emptyList();
+		if (servicio.getControl() == ControlConcurrencia.BLOQUEO_LOCAL) {
+			Set<String> matriculas = new HashSet<String>();
+			for (Pendiente p : pendientes) {
+				matriculas.add(p.solicitud.getMatricula());
+			}
+			cerrojos = CerrojosVehiculo.bloquear(matriculas);
+		}
+
+		Connection con = null;
+		RegistroSentencias sentencias = null;
+		try {
+			con = PoolDeConexiones.getInstance().getConnection();
+			sentencias = new RegistroSentencias(con);
+
+			Map<String, DatosFacturacion> vehiculos = new HashMap<String, DatosFacturacion>();
+			List<Pendiente> aceptados = validar(sentencias, pendientes, vehiculos, resultados);
+			if (!aceptados.isEmpty()) {
+				int[] nrosFactura = insertar(sentencias, aceptados, vehiculos);
+				con.commit();
+				IndiceDisponibilidad indice = IndiceDisponibilidad.getInstance();
+				for (int i = 0; i < aceptados.size(); i++) {
+					Pendiente p = aceptados.get(i);
+					indice.registrar(p.solicitud.getMatricula(), p.fechaIni, p.fechaFin);
+					resultados[p.posicion] = ResultadoAlquiler.correcto(p.solicitud, nrosFactura[i]);
+				}
+			}
+			return true;
+
+		} catch (SQLException e) {
+			if (con != null) con.rollback();
+			for (Pendiente p : pendientes) {
+				// Los rechazos de validar pueden deberse a reservas del mismo bloque que se acaban de deshacer
+				// (VEHICULO_OCUPADO por una solicitud anterior): todas las pendientes se reintentan desde cero
+				resultados[p.posicion] = null;
+				// Por si el fallo viene de datos obsoletos en la cache (p. ej. un vehículo borrado)
+				CacheDatosReferencia.getInstance().invalidarVehiculo(p.solicitud.getMatricula());
+			}
+			LOGGER.warn("Bloque de alquileres [{}, {}) deshecho, se reintenta uno a uno: {}", desde, hasta, e.getMessage());
+			return false;
+
+		} finally {
+			try {
+				if (sentencias != null) sentencias.close();
+			} finally {
+				try {
+					if (con != null) con.close();
+				} finally {
+					CerrojosVehiculo.liberar(cerrojos);
+				}
+			}
+		}
+	}
+
+	// Alternativa cuando falla el bloque: alquiler individual de las solicitudes que aún no tienen resultado (solo
+	// conservan el suyo las descartadas por fechas, que no dependen de la base de datos)
+	private void alquilarUnoAUno(List<SolicitudAlquiler> solicitudes, int desde, int hasta,
+			ResultadoAlquiler[] resultados) {
+		for (int i = desde; i < hasta; i++) {
+			if (resultados[i] != null) {
+				continue;
+			}
+			SolicitudAlquiler s = solicitudes.get(i);
+			try {
+				ReciboAlquiler recibo = servicio.alquilar(s.getNifCliente(), s.getMatricula(), s.getFechaIni(),
+						s.getFechaFin());
+				resultados[i] = ResultadoAlquiler.correcto(s, recibo.getNroFactura());
+			} catch (SQLException e) {
+				resultados[i] = ResultadoAlquiler.erroneo(s, e);
+			}
+		}
+	}
+
+	// Mismas comprobaciones y en el mismo orden que el alquiler individual: vehículo, cliente y disponibilidad
+	// Deja en vehiculos los datos de facturación de los vehículos existentes
+	private List<Pendiente> validar(RegistroSentencias sentencias, List<Pendiente> pendientes,
+			Map<String, DatosFacturacion> vehiculos, ResultadoAlquiler[] resultados) throws SQLException {
+		Set<String> matriculas = new HashSet<String>();
+		Set<String> nifs = new HashSet<String>();
+		long minIni = Long.MAX_VALUE;
+		long maxFin = Long.MIN_VALUE;
+		for (Pendiente p : pendientes) {
+			matriculas.add(p.solicitud.getMatricula());
+			nifs.add(p.solicitud.getNifCliente());
+			minIni = Math.min(minIni, p.fechaIni.getTime());
+			maxFin = Math.max(maxFin, p.fechaFinAlq.getTime());
+		}
+
+		cargarVehiculos(sentencias, matriculas, vehiculos);
+		Set<String> clientes = cargarClientes(sentencias, nifs);
+		if (servicio.getControl() == ControlConcurrencia.BLOQUEO_FILA) {
+			// Las reservas se leen ya con los vehículos bloqueados. Siempre en orden de matrícula, como las franjas de
+			// CerrojosVehiculo, para que dos lotes con vehículos comunes no se bloqueen en orden contrario
+			bloquearVehiculos(sentencias, new TreeSet<String>(vehiculos.keySet()));
+		}
+		Map<String, List<long[]>> ocupacion = cargarReservas(sentencias, vehiculos.keySet(), minIni, maxFin);
+
+		List<Pendiente> aceptados = new ArrayList<Pendiente>(pendientes.size());
+		for (Pendiente p : pendientes) {
+			String matricula = p.solicitud.getMatricula();
+			long ini = p.fechaIni.getTime();
+			long fin = p.fechaFinAlq.getTime();
+
+			if (!vehiculos.containsKey(matricula)) {
+				resultados[p.posicion] = ResultadoAlquiler.erroneo(p.solicitud,
+						new AlquilerCochesException(AlquilerCochesException.VEHICULO_NO_EXIST));
+			} else if (!clientes.contains(p.solicitud.getNifCliente())) {
+				resultados[p.posicion] = ResultadoAlquiler.erroneo(p.solicitud,
+						new AlquilerCochesException(AlquilerCochesException.CLIENTE_NO_EXIST));
+			} else if (solapa(ocupacion.get(matricula), ini, fin)) {
+				resultados[p.posicion] = ResultadoAlquiler.erroneo(p.solicitud,
+						new AlquilerCochesException(AlquilerCochesException.VEHICULO_OCUPADO));
+			} else {
+				// Las siguientes solicitudes del bloque ya ven esta reserva
+				List<long[]> intervalos = ocupacion.get(matricula);
+				if (intervalos == null) {
+					intervalos = new ArrayList<long[]>();
+					ocupacion.put(matricula, intervalos);
+				}
+				intervalos.add(new long[] { ini, fin });
+				aceptados.add(p);
+			}
+		}
+		return aceptados;
+	}
+
+	// Mismo criterio que RESERVAS_SOLAPADAS: intervalos semiabiertos [ini, fin) que se cortan
+	private static boolean solapa(List<long[]> intervalos, long ini, long fin) {
+		if (intervalos != null) {
+			for (long[] intervalo : intervalos) {
+				if (intervalo[0] < fin && intervalo[1] > ini) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private int[] insertar(RegistroSentencias sentencias, List<Pendiente> aceptados,
+			Map<String, DatosFacturacion> vehiculos) throws SQLException {
+		int n = aceptados.size();
+		long[] idsReserva = AsignadorIdentificadores.get(ServicioImpl.SECUENCIA_RESERVAS).siguientes(sentencias, n);
+		long[] nrosFactura = AsignadorIdentificadores.get(ServicioImpl.SECUENCIA_FACTURAS).siguientes(sentencias, n);
+
+		PreparedStatement stReservas = sentencias.get(SentenciasAlquiler.INSERTAR_RESERVA);
+		PreparedStatement stFacturas = sentencias.get(SentenciasAlquiler.INSERTAR_FACTURA);
+		PreparedStatement stLineas = sentencias.get(SentenciasAlquiler.INSERTAR_LINEA_FACTURA);
+		int[] resultado = new int[n];
+		// Las mismas líneas y búferes de concepto para todas las facturas del bloque
+		PoliticaPrecios politica = servicio.getPoliticaPrecios();
+		LineasFactura lineas = new LineasFactura();
+
+		for (int i = 0; i < n; i++) {
+			Pendiente p = aceptados.get(i);
+			String nif = p.solicitud.getNifCliente();
+			politica.calcular(vehiculos.get(p.solicitud.getMatricula()), p.dias, lineas);
+
+			stReservas.setLong(1, idsReserva[i]);
+			stReservas.setString(2, nif);
+			stReservas.setString(3, p.solicitud.getMatricula());
+			stReservas.setDate(4, new java.sql.Date(p.fechaIni.getTime()));
+			if (p.fechaFin != null) {
+				stReservas.setDate(5, new java.sql.Date(p.fechaFin.getTime()));
+			} else {
+				stReservas.setNull(5, Types.DATE);
+			}
+			stReservas.addBatch();
+
+			stFacturas.setLong(1, nrosFactura[i]);
+			stFacturas.setBigDecimal(2, lineas.getImporteTotal());
+			stFacturas.setString(3, nif);
+			stFacturas.addBatch();
+
+			stLineas.setLong(1, nrosFactura[i]);
+			stLineas.setString(2, lineas.getConceptoAlquiler());
+			stLineas.setBigDecimal(3, lineas.getImporteAlquiler());
+			stLineas.addBatch();
+			stLineas.setLong(1, nrosFactura[i]);
+			stLineas.setString(2, lineas.getConceptoCombustible());
+			stLineas.setBigDecimal(3, lineas.getImporteCombustible());
+			stLineas.addBatch();
+
+			resultado[i] = (int) nrosFactura[i];
+		}
+
+		// Las facturas antes que sus líneas por la clave ajena
+		stReservas.executeBatch();
+		stFacturas.executeBatch();
+		stLineas.executeBatch();
+		return resultado;
+	}
+
+	// Los vehículos que están en CacheDatosReferencia no se consultan; el resto se cargan y se guardan en ella
+	// (también lo usa Presupuestador)
+	static void cargarVehiculos(RegistroSentencias sentencias, Collection<String> matriculas,
+			Map<String, DatosFacturacion> vehiculos) throws SQLException {
+		CacheDatosReferencia cache = CacheDatosReferencia.getInstance();
+		List<String> desconocidos = new ArrayList<String>();
+		for (String matricula : matriculas) {
+			DatosFacturacion datos = cache.getDatosFacturacionSiPresente(matricula);
+			if (datos != null) {
+				vehiculos.put(matricula, datos);
+			} else {
+				desconocidos.add(matricula);
+			}
+		}
+
+		PreparedStatement st = sentencias.get(SentenciasAlquiler.DATOS_FACTURACION_LOTE);
+		Iterator<String> it = desconocidos.iterator();
+		while (it.hasNext()) {
+			asignarLista(st, 1, it);
+			ResultSet rs = st.executeQuery();
+			try {
+				while (rs.next()) {
+					DatosFacturacion datos = new DatosFacturacion(rs.getInt(6), rs.getBigDecimal(2), rs.getInt(3),
+							rs.getString(4), rs.getBigDecimal(5));
+					vehiculos.put(rs.getString(1), datos);
+					cache.registrar(rs.getString(1), datos);
+				}
+			} finally {
+				rs.close();
+			}
+		}
+	}
+
+	// Un vehículo por sentencia y en el orden de las matrículas. Con una lista IN ... FOR UPDATE las filas se
+	// bloquean en el orden del plan de ejecución (un recorrido completo o por hash no respeta el de la lista), así que
+	// dos lotes con vehículos comunes podrían bloquearse en orden contrario (ORA-00060). Cuesta un viaje por vehículo.
+	private static void bloquearVehiculos(RegistroSentencias sentencias, SortedSet<String> matriculas)
+			throws SQLException {
+		PreparedStatement st = sentencias.get(SentenciasAlquiler.BLOQUEAR_VEHICULO);
+		for (String matricula : matriculas) {
+			st.setString(1, matricula);
+			st.executeQuery().close();
+		}
+	}
+
+	private static Set<String> cargarClientes(RegistroSentencias sentencias, Collection<String> nifs)
+			throws SQLException {
+		Set<String> clientes = new HashSet<String>();
+		PreparedStatement st = sentencias.get(SentenciasAlquiler.CLIENTES_EXISTENTES);
+		Iterator<String> it = nifs.iterator();
+		while (it.hasNext()) {
+			asignarLista(st, 1, it);
+			ResultSet rs = st.executeQuery();
+			try {
+				while (rs.next()) {
+					clientes.add(rs.getString(1));
+				}
+			} finally {
+				rs.close();
+			}
+		}
+		return clientes;
+	}
+
+	// Intervalos [ini, fin) ya reservados de cada vehículo que cortan la ventana [minIni, maxFin)
+	private static Map<String, List<long[]>> cargarReservas(RegistroSentencias sentencias,
+			Collection<String> matriculas, long minIni, long maxFin) throws SQLException {
+		Map<String, List<long[]>> ocupacion = new HashMap<String, List<long[]>>();
+		PreparedStatement st = sentencias.get(SentenciasAlquiler.RESERVAS_LOTE);
+		Iterator<String> it = matriculas.iterator();
+		while (it.hasNext()) {
+			st.setDate(1, new java.sql.Date(minIni));
+			st.setDate(2, new java.sql.Date(maxFin));
+			asignarLista(st, 3, it);
+			ResultSet rs = st.executeQuery();
+			try {
+				while (rs.next()) {
+					String matricula = rs.getString(1);
+					List<long[]> intervalos = ocupacion.get(matricula);
+					if (intervalos == null) {
+						intervalos = new ArrayList<long[]>();
+						ocupacion.put(matricula, intervalos);
+					}
+					intervalos.add(new long[] { rs.getDate(2).getTime(), rs.getDate(3).getTime() });
+				}
+			} finally {
+				rs.close();
+			}
+		}
+		return ocupacion;
+	}
+
+	// Asigna a la lista IN hasta MAX_PARAMETROS_IN valores del iterador y rellena con NULL el resto
+	private static void asignarLista(PreparedStatement st, int primero, Iterator<String> valores) throws SQLException {
+		for (int i = 0; i < MAX_PARAMETROS_IN; i++) {
+			if (valores.hasNext()) {
+				st.setString(primero + i, valores.next());
+			} else {
+				st.setNull(primero + i, Types.VARCHAR);
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package lsi.ubu.servicios;
+
+import java.sql.SQLException;
+import java.util.Date;
+
+import lsi.ubu.util.RegistroSentencias;
+
+/**
+ * BackendAlquiler: estrategia de acceso a base de datos que ejecuta la parte transaccional del alquiler
+ * (comprobaciones, reserva, factura y líneas de factura) sobre una conexión ya abierta, preparando las sentencias
+ * a través del registro de esa conexión.
+ * La confirmación o deshacer de la transacción queda en manos de ServicioImpl.
+ * @version 1.0
+ * @since 1.1
+ */
+public interface BackendAlquiler {
+
+	/**
+	 * Realiza el alquiler sobre la conexión del registro indicado.
+	 * 
+	 * @param sentencias  registro de sentencias de la conexión con la transacción en curso
+	 * @param nifCliente  NIF del cliente
+	 * @param matricula   matrícula del vehículo
+	 * @param fechaIni    fecha de inicio del alquiler
+	 * @param fechaFin    fecha de fin tal y como se guarda en la reserva (puede ser nula)
+	 * @param fechaFinAlq fecha de fin efectiva para comprobar la disponibilidad
+	 * @param diasDiff    días a facturar
+	 * @param bloquear    si hay que bloquear la fila del vehículo antes de comprobar su disponibilidad
+	 *                    (ControlConcurrencia.BLOQUEO_FILA)
+	 * @return recibo con la reserva y la factura generadas
+	 * @throws SQLException si hay un error con la base de datos o una AlquilerCochesException
+	 */
+	ReciboAlquiler alquilar(RegistroSentencias sentencias, String nifCliente, String matricula, Date fechaIni, Date fechaFin,
+			Date fechaFinAlq, long diasDiff, boolean bloquear) throws SQLException;
+}
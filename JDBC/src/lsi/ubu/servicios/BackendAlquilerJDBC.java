@@ -0,0 +1,190 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.util.AsignadorIdentificadores;
+import lsi.ubu.util.RegistroSentencias;
+import lsi.ubu.util.exceptions.RegistroSGBDErrorUtil;
+import lsi.ubu.util.exceptions.SGBDError;
+
+/**
+ * BackendAlquilerJDBC: realiza el alquiler sentencia a sentencia con SQL estándar. Los números de reserva y factura
+ * salen de AsignadorIdentificadores y se insertan explícitamente, sin consultar currval después.
+ * Necesita varios viajes a la base de datos, pero no requiere procedimientos almacenados, por lo que sirve
+ * para bases de datos embebidas compatibles con Oracle.
+ * Las sentencias salen del registro de la conexión, que se encarga de reutilizarlas y cerrarlas.
+ * La existencia del vehículo y los datos para facturar se responden desde CacheDatosReferencia; a la base de datos
+ * solo van la comprobación del cliente, la de disponibilidad y las inserciones.
+ * @version 1.3
+ * @since 1.1
+ */
+public class BackendAlquilerJDBC implements BackendAlquiler {
+
+	private final CacheDatosReferencia cache;
+	private final PoliticaPrecios politica;
+	private final AsignadorIdentificadores idsReserva = AsignadorIdentificadores.get(ServicioImpl.SECUENCIA_RESERVAS);
+	private final AsignadorIdentificadores nrosFactura = AsignadorIdentificadores.get(ServicioImpl.SECUENCIA_FACTURAS);
+
+	// Líneas de factura libres para reutilizar: sus valores se pasan a JDBC y al recibo antes de devolverlas. No van
+	// por hilo porque ServicioAsincronoImpl usa un hilo virtual nuevo para cada alquiler. Si se vacía se crean más y
+	// si se llena se descartan, así que guarda como mucho MAX_LINEAS_LIBRES.
+	private static final int MAX_LINEAS_LIBRES = 64;
+	private static final BlockingQueue<LineasFactura> LINEAS_LIBRES = new ArrayBlockingQueue<LineasFactura>(
+			MAX_LINEAS_LIBRES);
+
+	public BackendAlquilerJDBC() {
+		this(CacheDatosReferencia.getInstance());
+	}
+
+	public BackendAlquilerJDBC(CacheDatosReferencia cache) {
+		this(cache, CalculadoraPrecios.getInstance());
+	}
+
+	public BackendAlquilerJDBC(CacheDatosReferencia cache, PoliticaPrecios politica) {
+		this.cache = cache;
+		this.politica = politica;
+	}
+
+	PoliticaPrecios getPoliticaPrecios() {
+		return politica;
+	}
+
+	@Override
+	public ReciboAlquiler alquilar(RegistroSentencias sentencias, String nifCliente, String matricula, Date fechaIni, Date fechaFin,
+			Date fechaFinAlq, long diasDiff, boolean bloquear) throws SQLException {
+		PreparedStatement st;
+		ResultSet rs = null;
+		LineasFactura lineas = null;
+		// Inicio de la etapa en curso para MetricasAlquiler
+		long inicio = MetricasAlquiler.inicio();
+
+		try {
+			/* Utilizamos programación defensiva para cada caso
+			* Para pasar todos los tests tal y como están, es importante que la comprobación 
+			* del vehículo vaya antes que la del cliente, ya que, en el caso del test de vehículo inexistente,
+			* el cliente también es inexistente.
+			* Si no existe la matrícula del vehículo, lanzamos excepción (la cache solo va a la base de datos si no lo conoce)
+			*/
+			DatosFacturacion datos = cache.getDatosFacturacion(sentencias, matricula);
+			MetricasAlquiler.registrar(EtapaAlquiler.VEHICULO, inicio);
+			if (datos == null) throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_NO_EXIST);
+			
+			// Bloqueamos el vehículo para que otro alquiler suyo no compruebe la disponibilidad hasta nuestro commit
+			if (bloquear) {
+				inicio = MetricasAlquiler.inicio();
+				st = sentencias.get(SentenciasAlquiler.BLOQUEAR_VEHICULO);
+				st.setString(1, matricula);
+				rs = st.executeQuery();
+				MetricasAlquiler.registrar(EtapaAlquiler.BLOQUEO_FILA, inicio);
+				if (!rs.next()) {
+					// La cache lo tenía obsoleto
+					cache.invalidarVehiculo(matricula);
+					throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_NO_EXIST);
+				}
+				rs.close();
+			}
+			
+			// Si no existe el NIF del cliente en la base de datos, lanzamos excepción
+			inicio = MetricasAlquiler.inicio();
+			st = sentencias.get(SentenciasAlquiler.EXISTE_CLIENTE);
+			st.setString(1, nifCliente);
+			rs = st.executeQuery();
+			MetricasAlquiler.registrar(EtapaAlquiler.CLIENTE, inicio);
+			if (!rs.next()) throw new AlquilerCochesException(AlquilerCochesException.CLIENTE_NO_EXIST);
+			rs.close();
+			
+			/* Verificar que el vehículo no está ocupado en las fechas solicitadas: ninguna reserva del vehículo puede
+			* empezar antes de que acabe el nuevo alquiler y terminar después de que empiece (intervalos semiabiertos,
+			* ver RESERVAS_SOLAPADAS)
+			*/
+			java.sql.Date sqlFechaIni = new java.sql.Date(fechaIni.getTime());
+			inicio = MetricasAlquiler.inicio();
+			st = sentencias.get(SentenciasAlquiler.RESERVAS_SOLAPADAS);
+			st.setString(1, matricula);
+			st.setDate(2, sqlFechaIni);
+			st.setDate(3, new java.sql.Date(fechaFinAlq.getTime()));
+			
+			// Si hay alguna reserva solapada, lanzamos excepción
+			rs = st.executeQuery();
+			MetricasAlquiler.registrar(EtapaAlquiler.SOLAPES, inicio);
+			if (rs.next()) throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_OCUPADO);
+			rs.close();
+			
+			// Insertamos nueva reserva (manejamos correctamente el caso de fechaFin nula)
+			inicio = MetricasAlquiler.inicio();
+			st = sentencias.get(SentenciasAlquiler.INSERTAR_RESERVA);
+			long idReserva = idsReserva.siguiente(sentencias);
+			st.setLong(1, idReserva);
+			st.setString(2, nifCliente);
+			st.setString(3, matricula);
+			st.setDate(4, sqlFechaIni);
+			
+			// Si fechaFin es null, establecemos el parámetro como NULL
+			if (fechaFin != null) {
+				st.setDate(5, new java.sql.Date(fechaFin.getTime()));
+			} else {
+				st.setNull(5, java.sql.Types.DATE);
+			}
+			
+			try {
+				st.executeUpdate();
+			} catch (SQLException e) {
+				// El cliente se acaba de comprobar, así que la clave ajena que falla es la del vehículo: la cache lo tenía obsoleto
+				if (RegistroSGBDErrorUtil.getInstance().checkExceptionToCode(e, SGBDError.FK_VIOLATED)) {
+					cache.invalidarVehiculo(matricula);
+					throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_NO_EXIST);
+				}
+				throw e;
+			}
+			MetricasAlquiler.registrar(EtapaAlquiler.RESERVA, inicio);
+			
+			// Importes y conceptos de las líneas según la política de precios
+			lineas = LINEAS_LIBRES.poll();
+			if (lineas == null) {
+				lineas = new LineasFactura();
+			}
+			politica.calcular(datos, diasDiff, lineas);
+			BigDecimal importeAlquiler = lineas.getImporteAlquiler();
+			BigDecimal importeCombustible = lineas.getImporteCombustible();
+			
+			// El número de factura ya lo conocemos, no hace falta preguntarlo después
+			inicio = MetricasAlquiler.inicio();
+			int nroFactura = (int) nrosFactura.siguiente(sentencias);
+			st = sentencias.get(SentenciasAlquiler.INSERTAR_FACTURA);
+			st.setInt(1, nroFactura);
+			st.setBigDecimal(2, lineas.getImporteTotal());
+			st.setString(3, nifCliente);
+			st.executeUpdate();
+			MetricasAlquiler.registrar(EtapaAlquiler.FACTURA, inicio);
+			
+			// Añadimos las dos líneas de factura (alquiler y combustible) en un único lote
+			inicio = MetricasAlquiler.inicio();
+			st = sentencias.get(SentenciasAlquiler.INSERTAR_LINEA_FACTURA);
+			st.setInt(1, nroFactura);
+			st.setString(2, lineas.getConceptoAlquiler());
+			st.setBigDecimal(3, importeAlquiler);
+			st.addBatch();
+			
+			st.setInt(1, nroFactura);
+			st.setString(2, lineas.getConceptoCombustible());
+			st.setBigDecimal(3, importeCombustible);
+			st.addBatch();
+			st.executeBatch();
+			MetricasAlquiler.registrar(EtapaAlquiler.LINEAS_FACTURA, inicio);
+			
+			return new ReciboAlquiler(idReserva, nroFactura, diasDiff, importeAlquiler, importeCombustible);
+		} finally {
+			if (lineas != null) {
+				LINEAS_LIBRES.offer(lineas);
+			}
+			if(rs!=null) rs.close();
+		}
+	}
+}
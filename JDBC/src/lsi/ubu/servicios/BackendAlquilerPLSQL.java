@@ -0,0 +1,98 @@
+package lsi.ubu.servicios;
+
+import java.sql.CallableStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Date;
+
+import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.util.RegistroSentencias;
+
+/**
+ * BackendAlquilerPLSQL: realiza todo el alquiler en un único viaje a la base de datos llamando al procedimiento
+ * almacenado alquilar_vehiculo (ver sql/alquiler_coches.sql), que devuelve los números de reserva y factura y los
+ * importes de las líneas como parámetros de salida.
+ * Los errores de negocio llegan como ORA-20001..ORA-20004 y se traducen a AlquilerCochesException con el mismo código.
+ * La existencia del vehículo y los datos para facturar salen de CacheDatosReferencia y se pasan al procedimiento, que
+ * así no consulta vehiculos, modelos ni precio_combustible; un vehículo borrado lo detecta la clave ajena de reservas.
+ * @version 1.1
+ * @since 1.1
+ */
+public class BackendAlquilerPLSQL implements BackendAlquiler {
+
+	// raise_application_error(-20000 - codigo) en el procedimiento, siendo codigo el de AlquilerCochesException
+	private static final int BASE_ERRORES_APLICACION = 20000;
+
+	private final CacheDatosReferencia cache;
+
+	public BackendAlquilerPLSQL() {
+		this(CacheDatosReferencia.getInstance());
+	}
+
+	public BackendAlquilerPLSQL(CacheDatosReferencia cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public ReciboAlquiler alquilar(RegistroSentencias sentencias, String nifCliente, String matricula, Date fechaIni, Date fechaFin,
+			Date fechaFinAlq, long diasDiff, boolean bloquear) throws SQLException {
+		// Inicio de la etapa en curso para MetricasAlquiler
+		long inicio = MetricasAlquiler.inicio();
+		try {
+			// Vehículo inexistente antes de ir a la base de datos (la cache solo va si no lo conoce)
+			DatosFacturacion datos = cache.getDatosFacturacion(sentencias, matricula);
+			MetricasAlquiler.registrar(EtapaAlquiler.VEHICULO, inicio);
+			if (datos == null) throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_NO_EXIST);
+
+			CallableStatement cst = (CallableStatement) sentencias.get(SentenciasAlquiler.ALQUILAR_VEHICULO);
+			cst.setString(1, nifCliente);
+			cst.setString(2, matricula);
+			cst.setDate(3, new java.sql.Date(fechaIni.getTime()));
+			if (fechaFin != null) {
+				cst.setDate(4, new java.sql.Date(fechaFin.getTime()));
+			} else {
+				cst.setNull(4, Types.DATE);
+			}
+			cst.setDate(5, new java.sql.Date(fechaFinAlq.getTime()));
+			cst.setLong(6, diasDiff);
+			cst.setInt(7, bloquear ? 1 : 0);
+			cst.registerOutParameter(8, Types.INTEGER);
+			cst.registerOutParameter(9, Types.INTEGER);
+			cst.registerOutParameter(10, Types.NUMERIC);
+			cst.registerOutParameter(11, Types.NUMERIC);
+			cst.setInt(12, datos.getIdModelo());
+			cst.setBigDecimal(13, datos.getPrecioDia());
+			cst.setInt(14, datos.getCapacidadDeposito());
+			cst.setString(15, datos.getTipoCombustible());
+			cst.setBigDecimal(16, datos.getPrecioLitro());
+
+			inicio = MetricasAlquiler.inicio();
+			cst.execute();
+			MetricasAlquiler.registrar(EtapaAlquiler.PROCEDIMIENTO, inicio);
+			return new ReciboAlquiler(cst.getLong(8), cst.getInt(9), diasDiff, cst.getBigDecimal(10),
+					cst.getBigDecimal(11));
+		} catch (SQLException e) {
+			SQLException traducida = traducir(e);
+			if (traducida instanceof AlquilerCochesException
+					&& traducida.getErrorCode() == AlquilerCochesException.VEHICULO_NO_EXIST) {
+				// La cache lo tenía obsoleto
+				cache.invalidarVehiculo(matricula);
+			}
+			throw traducida;
+		}
+	}
+
+	// Convierte los errores de aplicación lanzados por el procedimiento en la excepción de negocio equivalente
+	private static SQLException traducir(SQLException e) {
+		int codigo = e.getErrorCode() - BASE_ERRORES_APLICACION;
+		switch (codigo) {
+		case AlquilerCochesException.CLIENTE_NO_EXIST:
+		case AlquilerCochesException.VEHICULO_NO_EXIST:
+		case AlquilerCochesException.SIN_DIAS:
+		case AlquilerCochesException.VEHICULO_OCUPADO:
+			return new AlquilerCochesException(codigo);
+		default:
+			return e;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import lsi.ubu.util.RegistroSentencias;
+
+/**
+ * CacheDatosReferencia: cache de lectura de vehículos, modelos y precios de combustible, que casi nunca cambian.
+ * Los fallos se cargan con la conexión de la transacción que pregunta (un solo join si falta el vehículo) y las
+ * entradas caducan a los TTL milisegundos o se expulsan al superar el tamaño máximo. Quien modifique estas tablas
+ * debe llamar al invalidar correspondiente.
+ * <p>
+ * Configuración con propiedades de sistema: alquiler.cache.ttl (milisegundos, 5 minutos por defecto) y
+ * alquiler.cache.tamano (entradas por tabla, 10000 por defecto).
+ * @version 1.0
+ * @since 1.1
+ */
+public final class CacheDatosReferencia {
+
+	public static final String PROPIEDAD_TTL = "alquiler.cache.ttl";
+	public static final String PROPIEDAD_TAMANO = "alquiler.cache.tamano";
+
+	private static final CacheDatosReferencia INSTANCIA = new CacheDatosReferencia(
+			Long.getLong(PROPIEDAD_TTL, TimeUnit.MINUTES.toMillis(5)), Integer.getInteger(PROPIEDAD_TAMANO, 10000));
+
+	// Datos de un modelo que intervienen en la factura, con el precio ya en céntimos
+	private static final class Modelo {
+		final BigDecimal precioDia;
+		final long precioDiaCentimos;
+		final int capacidadDeposito;
+		final String tipoCombustible;
+
+		Modelo(BigDecimal precioDia, long precioDiaCentimos, int capacidadDeposito, String tipoCombustible) {
+			this.precioDia = precioDia;
+			this.precioDiaCentimos = precioDiaCentimos;
+			this.capacidadDeposito = capacidadDeposito;
+			this.tipoCombustible = tipoCombustible;
+		}
+	}
+
+	private static final class Combustible {
+		final BigDecimal precioLitro;
+		final long precioLitroCentimos;
+
+		Combustible(BigDecimal precioLitro, long precioLitroCentimos) {
+			this.precioLitro = precioLitro;
+			this.precioLitroCentimos = precioLitroCentimos;
+		}
+	}
+
+	private final CacheTTL<String, Integer> vehiculos; // matrícula -> id_modelo
+	private final CacheTTL<Integer, Modelo> modelos;
+	private final CacheTTL<String, Combustible> combustibles; // tipo_combustible -> precio_por_litro
+
+	public CacheDatosReferencia(long ttlMilis, int tamanoMaximo) {
+		vehiculos = new CacheTTL<String, Integer>(ttlMilis, TimeUnit.MILLISECONDS, tamanoMaximo);
+		modelos = new CacheTTL<Integer, Modelo>(ttlMilis, TimeUnit.MILLISECONDS, tamanoMaximo);
+		combustibles = new CacheTTL<String, Combustible>(ttlMilis, TimeUnit.MILLISECONDS, tamanoMaximo);
+	}
+
+	// Cache compartida por los servicios
+	public static CacheDatosReferencia getInstance() {
+		return INSTANCIA;
+	}
+
+	/**
+	 * Datos de facturación del vehículo, leyendo de la base de datos lo que no esté en cache.
+	 *
+	 * @param sentencias registro de la conexión con la que cargar los fallos
+	 * @param matricula  matrícula del vehículo
+	 * @return datos de facturación, o null si el vehículo no existe (los inexistentes no se guardan)
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	DatosFacturacion getDatosFacturacion(RegistroSentencias sentencias, String matricula) throws SQLException {
+		Integer idModelo = vehiculos.get(matricula);
+		if (idModelo == null) {
+			// Vehículo desconocido: un solo join carga vehículo, modelo y combustible
+			return cargarVehiculo(sentencias, matricula);
+		}
+
+		Modelo modelo = modelos.get(idModelo);
+		if (modelo == null) {
+			modelo = cargarModelo(sentencias, idModelo);
+			if (modelo == null) {
+				// El modelo ha desaparecido: se vuelve a leer todo desde el vehículo
+				vehiculos.invalidar(matricula);
+				return cargarVehiculo(sentencias, matricula);
+			}
+		}
+
+		Combustible combustible = combustibles.get(modelo.tipoCombustible);
+		if (combustible == null) {
+			combustible = cargarCombustible(sentencias, modelo.tipoCombustible);
+			if (combustible == null) {
+				vehiculos.invalidar(matricula);
+				return cargarVehiculo(sentencias, matricula);
+			}
+		}
+
+		return datosFacturacion(idModelo, modelo, combustible);
+	}
+
+	/**
+	 * Datos de facturación solo si están en cache, sin ir a la base de datos.
+	 *
+	 * @param matricula matrícula del vehículo
+	 * @return datos de facturación o null si falta alguna de las partes
+	 */
+	DatosFacturacion getDatosFacturacionSiPresente(String matricula) {
+		Integer idModelo = vehiculos.get(matricula);
+		if (idModelo == null) {
+			return null;
+		}
+		Modelo modelo = modelos.get(idModelo);
+		if (modelo == null) {
+			return null;
+		}
+		Combustible combustible = combustibles.get(modelo.tipoCombustible);
+		if (combustible == null) {
+			return null;
+		}
+		return datosFacturacion(idModelo, modelo, combustible);
+	}
+
+	private static DatosFacturacion datosFacturacion(int idModelo, Modelo modelo, Combustible combustible) {
+		return new DatosFacturacion(idModelo, modelo.precioDia, modelo.precioDiaCentimos, modelo.capacidadDeposito,
+				modelo.tipoCombustible, combustible.precioLitro, combustible.precioLitroCentimos);
+	}
+
+	// Guarda los datos de un vehículo leídos por otra vía (por ejemplo, las consultas por conjuntos del lote)
+	void registrar(String matricula, DatosFacturacion datos) {
+		combustibles.put(datos.getTipoCombustible(),
+				new Combustible(datos.getPrecioLitro(), datos.getPrecioLitroCentimos()));
+		modelos.put(datos.getIdModelo(), new Modelo(datos.getPrecioDia(), datos.getPrecioDiaCentimos(),
+				datos.getCapacidadDeposito(), datos.getTipoCombustible()));
+		vehiculos.put(matricula, datos.getIdModelo());
+	}
+
+	private DatosFacturacion cargarVehiculo(RegistroSentencias sentencias, String matricula) throws SQLException {
+		PreparedStatement st = sentencias.get(SentenciasAlquiler.DATOS_FACTURACION);
+		st.setString(1, matricula);
+		ResultSet rs = st.executeQuery();
+		try {
+			if (!rs.next()) {
+				return null;
+			}
+			DatosFacturacion datos = new DatosFacturacion(rs.getInt(5), rs.getBigDecimal(1), rs.getInt(2),
+					rs.getString(3), rs.getBigDecimal(4));
+			registrar(matricula, datos);
+			return datos;
+		} finally {
+			rs.close();
+		}
+	}
+
+	private Modelo cargarModelo(RegistroSentencias sentencias, int idModelo) throws SQLException {
+		PreparedStatement st = sentencias.get(SentenciasAlquiler.DATOS_MODELO);
+		st.setInt(1, idModelo);
+		ResultSet rs = st.executeQuery();
+		try {
+			if (!rs.next()) {
+				return null;
+			}
+			BigDecimal precioDia = rs.getBigDecimal(1);
+			Modelo modelo = new Modelo(precioDia, DatosFacturacion.centimos(precioDia), rs.getInt(2), rs.getString(3));
+			modelos.put(idModelo, modelo);
+			return modelo;
+		} finally {
+			rs.close();
+		}
+	}
+
+	private Combustible cargarCombustible(RegistroSentencias sentencias, String tipoCombustible) throws SQLException {
+		PreparedStatement st = sentencias.get(SentenciasAlquiler.PRECIO_COMBUSTIBLE);
+		st.setString(1, tipoCombustible);
+		ResultSet rs = st.executeQuery();
+		try {
+			if (!rs.next()) {
+				return null;
+			}
+			BigDecimal precioLitro = rs.getBigDecimal(1);
+			Combustible combustible = new Combustible(precioLitro, DatosFacturacion.centimos(precioLitro));
+			combustibles.put(tipoCombustible, combustible);
+			return combustible;
+		} finally {
+			rs.close();
+		}
+	}
+
+	// Ganchos de invalidación para quien modifique vehiculos, modelos o precio_combustible
+
+	public void invalidarVehiculo(String matricula) {
+		vehiculos.invalidar(matricula);
+	}
+
+	public void invalidarModelo(int idModelo) {
+		modelos.invalidar(idModelo);
+	}
+
+	public void invalidarCombustible(String tipoCombustible) {
+		combustibles.invalidar(tipoCombustible);
+	}
+
+	public void invalidarTodo() {
+		vehiculos.invalidarTodo();
+		modelos.invalidarTodo();
+		combustibles.invalidarTodo();
+	}
+
+	// Métricas acumuladas de las tres tablas
+
+	public long getAciertos() {
+		return vehiculos.getAciertos() + modelos.getAciertos() + combustibles.getAciertos();
+	}
+
+	public long getFallos() {
+		return vehiculos.getFallos() + modelos.getFallos() + combustibles.getFallos();
+	}
+
+	public long getExpulsiones() {
+		return vehiculos.getExpulsiones() + modelos.getExpulsiones() + combustibles.getExpulsiones();
+	}
+
+	public int getTamano() {
+		return vehiculos.tamano() + modelos.tamano() + combustibles.tamano();
+	}
+
+	@Override
+	public String toString() {
+		return "CacheDatosReferencia[vehiculos=" + vehiculos.tamano() + ", modelos=" + modelos.tamano()
+				+ ", combustibles=" + combustibles.tamano() + ", aciertos=" + getAciertos() + ", fallos=" + getFallos()
+				+ ", expulsiones=" + getExpulsiones() + "]";
+	}
+}
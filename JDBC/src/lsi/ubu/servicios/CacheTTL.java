@@ -0,0 +1,94 @@
+package lsi.ubu.servicios;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CacheTTL: mapa acotado en tamaño (expulsa el menos usado recientemente) cuyas entradas caducan pasado un tiempo
+ * desde que se cargaron. Es seguro entre hilos; las operaciones son cortas y se sincronizan sobre la propia cache.
+ * @version 1.0
+ * @since 1.1
+ */
+final class CacheTTL<K, V> {
+
+	private static final class Entrada<V> {
+		final V valor;
+		final long caducidad;
+
+		Entrada(V valor, long caducidad) {
+			this.valor = valor;
+			this.caducidad = caducidad;
+		}
+	}
+
+	private final long ttlNanos;
+	private final int tamanoMaximo;
+	private final LinkedHashMap<K, Entrada<V>> entradas;
+
+	private final AtomicLong aciertos = new AtomicLong();
+	private final AtomicLong fallos = new AtomicLong();
+	private final AtomicLong expulsiones = new AtomicLong();
+
+	CacheTTL(long ttl, TimeUnit unidad, int tamanoMaximo) {
+		this.ttlNanos = unidad.toNanos(ttl);
+		this.tamanoMaximo = tamanoMaximo;
+		// Orden de acceso para que la entrada más antigua sea la menos usada
+		this.entradas = new LinkedHashMap<K, Entrada<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entrada<V>> mayor) {
+				if (size() > CacheTTL.this.tamanoMaximo) {
+					expulsiones.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	// Valor vigente o null si no está o ha caducado (cuenta como acierto o fallo)
+	synchronized V get(K clave) {
+		Entrada<V> entrada = entradas.get(clave);
+		if (entrada != null && entrada.caducidad - System.nanoTime() > 0) {
+			aciertos.incrementAndGet();
+			return entrada.valor;
+		}
+		if (entrada != null) {
+			entradas.remove(clave);
+			expulsiones.incrementAndGet();
+		}
+		fallos.incrementAndGet();
+		return null;
+	}
+
+	synchronized void put(K clave, V valor) {
+		entradas.put(clave, new Entrada<V>(valor, System.nanoTime() + ttlNanos));
+	}
+
+	synchronized void invalidar(K clave) {
+		entradas.remove(clave);
+	}
+
+	synchronized void invalidarTodo() {
+		entradas.clear();
+	}
+
+	synchronized int tamano() {
+		return entradas.size();
+	}
+
+	long getAciertos() {
+		return aciertos.get();
+	}
+
+	long getFallos() {
+		return fallos.get();
+	}
+
+	long getExpulsiones() {
+		return expulsiones.get();
+	}
+}
@@ -0,0 +1,33 @@
+package lsi.ubu.servicios;
+
+/**
+ * CalculadoraPrecios: regla de facturación estándar, la misma que aplica el procedimiento alquilar_vehiculo. El alquiler
+ * es el precio por día del modelo por los días y el combustible un depósito lleno al precio por litro de su tipo.
+ * <p>
+ * Calcula con céntimos en long (los precios tienen dos decimales, así que el resultado es exacto e idéntico al de
+ * multiplicar los BigDecimal) y escribe los conceptos en los búferes de LineasFactura, sin crear objetos. No tiene
+ * estado, así que una instancia sirve para todos los hilos.
+ * @version 1.0
+ * @since 1.1
+ */
+public class CalculadoraPrecios implements PoliticaPrecios {
+
+	private static final CalculadoraPrecios INSTANCIA = new CalculadoraPrecios();
+
+	// Regla estándar compartida
+	public static CalculadoraPrecios getInstance() {
+		return INSTANCIA;
+	}
+
+	@Override
+	public void calcular(DatosFacturacion datos, long dias, LineasFactura lineas) {
+		lineas.setCentimosAlquiler(datos.getPrecioDiaCentimos() * dias);
+		lineas.setCentimosCombustible(datos.getPrecioLitroCentimos() * datos.getCapacidadDeposito());
+
+		// Mismos textos que alquilar_vehiculo, los blancos finales incluidos
+		lineas.nuevoConceptoAlquiler().append(dias).append(" dias de alquiler, vehiculo modelo ")
+				.append(datos.getIdModelo()).append("   ");
+		lineas.nuevoConceptoCombustible().append("Deposito lleno de ").append(datos.getCapacidadDeposito())
+				.append(" litros de ").append(datos.getTipoCombustible()).append(' ');
+	}
+}
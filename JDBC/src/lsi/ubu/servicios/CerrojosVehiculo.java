@@ -0,0 +1,60 @@
+package lsi.ubu.servicios;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CerrojosVehiculo: cerrojos en memoria por matrícula para ControlConcurrencia.BLOQUEO_LOCAL. Hay un número fijo de
+ * franjas y cada matrícula cae en una según su hash, así que la memoria no crece con el número de vehículos; dos
+ * vehículos de la misma franja se esperan entre sí, lo que con FRANJAS mucho mayor que el número de hilos es raro.
+ * @version 1.0
+ * @since 1.1
+ */
+final class CerrojosVehiculo {
+
+	private static final int FRANJAS = 1024;
+
+	private static final ReentrantLock[] CERROJOS = new ReentrantLock[FRANJAS];
+
+	static {
+		for (int i = 0; i < FRANJAS; i++) {
+			CERROJOS[i] = new ReentrantLock();
+		}
+	}
+
+	private CerrojosVehiculo() {
+	}
+
+	private static int franja(String matricula) {
+		int h = matricula.hashCode();
+		return (h ^ (h >>> 16)) & (FRANJAS - 1);
+	}
+
+	// Bloquea las franjas de las matrículas indicadas, siempre en orden creciente para no provocar interbloqueos
+	static List<ReentrantLock> bloquear(Collection<String> matriculas) {
+		TreeSet<Integer> franjas = new TreeSet<Integer>();
+		for (String matricula : matriculas) {
+			franjas.add(franja(matricula));
+		}
+		List<ReentrantLock> bloqueados = new ArrayList<ReentrantLock>(franjas.size());
+		try {
+			for (int franja : franjas) {
+				CERROJOS[franja].lock();
+				bloqueados.add(CERROJOS[franja]);
+			}
+		} catch (RuntimeException e) {
+			liberar(bloqueados);
+			throw e;
+		}
+		return bloqueados;
+	}
+
+	static void liberar(List<ReentrantLock> bloqueados) {
+		for (int i = bloqueados.size() - 1; i >= 0; i--) {
+			bloqueados.get(i).unlock();
+		}
+	}
+}
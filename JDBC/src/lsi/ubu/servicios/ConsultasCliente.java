@@ -0,0 +1,119 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import lsi.ubu.util.PoolDeConexiones;
+import lsi.ubu.util.RegistroSentencias;
+
+/**
+ * ConsultasCliente: implementación de Servicio.reservasCliente y facturasCliente. Pagina por clave (idReserva y
+ * nroFactura) en vez de por desplazamiento, con los índices reservas_cliente y facturas_cliente, y pide una fila más de
+ * las de la página para saber si hay otra sin tener que contar. Cada página es un solo viaje a la base de datos, líneas
+ * de factura incluidas.
+ * @version 1.0
+ * @since 1.1
+ */
+final class ConsultasCliente {
+
+	private ConsultasCliente() {
+	}
+
+	static Pagina<Reserva> reservas(String nifCliente, long desde, int tamano) throws SQLException {
+		Connection con = PoolDeConexiones.getInstance().getConnection();
+		RegistroSentencias sentencias = new RegistroSentencias(con);
+		try {
+			PreparedStatement st = sentencias.get(SentenciasAlquiler.RESERVAS_CLIENTE);
+			st.setString(1, nifCliente);
+			st.setLong(2, desde);
+			st.setInt(3, tamano + 1);
+			st.setFetchSize(tamano + 1);
+
+			List<Reserva> reservas = new ArrayList<Reserva>(tamano);
+			boolean hayMas = false;
+			ResultSet rs = st.executeQuery();
+			try {
+				while (rs.next()) {
+					if (reservas.size() == tamano) {
+						hayMas = true;
+						break;
+					}
+					reservas.add(new Reserva(rs.getLong(1), rs.getString(2), rs.getDate(3), rs.getDate(4)));
+				}
+			} finally {
+				rs.close();
+			}
+			// Solo se ha leído
+			con.rollback();
+			long siguiente = reservas.isEmpty() ? desde : reservas.get(reservas.size() - 1).getIdReserva();
+			return new Pagina<Reserva>(reservas, siguiente, !hayMas);
+		} finally {
+			try {
+				sentencias.close();
+			} finally {
+				con.close();
+			}
+		}
+	}
+
+	static Pagina<Factura> facturas(String nifCliente, long desde, int tamano) throws SQLException {
+		Connection con = PoolDeConexiones.getInstance().getConnection();
+		RegistroSentencias sentencias = new RegistroSentencias(con);
+		try {
+			PreparedStatement st = sentencias.get(SentenciasAlquiler.FACTURAS_CLIENTE);
+			st.setString(1, nifCliente);
+			st.setLong(2, desde);
+			st.setInt(3, tamano + 1);
+			// Normalmente dos líneas por factura
+			st.setFetchSize(2 * (tamano + 1));
+
+			List<Factura> facturas = new ArrayList<Factura>(tamano);
+			boolean hayMas = false;
+			ResultSet rs = st.executeQuery();
+			try {
+				long nroFactura = -1;
+				BigDecimal importe = null;
+				List<Factura.Linea> lineas = new ArrayList<Factura.Linea>();
+				while (rs.next()) {
+					if (rs.getLong(1) != nroFactura) {
+						if (nroFactura != -1) {
+							facturas.add(new Factura(nroFactura, importe, lineas));
+							lineas.clear();
+						}
+						// La fila de más solo dice que hay otra página
+						if (facturas.size() == tamano) {
+							hayMas = true;
+							nroFactura = -1;
+							break;
+						}
+						nroFactura = rs.getLong(1);
+						importe = rs.getBigDecimal(2);
+					}
+					String concepto = rs.getString(3);
+					if (concepto != null) {
+						lineas.add(new Factura.Linea(ExportadorFacturas.sinRelleno(concepto), rs.getBigDecimal(4)));
+					}
+				}
+				if (nroFactura != -1) {
+					facturas.add(new Factura(nroFactura, importe, lineas));
+				}
+			} finally {
+				rs.close();
+			}
+			con.rollback();
+			long siguiente = facturas.isEmpty() ? desde : facturas.get(facturas.size() - 1).getNroFactura();
+			return new Pagina<Factura>(facturas, siguiente, !hayMas);
+		} finally {
+			try {
+				sentencias.close();
+			} finally {
+				con.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package lsi.ubu.servicios;
+
+/**
+ * ControlConcurrencia: cómo se evita que dos alquileres simultáneos del mismo vehículo pasen los dos la comprobación
+ * de disponibilidad antes de que ninguno inserte su reserva (con READ_COMMITTED la consulta de solapes no ve las
+ * reservas aún sin confirmar). En todos los modos solo se esperan entre sí los alquileres del mismo vehículo.
+ * <p>
+ * Se elige con la propiedad de sistema alquiler.concurrencia (BLOQUEO_FILA por defecto).
+ * @version 1.0
+ * @since 1.1
+ */
+public enum ControlConcurrencia {
+
+	// Sin control: la comprobación y la inserción pueden intercalarse y reservar dos veces el mismo vehículo
+	NINGUNO,
+
+	// SELECT ... FOR UPDATE de la fila del vehículo antes de comprobar la disponibilidad, hasta el commit.
+	// Sirve con varias instancias de la aplicación contra la misma base de datos.
+	BLOQUEO_FILA,
+
+	// Cerrojo en memoria por matrícula (repartidos en franjas) durante toda la transacción. No necesita bloqueos en
+	// la base de datos ni ocupa una conexión mientras espera, pero solo protege dentro de esta máquina virtual.
+	BLOQUEO_LOCAL;
+
+	public static final String PROPIEDAD = "alquiler.concurrencia";
+
+	// Modo indicado en la propiedad de sistema
+	public static ControlConcurrencia configurado() {
+		String valor = System.getProperty(PROPIEDAD);
+		return valor != null ? valueOf(valor.trim().toUpperCase()) : BLOQUEO_FILA;
+	}
+}
@@ -0,0 +1,73 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * DatosFacturacion: datos de modelo y combustible de un vehículo necesarios para facturar su alquiler. Los precios se
+ * guardan también en céntimos para que PoliticaPrecios calcule sin crear BigDecimal. Es inmutable.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class DatosFacturacion {
+
+	private final int idModelo;
+	private final BigDecimal precioDia;
+	private final long precioDiaCentimos;
+	private final int capacidadDeposito;
+	private final String tipoCombustible;
+	private final BigDecimal precioLitro;
+	private final long precioLitroCentimos;
+
+	// Público para quien facture fuera del servicio (por ejemplo GeneradorDatos)
+	public DatosFacturacion(int idModelo, BigDecimal precioDia, int capacidadDeposito, String tipoCombustible,
+			BigDecimal precioLitro) {
+		this(idModelo, precioDia, centimos(precioDia), capacidadDeposito, tipoCombustible, precioLitro,
+				centimos(precioLitro));
+	}
+
+	// Con los céntimos ya calculados (los guarda CacheDatosReferencia)
+	DatosFacturacion(int idModelo, BigDecimal precioDia, long precioDiaCentimos, int capacidadDeposito,
+			String tipoCombustible, BigDecimal precioLitro, long precioLitroCentimos) {
+		this.idModelo = idModelo;
+		this.precioDia = precioDia;
+		this.precioDiaCentimos = precioDiaCentimos;
+		this.capacidadDeposito = capacidadDeposito;
+		this.tipoCombustible = tipoCombustible;
+		this.precioLitro = precioLitro;
+		this.precioLitroCentimos = precioLitroCentimos;
+	}
+
+	// Las columnas de precios tienen dos decimales, así que el paso a céntimos es exacto
+	static long centimos(BigDecimal importe) {
+		return importe.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}
+
+	public int getIdModelo() {
+		return idModelo;
+	}
+
+	public BigDecimal getPrecioDia() {
+		return precioDia;
+	}
+
+	public long getPrecioDiaCentimos() {
+		return precioDiaCentimos;
+	}
+
+	public int getCapacidadDeposito() {
+		return capacidadDeposito;
+	}
+
+	public String getTipoCombustible() {
+		return tipoCombustible;
+	}
+
+	public BigDecimal getPrecioLitro() {
+		return precioLitro;
+	}
+
+	public long getPrecioLitroCentimos() {
+		return precioLitroCentimos;
+	}
+}
@@ -0,0 +1,52 @@
+package lsi.ubu.servicios;
+
+/**
+ * EtapaAlquiler: partes de alquilar cuyo tiempo se mide por separado en MetricasAlquiler. Cada alquiler pasa solo por
+ * las de su backend y su modo de control de concurrencia.
+ * @version 1.0
+ * @since 1.1
+ */
+public enum EtapaAlquiler {
+
+	// Alquiler completo, de principio a fin, haya ido bien o mal
+	TOTAL,
+
+	// Espera al cerrojo en memoria del vehículo (ControlConcurrencia.BLOQUEO_LOCAL)
+	CERROJO,
+
+	// Obtener la conexión del pool
+	CONEXION,
+
+	// Datos de facturación del vehículo, casi siempre desde CacheDatosReferencia (los dos backends)
+	VEHICULO,
+
+	// SELECT ... FOR UPDATE del vehículo (ControlConcurrencia.BLOQUEO_FILA, backend JDBC)
+	BLOQUEO_FILA,
+
+	// Comprobación del cliente (backend JDBC)
+	CLIENTE,
+
+	// Consulta de reservas solapadas (backend JDBC)
+	SOLAPES,
+
+	// Número de reserva e inserción de la reserva (backend JDBC)
+	RESERVA,
+
+	// Número de factura e inserción de la factura (backend JDBC)
+	FACTURA,
+
+	// Inserción de las líneas de factura en lote (backend JDBC)
+	LINEAS_FACTURA,
+
+	// Llamada a alquilar_vehiculo (backend PL/SQL)
+	PROCEDIMIENTO,
+
+	COMMIT,
+
+	ROLLBACK;
+
+	// Nombre para las etiquetas de las métricas
+	String etiqueta() {
+		return name().toLowerCase();
+	}
+}
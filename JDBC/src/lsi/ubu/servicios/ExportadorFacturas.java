@@ -0,0 +1,309 @@
+package lsi.ubu.servicios;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.util.PoolDeConexiones;
+
+/**
+ * ExportadorFacturas: vuelca las facturas con sus líneas para contabilidad, en CSV o en un formato binario compacto y
+ * opcionalmente comprimido con gzip.
+ * <p>
+ * Recorre una sola consulta ordenada por factura con un cursor de solo avance y tamaño de fetch configurable
+ * (alquiler.exportacion.fetch, 1000 filas por defecto), y escribe cada fila en un búfer de tamaño fijo que se vacía al
+ * canal cuando se llena. Nada depende del número de facturas, así que la memoria es la misma para diez mil que para
+ * cien millones.
+ * <p>
+ * Formatos:
+ * <ul>
+ * <li>CSV: una fila por línea de factura, separada por ';' como los CSV de los benchmarks, con cabecera. Los importes
+ * con dos decimales y los conceptos sin los blancos de relleno. Una factura sin líneas sale en una fila con el concepto
+ * y el importe de la línea vacíos.</li>
+ * <li>BINARIO: la cabecera "FACT" y un byte de versión; por factura un registro 'F' (número int, cliente e importe) y
+ * uno 'L' por línea (concepto e importe); al final 'E' y el número de facturas en un long. Los textos van como short
+ * con la longitud y los bytes en UTF-8, y los importes como long en céntimos (Long.MIN_VALUE si son nulos).</li>
+ * </ul>
+ * No hay ninguna columna que una una factura con su reserva (solo comparten el cliente), por eso no se exportan las
+ * reservas.
+ * @version 1.0
+ * @since 1.1
+ */
+public class ExportadorFacturas {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExportadorFacturas.class);
+
+	/** Formato del fichero exportado. */
+	public enum Formato {
+		CSV, BINARIO
+	}
+
+	// Propiedad de sistema con las filas que se traen en cada viaje a la base de datos
+	public static final String PROPIEDAD_FETCH = "alquiler.exportacion.fetch";
+
+	private static final int TAMANO_FETCH = Integer.getInteger(PROPIEDAD_FETCH, 1000);
+	private static final int TAMANO_BUFFER = 64 * 1024;
+
+	// Las facturas sin líneas también salen, con concepto nulo
+	private static final String SQL_FACTURAS = "SELECT f.nroFactura, f.cliente, f.importe, l.concepto, l.importe "
+			+ "FROM facturas f LEFT JOIN lineas_factura l ON l.nroFactura = f.nroFactura "
+			+ "ORDER BY f.nroFactura, l.concepto";
+
+	static final String CABECERA_CSV = "nroFactura;cliente;importe;concepto;importe_linea\n";
+	static final byte[] CABECERA_BINARIO = { 'F', 'A', 'C', 'T', 1 };
+
+	/**
+	 * Exporta a un fichero, que se crea o se sobrescribe.
+	 *
+	 * @param fichero destino
+	 * @param formato CSV o BINARIO
+	 * @param gzip    si se comprime con gzip
+	 * @return número de facturas exportadas
+	 * @throws SQLException si hay un error con la base de datos
+	 * @throws IOException  si no se puede escribir
+	 */
+	public long exportar(Path fichero, Formato formato, boolean gzip) throws SQLException, IOException {
+		FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			if (!gzip) {
+				return exportar(canal, formato);
+			}
+			GZIPOutputStream comprimido = new GZIPOutputStream(Channels.newOutputStream(canal), TAMANO_BUFFER);
+			try {
+				long facturas = exportar(Channels.newChannel(comprimido), formato);
+				comprimido.finish();
+				return facturas;
+			} finally {
+				// Libera el compresor también si la exportación falla
+				comprimido.close();
+			}
+		} finally {
+			canal.close();
+		}
+	}
+
+	/**
+	 * Exporta a un canal abierto, que no se cierra.
+	 *
+	 * @param canal   destino
+	 * @param formato CSV o BINARIO
+	 * @return número de facturas exportadas
+	 * @throws SQLException si hay un error con la base de datos
+	 * @throws IOException  si no se puede escribir
+	 */
+	public long exportar(WritableByteChannel canal, Formato formato) throws SQLException, IOException {
+		long inicio = System.nanoTime();
+		Escritor escritor = new Escritor(canal, formato);
+		long facturas = 0;
+		long lineas = 0;
+
+		Connection con = PoolDeConexiones.getInstance().getConnection();
+		try {
+			PreparedStatement st = con.prepareStatement(SQL_FACTURAS, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			try {
+				st.setFetchSize(TAMANO_FETCH);
+				ResultSet rs = st.executeQuery();
+				try {
+					escritor.cabecera();
+					long anterior = -1;
+					while (rs.next()) {
+						long nroFactura = rs.getLong(1);
+						if (nroFactura != anterior) {
+							escritor.factura(nroFactura, rs.getString(2), rs.getBigDecimal(3));
+							anterior = nroFactura;
+							facturas++;
+						}
+						String concepto = rs.getString(4);
+						if (concepto != null) {
+							escritor.linea(sinRelleno(concepto), rs.getBigDecimal(5));
+							lineas++;
+						}
+					}
+					escritor.fin(facturas);
+				} finally {
+					rs.close();
+				}
+			} finally {
+				st.close();
+			}
+		} finally {
+			// Solo se ha leído
+			try {
+				con.rollback();
+			} finally {
+				con.close();
+			}
+		}
+
+		LOGGER.info(facturas + " facturas y " + lineas + " líneas exportadas en " + formato + " en "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + "ms");
+		return facturas;
+	}
+
+	// Los conceptos son char(40): los blancos finales son relleno (también lo usa ConsultasCliente)
+	static String sinRelleno(String concepto) {
+		int fin = concepto.length();
+		while (fin > 0 && concepto.charAt(fin - 1) == ' ') {
+			fin--;
+		}
+		return concepto.substring(0, fin);
+	}
+
+	/**
+	 * Escribe los registros en el búfer y lo vacía al canal cuando se llena.
+	 */
+	private static final class Escritor {
+		private final WritableByteChannel canal;
+		private final Formato formato;
+		private final ByteBuffer buffer = ByteBuffer.allocate(TAMANO_BUFFER);
+		private final CharsetEncoder codificador = StandardCharsets.UTF_8.newEncoder();
+		// Fila CSV en curso y los datos de la factura, que se repiten en cada línea
+		private final StringBuilder fila = new StringBuilder();
+		private final StringBuilder factura = new StringBuilder();
+		// Si la factura en curso aún no ha escrito ninguna fila CSV
+		private boolean facturaSinLineas;
+
+		Escritor(WritableByteChannel canal, Formato formato) {
+			this.canal = canal;
+			this.formato = formato;
+		}
+
+		void cabecera() throws IOException {
+			if (formato == Formato.CSV) {
+				fila.setLength(0);
+				escribirCSV(fila.append(CABECERA_CSV));
+			} else {
+				asegurar(CABECERA_BINARIO.length);
+				buffer.put(CABECERA_BINARIO);
+			}
+		}
+
+		void factura(long nroFactura, String cliente, BigDecimal importe) throws IOException {
+			if (formato == Formato.CSV) {
+				terminarFacturaCSV();
+				factura.setLength(0);
+				factura.append(nroFactura).append(';');
+				campoCSV(factura, cliente).append(';');
+				importeCSV(factura, importe).append(';');
+				facturaSinLineas = true;
+			} else {
+				asegurar(1 + 4);
+				buffer.put((byte) 'F').putInt((int) nroFactura);
+				texto(cliente);
+				importe(importe);
+			}
+		}
+
+		void linea(String concepto, BigDecimal importe) throws IOException {
+			if (formato == Formato.CSV) {
+				fila.setLength(0);
+				fila.append(factura);
+				campoCSV(fila, concepto).append(';');
+				importeCSV(fila, importe).append('\n');
+				escribirCSV(fila);
+				facturaSinLineas = false;
+			} else {
+				asegurar(1);
+				buffer.put((byte) 'L');
+				texto(concepto);
+				importe(importe);
+			}
+		}
+
+		void fin(long facturas) throws IOException {
+			if (formato == Formato.BINARIO) {
+				asegurar(1 + 8);
+				buffer.put((byte) 'E').putLong(facturas);
+			} else {
+				terminarFacturaCSV();
+			}
+			vaciar();
+		}
+
+		// En CSV una factura sin líneas no saldría: se escribe su fila con concepto e importe vacíos
+		private void terminarFacturaCSV() throws IOException {
+			if (facturaSinLineas) {
+				fila.setLength(0);
+				escribirCSV(fila.append(factura).append(";\n"));
+				facturaSinLineas = false;
+			}
+		}
+
+		private void texto(String texto) throws IOException {
+			byte[] bytes = texto == null ? new byte[0] : texto.getBytes(StandardCharsets.UTF_8);
+			asegurar(2 + bytes.length);
+			buffer.putShort((short) bytes.length).put(bytes);
+		}
+
+		private void importe(BigDecimal importe) throws IOException {
+			asegurar(8);
+			buffer.putLong(importe == null ? Long.MIN_VALUE : DatosFacturacion.centimos(importe));
+		}
+
+		private void escribirCSV(CharSequence texto) throws IOException {
+			CharBuffer caracteres = CharBuffer.wrap(texto);
+			while (true) {
+				CoderResult resultado = codificador.encode(caracteres, buffer, true);
+				if (resultado.isUnderflow()) {
+					break;
+				}
+				if (resultado.isOverflow()) {
+					vaciar();
+				} else {
+					resultado.throwException();
+				}
+			}
+			codificador.reset();
+		}
+
+		private static StringBuilder campoCSV(StringBuilder destino, String valor) {
+			if (valor == null) {
+				return destino;
+			}
+			if (valor.indexOf(';') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0) {
+				return destino.append(valor);
+			}
+			return destino.append('"').append(valor.replace("\"", "\"\"")).append('"');
+		}
+
+		private static StringBuilder importeCSV(StringBuilder destino, BigDecimal importe) {
+			return importe == null ? destino : destino.append(importe.setScale(2, RoundingMode.HALF_UP).toPlainString());
+		}
+
+		// Deja sitio para n bytes seguidos
+		private void asegurar(int n) throws IOException {
+			if (buffer.remaining() < n) {
+				vaciar();
+			}
+		}
+
+		private void vaciar() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				canal.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
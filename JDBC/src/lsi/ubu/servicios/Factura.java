@@ -0,0 +1,69 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Factura: una factura con sus líneas tal y como la devuelve Servicio.facturasCliente. Los conceptos llegan sin los
+ * blancos de relleno de la columna. Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Factura {
+
+	/**
+	 * Una línea de la factura.
+	 */
+	public static final class Linea {
+		private final String concepto;
+		private final BigDecimal importe;
+
+		Linea(String concepto, BigDecimal importe) {
+			this.concepto = concepto;
+			this.importe = importe;
+		}
+
+		public String getConcepto() {
+			return concepto;
+		}
+
+		public BigDecimal getImporte() {
+			return importe;
+		}
+
+		@Override
+		public String toString() {
+			return concepto + ": " + importe;
+		}
+	}
+
+	private final long nroFactura;
+	private final BigDecimal importe;
+	private final List<Linea> lineas;
+
+	Factura(long nroFactura, BigDecimal importe, List<Linea> lineas) {
+		this.nroFactura = nroFactura;
+		this.importe = importe;
+		this.lineas = Collections.unmodifiableList(new ArrayList<Linea>(lineas));
+	}
+
+	public long getNroFactura() {
+		return nroFactura;
+	}
+
+	public BigDecimal getImporte() {
+		return importe;
+	}
+
+	// Ordenadas por concepto
+	public List<Linea> getLineas() {
+		return lineas;
+	}
+
+	@Override
+	public String toString() {
+		return "Factura[" + nroFactura + ", " + importe + ", " + lineas + "]";
+	}
+}
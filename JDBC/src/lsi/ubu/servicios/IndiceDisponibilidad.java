@@ -0,0 +1,277 @@
+package lsi.ubu.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IndiceDisponibilidad: copia en memoria de la ocupación de cada vehículo para las pantallas de presupuesto y
+ * disponibilidad. Por matrícula guarda los intervalos ocupados [inicio, fin) fusionados y ordenados por inicio, de modo
+ * que saber si un vehículo está libre entre A y B es una sola búsqueda en un árbol: O(log n).
+ * <p>
+ * Se carga de reservas con calentar y ServicioImpl lo actualiza al confirmar cada alquiler. Solo sirve para responder
+ * consultas: la decisión final la sigue tomando la base de datos dentro de la transacción de alquiler. Los cambios
+ * hechos desde otros procesos no se ven hasta volver a calentar.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class IndiceDisponibilidad {
+
+	private static final IndiceDisponibilidad INSTANCIA = new IndiceDisponibilidad();
+
+	private static final String SQL_VEHICULOS = "SELECT matricula FROM vehiculos";
+	// Fin efectivo igual que en SentenciasAlquiler.RESERVAS_SOLAPADAS
+	private static final String SQL_RESERVAS = "SELECT matricula, fecha_ini, NVL(fecha_fin, fecha_ini + "
+			+ ServicioImpl.DIAS_DE_ALQUILER + ") FROM reservas";
+	private static final String SQL_RESERVAS_DESDE = SQL_RESERVAS + " WHERE NVL(fecha_fin, fecha_ini + "
+			+ ServicioImpl.DIAS_DE_ALQUILER + ") > ?";
+
+	private static final int TAMANO_FETCH = 1000;
+
+	// Matrícula -> (inicio -> fin) de los intervalos ocupados, disjuntos. Cada árbol se sincroniza sobre sí mismo.
+	// Se sustituye entero al calentar para que las consultas nunca vean una carga a medias.
+	private volatile ConcurrentMap<String, TreeMap<Long, Long>> ocupacion;
+
+	// Reservas anotadas mientras se calienta: la carga puede haberlas leído o no, así que se vuelven a aplicar sobre
+	// ella al instalarla (ocupar es idempotente). Se protegen con el propio monitor de la lista, que nunca se mantiene
+	// durante una consulta.
+	private final List<Registrada> registradasDuranteCarga = new ArrayList<Registrada>();
+	private int cargas;
+	// Cambia con cada invalidar: una carga empezada antes no se instala
+	private long generacion;
+
+	private static final class Registrada {
+		final String matricula;
+		final long ini;
+		final long fin;
+
+		Registrada(String matricula, long ini, long fin) {
+			this.matricula = matricula;
+			this.ini = ini;
+			this.fin = fin;
+		}
+	}
+
+	public IndiceDisponibilidad() {
+	}
+
+	// Índice compartido por los servicios
+	public static IndiceDisponibilidad getInstance() {
+		return INSTANCIA;
+	}
+
+	public boolean isCaliente() {
+		return ocupacion != null;
+	}
+
+	/**
+	 * Carga todos los vehículos y todas sus reservas.
+	 *
+	 * @param con conexión con la que leer
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	public void calentar(Connection con) throws SQLException {
+		calentar(con, null);
+	}
+
+	/**
+	 * Carga todos los vehículos y las reservas que terminan después de la fecha indicada. Las consultas sobre fechas
+	 * anteriores a ella no son fiables.
+	 *
+	 * @param con   conexión con la que leer
+	 * @param desde fecha a partir de la cual interesa la ocupación, null para cargarlas todas
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	public void calentar(Connection con, Date desde) throws SQLException {
+		long generacionInicial;
+		synchronized (registradasDuranteCarga) {
+			cargas++;
+			generacionInicial = generacion;
+		}
+		ConcurrentMap<String, TreeMap<Long, Long>> nueva = null;
+		try {
+			nueva = cargar(con, desde);
+		} finally {
+			synchronized (registradasDuranteCarga) {
+				if (nueva != null && generacion == generacionInicial) {
+					// Los alquileres confirmados después de empezar la lectura
+					for (Registrada r : registradasDuranteCarga) {
+						ocupar(intervalosDe(nueva, r.matricula), r.ini, r.fin);
+					}
+					ocupacion = nueva;
+				}
+				if (--cargas == 0) {
+					registradasDuranteCarga.clear();
+				}
+			}
+		}
+	}
+
+	private static ConcurrentMap<String, TreeMap<Long, Long>> cargar(Connection con, Date desde) throws SQLException {
+		ConcurrentMap<String, TreeMap<Long, Long>> nueva = new ConcurrentHashMap<String, TreeMap<Long, Long>>();
+
+		PreparedStatement st = con.prepareStatement(SQL_VEHICULOS);
+		try {
+			st.setFetchSize(TAMANO_FETCH);
+			ResultSet rs = st.executeQuery();
+			while (rs.next()) {
+				nueva.put(rs.getString(1), new TreeMap<Long, Long>());
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+
+		st = con.prepareStatement(desde != null ? SQL_RESERVAS_DESDE : SQL_RESERVAS);
+		try {
+			st.setFetchSize(TAMANO_FETCH);
+			if (desde != null) {
+				st.setTimestamp(1, new java.sql.Timestamp(desde.getTime()));
+			}
+			ResultSet rs = st.executeQuery();
+			while (rs.next()) {
+				TreeMap<Long, Long> intervalos = nueva.get(rs.getString(1));
+				if (intervalos != null) {
+					ocupar(intervalos, rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime());
+				}
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+		return nueva;
+	}
+
+	/**
+	 * Olvida la ocupación cargada, por ejemplo tras reiniciar los datos en los tests. La siguiente consulta de
+	 * ServicioImpl lo vuelve a calentar.
+	 */
+	public void invalidar() {
+		synchronized (registradasDuranteCarga) {
+			generacion++;
+			ocupacion = null;
+		}
+	}
+
+	/**
+	 * Anota una reserva ya confirmada. No hace nada si el índice no se ha calentado; si se está calentando, la anota
+	 * también en la carga en curso al instalarla.
+	 *
+	 * @param matricula matrícula del vehículo
+	 * @param fechaIni  inicio de la reserva
+	 * @param fechaFin  fin de la reserva, null si se guardó sin fecha de fin
+	 */
+	public void registrar(String matricula, Date fechaIni, Date fechaFin) {
+		// Sin fecha de fin cuenta como en la base de datos: fecha_ini + DIAS_DE_ALQUILER, sin truncar
+		long fin = fechaFin != null ? fechaFin.getTime()
+				: fechaIni.getTime() + TimeUnit.DAYS.toMillis(ServicioImpl.DIAS_DE_ALQUILER);
+
+		ConcurrentMap<String, TreeMap<Long, Long>> actual;
+		synchronized (registradasDuranteCarga) {
+			if (cargas > 0) {
+				registradasDuranteCarga.add(new Registrada(matricula, fechaIni.getTime(), fin));
+			}
+			// Leída aquí dentro: después de instalar una carga nueva ya no se escribe en la anterior
+			actual = ocupacion;
+		}
+		if (actual == null) {
+			return;
+		}
+		TreeMap<Long, Long> intervalos = intervalosDe(actual, matricula);
+		synchronized (intervalos) {
+			ocupar(intervalos, fechaIni.getTime(), fin);
+		}
+	}
+
+	private static TreeMap<Long, Long> intervalosDe(ConcurrentMap<String, TreeMap<Long, Long>> mapa, String matricula) {
+		TreeMap<Long, Long> intervalos = mapa.get(matricula);
+		if (intervalos == null) {
+			// Vehículo dado de alta después de calentar
+			TreeMap<Long, Long> nuevo = new TreeMap<Long, Long>();
+			intervalos = mapa.putIfAbsent(matricula, nuevo);
+			if (intervalos == null) {
+				intervalos = nuevo;
+			}
+		}
+		return intervalos;
+	}
+
+	/**
+	 * Indica si el vehículo no tiene ninguna reserva que corte [fechaIni, fechaFin). Un vehículo desconocido se da por
+	 * libre: será la base de datos quien lo rechace al alquilar.
+	 *
+	 * @param matricula matrícula del vehículo
+	 * @param fechaIni  inicio del intervalo
+	 * @param fechaFin  fin del intervalo (excluido)
+	 * @return true si está libre
+	 * @throws IllegalStateException si el índice no se ha calentado
+	 */
+	public boolean estaLibre(String matricula, Date fechaIni, Date fechaFin) {
+		TreeMap<Long, Long> intervalos = getOcupacion().get(matricula);
+		return intervalos == null || libre(intervalos, fechaIni.getTime(), fechaFin.getTime());
+	}
+
+	/**
+	 * Vehículos conocidos sin ninguna reserva que corte [fechaIni, fechaFin). Cuesta O(log n) por vehículo.
+	 *
+	 * @param fechaIni inicio del intervalo
+	 * @param fechaFin fin del intervalo (excluido)
+	 * @return matrículas libres, sin orden
+	 * @throws IllegalStateException si el índice no se ha calentado
+	 */
+	public List<String> vehiculosLibres(Date fechaIni, Date fechaFin) {
+		long ini = fechaIni.getTime();
+		long fin = fechaFin.getTime();
+		List<String> libres = new ArrayList<String>();
+		for (Map.Entry<String, TreeMap<Long, Long>> entrada : getOcupacion().entrySet()) {
+			if (libre(entrada.getValue(), ini, fin)) {
+				libres.add(entrada.getKey());
+			}
+		}
+		return libres;
+	}
+
+	private ConcurrentMap<String, TreeMap<Long, Long>> getOcupacion() {
+		ConcurrentMap<String, TreeMap<Long, Long>> actual = ocupacion;
+		if (actual == null) {
+			throw new IllegalStateException("El índice de disponibilidad no se ha calentado");
+		}
+		return actual;
+	}
+
+	// Como los intervalos son disjuntos, solo puede cortar [ini, fin) el último que empieza antes de fin
+	private static boolean libre(TreeMap<Long, Long> intervalos, long ini, long fin) {
+		synchronized (intervalos) {
+			Map.Entry<Long, Long> anterior = intervalos.lowerEntry(fin);
+			return anterior == null || anterior.getValue() <= ini;
+		}
+	}
+
+	// Añade [ini, fin) fusionándolo con los intervalos que corte o toque
+	private static void ocupar(TreeMap<Long, Long> intervalos, long ini, long fin) {
+		if (fin <= ini) {
+			return;
+		}
+		Map.Entry<Long, Long> anterior = intervalos.floorEntry(ini);
+		if (anterior != null && anterior.getValue() >= ini) {
+			ini = anterior.getKey();
+			fin = Math.max(fin, anterior.getValue());
+		}
+		Map.Entry<Long, Long> siguiente = intervalos.ceilingEntry(ini);
+		while (siguiente != null && siguiente.getKey() <= fin) {
+			fin = Math.max(fin, siguiente.getValue());
+			intervalos.remove(siguiente.getKey());
+			siguiente = intervalos.higherEntry(ini);
+		}
+		intervalos.put(ini, fin);
+	}
+}
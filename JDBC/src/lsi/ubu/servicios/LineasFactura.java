@@ -0,0 +1,74 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+
+/**
+ * LineasFactura: las dos líneas de la factura de un alquiler (alquiler y combustible) tal y como las deja
+ * PoliticaPrecios: importes en céntimos y conceptos en búferes que se reutilizan. Un mismo objeto sirve para todas las
+ * facturas de un lote, así que calcular una factura no crea objetos hasta pasar los valores a JDBC.
+ * <p>
+ * No es seguro entre hilos: cada transacción usa el suyo.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class LineasFactura {
+
+	// Ancho de lineas_factura.concepto (CHAR(40)); la base de datos rellena con blancos hasta él
+	public static final int ANCHO_CONCEPTO = 40;
+
+	private long centimosAlquiler;
+	private long centimosCombustible;
+	private final StringBuilder conceptoAlquiler = new StringBuilder(ANCHO_CONCEPTO);
+	private final StringBuilder conceptoCombustible = new StringBuilder(ANCHO_CONCEPTO);
+
+	public void setCentimosAlquiler(long centimos) {
+		this.centimosAlquiler = centimos;
+	}
+
+	public void setCentimosCombustible(long centimos) {
+		this.centimosCombustible = centimos;
+	}
+
+	// Búfer vacío donde escribir el concepto de la línea de alquiler
+	public StringBuilder nuevoConceptoAlquiler() {
+		conceptoAlquiler.setLength(0);
+		return conceptoAlquiler;
+	}
+
+	public StringBuilder nuevoConceptoCombustible() {
+		conceptoCombustible.setLength(0);
+		return conceptoCombustible;
+	}
+
+	public long getCentimosAlquiler() {
+		return centimosAlquiler;
+	}
+
+	public long getCentimosCombustible() {
+		return centimosCombustible;
+	}
+
+	public long getCentimosTotal() {
+		return centimosAlquiler + centimosCombustible;
+	}
+
+	public BigDecimal getImporteAlquiler() {
+		return BigDecimal.valueOf(centimosAlquiler, 2);
+	}
+
+	public BigDecimal getImporteCombustible() {
+		return BigDecimal.valueOf(centimosCombustible, 2);
+	}
+
+	public BigDecimal getImporteTotal() {
+		return BigDecimal.valueOf(getCentimosTotal(), 2);
+	}
+
+	public String getConceptoAlquiler() {
+		return conceptoAlquiler.toString();
+	}
+
+	public String getConceptoCombustible() {
+		return conceptoCombustible.toString();
+	}
+}
@@ -0,0 +1,198 @@
+package lsi.ubu.servicios;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.util.metricas.FuenteMetricas;
+import lsi.ubu.util.metricas.Histograma;
+import lsi.ubu.util.metricas.ServidorMetricas;
+
+/**
+ * MetricasAlquiler: tiempos de cada etapa de alquilar (ver EtapaAlquiler) en histogramas y número de alquileres por
+ * resultado (correcto o código de AlquilerCochesException). Se publican por JMX como lsi.ubu:type=MetricasAlquiler y,
+ * si se indica la propiedad alquiler.metricas.puerto, en formato Prometheus en http://host:puerto/metricas.
+ * <p>
+ * Se activan con la propiedad de sistema alquiler.metricas=true. Como es una constante, con las métricas desactivadas
+ * el compilador JIT elimina las llamadas de medida y no se lee ni el reloj.
+ * <p>
+ * Uso: long t = MetricasAlquiler.inicio(); ...; MetricasAlquiler.registrar(EtapaAlquiler.X, t);
+ * @version 1.0
+ * @since 1.1
+ */
+public final class MetricasAlquiler implements MetricasAlquilerMBean, FuenteMetricas {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetricasAlquiler.class);
+
+	public static final String PROPIEDAD = "alquiler.metricas";
+	public static final String PROPIEDAD_PUERTO = "alquiler.metricas.puerto";
+	public static final String NOMBRE_MBEAN = "lsi.ubu:type=MetricasAlquiler";
+
+	private static final boolean ACTIVAS = Boolean.getBoolean(PROPIEDAD);
+
+	// Resultados: 0 correctos, 1..4 códigos de AlquilerCochesException, 5 el resto
+	private static final int OTROS = 5;
+	private static final String[] NOMBRES_RESULTADOS = { "correcto", "cliente_no_existe", "vehiculo_no_existe",
+			"sin_dias", "vehiculo_ocupado", "otro_error" };
+
+	private static final MetricasAlquiler INSTANCIA = new MetricasAlquiler();
+
+	static {
+		if (ACTIVAS) {
+			INSTANCIA.publicar();
+		}
+	}
+
+	private final Histograma[] tiempos = new Histograma[EtapaAlquiler.values().length];
+	private final AtomicLongArray resultados = new AtomicLongArray(OTROS + 1);
+
+	private MetricasAlquiler() {
+		for (int i = 0; i < tiempos.length; i++) {
+			tiempos[i] = new Histograma();
+		}
+	}
+
+	public static MetricasAlquiler getInstance() {
+		return INSTANCIA;
+	}
+
+	// Instante de inicio de una etapa, 0 si las métricas están desactivadas
+	static long inicio() {
+		return ACTIVAS ? System.nanoTime() : 0;
+	}
+
+	static void registrar(EtapaAlquiler etapa, long inicio) {
+		if (ACTIVAS) {
+			INSTANCIA.tiempos[etapa.ordinal()].registrarDesde(inicio);
+		}
+	}
+
+	// Fin de un alquiler: su tiempo total y su resultado (e es null si ha ido bien)
+	static void terminar(long inicio, SQLException e) {
+		if (ACTIVAS) {
+			INSTANCIA.tiempos[EtapaAlquiler.TOTAL.ordinal()].registrarDesde(inicio);
+			INSTANCIA.resultados.incrementAndGet(indiceResultado(e));
+		}
+	}
+
+	private static int indiceResultado(SQLException e) {
+		if (e == null) {
+			return 0;
+		}
+		int codigo = e.getErrorCode();
+		return e instanceof AlquilerCochesException && codigo > 0 && codigo < OTROS ? codigo : OTROS;
+	}
+
+	public Histograma getTiempos(EtapaAlquiler etapa) {
+		return tiempos[etapa.ordinal()];
+	}
+
+	// Registro en JMX y servidor HTTP si se ha pedido. Si no se puede, se sigue midiendo igual.
+	private void publicar() {
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			ObjectName nombre = new ObjectName(NOMBRE_MBEAN);
+			if (!servidor.isRegistered(nombre)) {
+				servidor.registerMBean(this, nombre);
+			}
+		} catch (JMException e) {
+			LOGGER.warn("No se ha podido registrar el MBean de métricas: " + e.getMessage());
+		}
+
+		Integer puerto = Integer.getInteger(PROPIEDAD_PUERTO);
+		if (puerto != null) {
+			try {
+				ServidorMetricas servidor = ServidorMetricas.arrancar(puerto, this);
+				LOGGER.info("Métricas de alquiler en http://localhost:" + servidor.getPuerto() + ServidorMetricas.RUTA);
+			} catch (IOException e) {
+				LOGGER.warn("No se ha podido arrancar el servidor de métricas: " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void exportar(StringBuilder salida) {
+		salida.append("# TYPE alquiler_etapa_segundos summary\n");
+		for (EtapaAlquiler etapa : EtapaAlquiler.values()) {
+			getTiempos(etapa).exportar(salida, "alquiler_etapa_segundos", "etapa=\"" + etapa.etiqueta() + "\"");
+		}
+		salida.append("# TYPE alquiler_resultados_total counter\n");
+		for (int i = 0; i < NOMBRES_RESULTADOS.length; i++) {
+			salida.append("alquiler_resultados_total{resultado=\"").append(NOMBRES_RESULTADOS[i]).append("\"} ")
+					.append(resultados.get(i)).append('\n');
+		}
+	}
+
+	@Override
+	public boolean isActivas() {
+		return ACTIVAS;
+	}
+
+	@Override
+	public long getCorrectos() {
+		return resultados.get(0);
+	}
+
+	@Override
+	public long getClientesInexistentes() {
+		return resultados.get(AlquilerCochesException.CLIENTE_NO_EXIST);
+	}
+
+	@Override
+	public long getVehiculosInexistentes() {
+		return resultados.get(AlquilerCochesException.VEHICULO_NO_EXIST);
+	}
+
+	@Override
+	public long getSinDias() {
+		return resultados.get(AlquilerCochesException.SIN_DIAS);
+	}
+
+	@Override
+	public long getVehiculosOcupados() {
+		return resultados.get(AlquilerCochesException.VEHICULO_OCUPADO);
+	}
+
+	@Override
+	public long getOtrosErrores() {
+		return resultados.get(OTROS);
+	}
+
+	@Override
+	public String getResumen() {
+		StringBuilder resumen = new StringBuilder();
+		for (EtapaAlquiler etapa : EtapaAlquiler.values()) {
+			Histograma h = getTiempos(etapa);
+			if (h.getTotal() > 0) {
+				resumen.append(etapa).append(": ").append(h.resumen()).append('\n');
+			}
+		}
+		return resumen.toString();
+	}
+
+	@Override
+	public double getPercentil(String etapa, double percentil) {
+		return getTiempos(EtapaAlquiler.valueOf(etapa.trim().toUpperCase())).getPercentil(percentil,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void reiniciar() {
+		for (Histograma h : tiempos) {
+			h.reiniciar();
+		}
+		for (int i = 0; i < resultados.length(); i++) {
+			resultados.set(i, 0);
+		}
+	}
+}
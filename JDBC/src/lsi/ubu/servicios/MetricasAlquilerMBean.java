@@ -0,0 +1,39 @@
+package lsi.ubu.servicios;
+
+/**
+ * Interfaz de gestion JMX de las métricas de alquilar (MBean estándar registrado como lsi.ubu:type=MetricasAlquiler).
+ * Los tiempos se dan en milisegundos.
+ * @version 1.0
+ * @since 1.1
+ */
+public interface MetricasAlquilerMBean {
+
+	boolean isActivas();
+
+	long getCorrectos();
+
+	long getClientesInexistentes();
+
+	long getVehiculosInexistentes();
+
+	long getSinDias();
+
+	long getVehiculosOcupados();
+
+	/** Errores que no son de negocio (base de datos, tiempo de espera del pool...). */
+	long getOtrosErrores();
+
+	/** Una línea por etapa con número de muestras, media y percentiles. */
+	String getResumen();
+
+	/**
+	 * Percentil del tiempo de una etapa.
+	 *
+	 * @param etapa     nombre de EtapaAlquiler
+	 * @param percentil entre 0 y 100
+	 * @return milisegundos
+	 */
+	double getPercentil(String etapa, double percentil);
+
+	void reiniciar();
+}
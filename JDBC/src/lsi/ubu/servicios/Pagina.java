@@ -0,0 +1,44 @@
+package lsi.ubu.servicios;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pagina: una página de una consulta paginada por clave (ver Servicio.reservasCliente y facturasCliente). En lugar de
+ * un desplazamiento lleva la clave del último elemento, que es desde donde sigue la página siguiente: así una página
+ * profunda cuesta lo mismo que la primera. Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Pagina<T> {
+
+	private final List<T> elementos;
+	private final long siguiente;
+	private final boolean ultima;
+
+	Pagina(List<T> elementos, long siguiente, boolean ultima) {
+		this.elementos = Collections.unmodifiableList(new ArrayList<T>(elementos));
+		this.siguiente = siguiente;
+		this.ultima = ultima;
+	}
+
+	public List<T> getElementos() {
+		return elementos;
+	}
+
+	// Clave que hay que pasar como "desde" para pedir la página siguiente
+	public long getSiguiente() {
+		return siguiente;
+	}
+
+	// No hay más elementos después de esta página
+	public boolean isUltima() {
+		return ultima;
+	}
+
+	@Override
+	public String toString() {
+		return "Pagina" + elementos + (ultima ? "" : ", siguiente=" + siguiente);
+	}
+}
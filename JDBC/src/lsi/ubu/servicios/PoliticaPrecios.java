@@ -0,0 +1,23 @@
+package lsi.ubu.servicios;
+
+/**
+ * PoliticaPrecios: regla con la que se factura un alquiler. La estándar es CalculadoraPrecios; otras reglas
+ * (descuentos, tarifas por tramos...) se enchufan en ServicioImpl y BackendAlquilerJDBC implementando esta interfaz.
+ * <p>
+ * Solo se aplica a las facturas que se calculan en Java (backend JDBC, alquiler por lotes y presupuestos): el
+ * procedimiento alquilar_vehiculo del backend PL/SQL implementa la regla estándar. Por eso ServicioImpl no acepta otra
+ * política con el backend PL/SQL, ni un backend JDBC con una política distinta de la suya.
+ * @version 1.0
+ * @since 1.1
+ */
+public interface PoliticaPrecios {
+
+	/**
+	 * Calcula importes y conceptos de las dos líneas de factura de un alquiler.
+	 *
+	 * @param datos  datos de modelo y combustible del vehículo
+	 * @param dias   días a facturar
+	 * @param lineas donde dejar el resultado; se sobrescribe entero
+	 */
+	void calcular(DatosFacturacion datos, long dias, LineasFactura lineas);
+}
@@ -0,0 +1,92 @@
+package lsi.ubu.servicios;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.util.PoolDeConexiones;
+import lsi.ubu.util.RegistroSentencias;
+
+/**
+ * Presupuestador: implementación de Servicio.presupuestar y presupuestarLote. Calcula con la misma política de precios
+ * y los mismos días que alquilar, sacando modelo y combustible de CacheDatosReferencia. Solo si faltan vehículos en la
+ * cache se pide una conexión, y entonces se leen todos de una vez; nunca se consultan ni se escriben reservas o facturas.
+ * @version 1.0
+ * @since 1.1
+ */
+final class Presupuestador {
+
+	private final PoliticaPrecios politica;
+
+	Presupuestador(PoliticaPrecios politica) {
+		this.politica = politica;
+	}
+
+	List<Presupuesto> presupuestar(List<SolicitudPresupuesto> solicitudes) throws SQLException {
+		Map<String, DatosFacturacion> vehiculos = cargarVehiculos(solicitudes);
+
+		// Las mismas líneas para todos los presupuestos
+		LineasFactura lineas = new LineasFactura();
+		List<Presupuesto> presupuestos = new ArrayList<Presupuesto>(solicitudes.size());
+		for (SolicitudPresupuesto s : solicitudes) {
+			DatosFacturacion datos = vehiculos.get(s.getMatricula());
+			try {
+				// Mismo orden de comprobaciones que alquilar: primero los días y luego el vehículo
+				long dias = ServicioImpl.calcularDias(s.getFechaIni(), s.getFechaFin());
+				if (datos == null) {
+					throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_NO_EXIST);
+				}
+				politica.calcular(datos, dias, lineas);
+				presupuestos.add(Presupuesto.correcto(s, dias, lineas.getImporteAlquiler(),
+						lineas.getImporteCombustible()));
+			} catch (AlquilerCochesException e) {
+				presupuestos.add(Presupuesto.erroneo(s, e));
+			}
+		}
+		return presupuestos;
+	}
+
+	// Datos de facturación de los vehículos existentes, desde la cache o, si falta alguno, con una consulta por conjuntos
+	private static Map<String, DatosFacturacion> cargarVehiculos(List<SolicitudPresupuesto> solicitudes)
+			throws SQLException {
+		CacheDatosReferencia cache = CacheDatosReferencia.getInstance();
+		Map<String, DatosFacturacion> vehiculos = new HashMap<String, DatosFacturacion>();
+		Set<String> desconocidos = new HashSet<String>();
+		for (SolicitudPresupuesto s : solicitudes) {
+			if (!vehiculos.containsKey(s.getMatricula())) {
+				DatosFacturacion datos = cache.getDatosFacturacionSiPresente(s.getMatricula());
+				if (datos != null) {
+					vehiculos.put(s.getMatricula(), datos);
+				} else {
+					desconocidos.add(s.getMatricula());
+				}
+			}
+		}
+		if (desconocidos.isEmpty()) {
+			return vehiculos;
+		}
+
+		Connection con = null;
+		RegistroSentencias sentencias = null;
+		try {
+			con = PoolDeConexiones.getInstance().getConnection();
+			sentencias = new RegistroSentencias(con);
+			AlquilerLote.cargarVehiculos(sentencias, desconocidos, vehiculos);
+			// Solo lectura: cerramos la transacción sin cambios
+			con.rollback();
+			return vehiculos;
+		} finally {
+			try {
+				if (sentencias != null) sentencias.close();
+			} finally {
+				if (con != null) con.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+
+/**
+ * Presupuesto: lo que costaría un alquiler, calculado igual que su factura pero sin guardar nada. Si no se ha podido
+ * calcular lleva la excepción que habría lanzado Servicio.presupuestar (vehículo inexistente o sin días), cuyo código
+ * se obtiene con getCodigoError. Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Presupuesto {
+
+	private final SolicitudPresupuesto solicitud;
+	private final long dias;
+	private final BigDecimal importeAlquiler;
+	private final BigDecimal importeCombustible;
+	private final SQLException error;
+
+	private Presupuesto(SolicitudPresupuesto solicitud, long dias, BigDecimal importeAlquiler,
+			BigDecimal importeCombustible, SQLException error) {
+		this.solicitud = solicitud;
+		this.dias = dias;
+		this.importeAlquiler = importeAlquiler;
+		this.importeCombustible = importeCombustible;
+		this.error = error;
+	}
+
+	static Presupuesto correcto(SolicitudPresupuesto solicitud, long dias, BigDecimal importeAlquiler,
+			BigDecimal importeCombustible) {
+		return new Presupuesto(solicitud, dias, importeAlquiler, importeCombustible, null);
+	}
+
+	static Presupuesto erroneo(SolicitudPresupuesto solicitud, SQLException error) {
+		return new Presupuesto(solicitud, 0, null, null, error);
+	}
+
+	public SolicitudPresupuesto getSolicitud() {
+		return solicitud;
+	}
+
+	public boolean isCorrecto() {
+		return error == null;
+	}
+
+	public long getDias() {
+		return dias;
+	}
+
+	// Los importes son nulos si el presupuesto no se ha podido calcular
+
+	public BigDecimal getImporteAlquiler() {
+		return importeAlquiler;
+	}
+
+	public BigDecimal getImporteCombustible() {
+		return importeCombustible;
+	}
+
+	public BigDecimal getImporteTotal() {
+		return error == null ? importeAlquiler.add(importeCombustible) : null;
+	}
+
+	// Código de AlquilerCochesException, 0 si ha ido bien
+	public int getCodigoError() {
+		return error == null ? 0 : error.getErrorCode();
+	}
+
+	public SQLException getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return isCorrecto() ? "Presupuesto[" + solicitud + ", " + dias + " dias, total " + getImporteTotal() + "]"
+				: "Presupuesto[" + solicitud + ", error " + getCodigoError() + ": " + error.getMessage() + "]";
+	}
+}
@@ -0,0 +1,62 @@
+package lsi.ubu.servicios;
+
+import java.math.BigDecimal;
+
+/**
+ * ReciboAlquiler: lo que genera un alquiler confirmado, tal y como queda en la base de datos: número de reserva, número
+ * de factura, días facturados e importes de las dos líneas de factura y del total. Así quien alquila no tiene que volver
+ * a consultar facturas y lineas_factura para enseñarlo. Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class ReciboAlquiler {
+
+	private final long idReserva;
+	private final int nroFactura;
+	private final long dias;
+	private final BigDecimal importeAlquiler;
+	private final BigDecimal importeCombustible;
+	private final BigDecimal importeTotal;
+
+	public ReciboAlquiler(long idReserva, int nroFactura, long dias, BigDecimal importeAlquiler,
+			BigDecimal importeCombustible) {
+		this.idReserva = idReserva;
+		this.nroFactura = nroFactura;
+		this.dias = dias;
+		this.importeAlquiler = importeAlquiler;
+		this.importeCombustible = importeCombustible;
+		// El importe de la factura es siempre la suma de sus dos líneas
+		this.importeTotal = importeAlquiler.add(importeCombustible);
+	}
+
+	public long getIdReserva() {
+		return idReserva;
+	}
+
+	public int getNroFactura() {
+		return nroFactura;
+	}
+
+	public long getDias() {
+		return dias;
+	}
+
+	public BigDecimal getImporteAlquiler() {
+		return importeAlquiler;
+	}
+
+	public BigDecimal getImporteCombustible() {
+		return importeCombustible;
+	}
+
+	public BigDecimal getImporteTotal() {
+		return importeTotal;
+	}
+
+	@Override
+	public String toString() {
+		return "ReciboAlquiler[idReserva=" + idReserva + ", nroFactura=" + nroFactura + ", dias=" + dias
+				+ ", alquiler=" + importeAlquiler + ", combustible=" + importeCombustible + ", total=" + importeTotal
+				+ "]";
+	}
+}
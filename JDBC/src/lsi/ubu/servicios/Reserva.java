@@ -0,0 +1,45 @@
+package lsi.ubu.servicios;
+
+import java.util.Date;
+
+/**
+ * Reserva: una fila de reservas tal y como la devuelve Servicio.reservasCliente. Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Reserva {
+
+	private final long idReserva;
+	private final String matricula;
+	private final Date fechaIni;
+	private final Date fechaFin;
+
+	Reserva(long idReserva, String matricula, Date fechaIni, Date fechaFin) {
+		this.idReserva = idReserva;
+		this.matricula = matricula;
+		this.fechaIni = fechaIni == null ? null : new Date(fechaIni.getTime());
+		this.fechaFin = fechaFin == null ? null : new Date(fechaFin.getTime());
+	}
+
+	public long getIdReserva() {
+		return idReserva;
+	}
+
+	public String getMatricula() {
+		return matricula;
+	}
+
+	public Date getFechaIni() {
+		return fechaIni == null ? null : new Date(fechaIni.getTime());
+	}
+
+	// Puede ser nula: la reserva ocupa entonces los días de alquiler por defecto
+	public Date getFechaFin() {
+		return fechaFin == null ? null : new Date(fechaFin.getTime());
+	}
+
+	@Override
+	public String toString() {
+		return "Reserva[" + idReserva + ", " + matricula + ", " + fechaIni + ", " + fechaFin + "]";
+	}
+}
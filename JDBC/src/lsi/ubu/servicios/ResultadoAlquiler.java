@@ -0,0 +1,59 @@
+package lsi.ubu.servicios;
+
+import java.sql.SQLException;
+
+/**
+ * ResultadoAlquiler: resultado de una solicitud dentro de una carga por lotes. Si ha ido bien lleva el número de
+ * factura; si no, la excepción que se habría lanzado con Servicio.alquilar (normalmente una AlquilerCochesException,
+ * cuyo código se obtiene con getCodigoError). Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class ResultadoAlquiler {
+
+	private final SolicitudAlquiler solicitud;
+	private final int nroFactura;
+	private final SQLException error;
+
+	private ResultadoAlquiler(SolicitudAlquiler solicitud, int nroFactura, SQLException error) {
+		this.solicitud = solicitud;
+		this.nroFactura = nroFactura;
+		this.error = error;
+	}
+
+	static ResultadoAlquiler correcto(SolicitudAlquiler solicitud, int nroFactura) {
+		return new ResultadoAlquiler(solicitud, nroFactura, null);
+	}
+
+	static ResultadoAlquiler erroneo(SolicitudAlquiler solicitud, SQLException error) {
+		return new ResultadoAlquiler(solicitud, -1, error);
+	}
+
+	public SolicitudAlquiler getSolicitud() {
+		return solicitud;
+	}
+
+	public boolean isCorrecto() {
+		return error == null;
+	}
+
+	// -1 si la solicitud no se ha podido alquilar
+	public int getNroFactura() {
+		return nroFactura;
+	}
+
+	// Código de AlquilerCochesException (o del SGBD si el error no es de negocio), 0 si ha ido bien
+	public int getCodigoError() {
+		return error == null ? 0 : error.getErrorCode();
+	}
+
+	public SQLException getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return isCorrecto() ? "ResultadoAlquiler[" + solicitud + ", factura " + nroFactura + "]"
+				: "ResultadoAlquiler[" + solicitud + ", error " + getCodigoError() + ": " + error.getMessage() + "]";
+	}
+}
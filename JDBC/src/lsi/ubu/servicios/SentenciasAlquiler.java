@@ -0,0 +1,90 @@
+package lsi.ubu.servicios;
+
+import lsi.ubu.util.SentenciaSQL;
+
+/**
+ * SentenciasAlquiler: sentencias SQL con nombre que usa el camino de alquiler. Se declaran aquí una sola vez
+ * para que RegistroSentencias las reutilice en lugar de volver a prepararlas en cada llamada.
+ * @version 1.0
+ * @since 1.1
+ */
+public enum SentenciasAlquiler implements SentenciaSQL {
+
+	EXISTE_CLIENTE("SELECT NIF FROM clientes WHERE NIF = ?"),
+
+	// Las reservas son intervalos semiabiertos [fecha_ini, fecha_fin): una reserva solapa con [?ini, ?fin) si empieza
+	// antes de ?fin y termina después de ?ini. Una reserva sin fecha de fin ocupa los DIAS_DE_ALQUILER días que se le
+	// facturan. Parámetros: matrícula, inicio y fin del nuevo alquiler. El predicado sobre el fin efectivo es el que
+	// recorre el índice reservas_disponibilidad, así que solo se leen las reservas que aún no han terminado.
+	RESERVAS_SOLAPADAS("SELECT matricula FROM reservas WHERE matricula = ? AND " +
+			"NVL(fecha_fin, fecha_ini + " + ServicioImpl.DIAS_DE_ALQUILER + ") > ? AND fecha_ini < ? AND rownum = 1"),
+
+	// ControlConcurrencia.BLOQUEO_FILA: los alquileres del mismo vehículo se esperan aquí hasta el commit del anterior
+	BLOQUEAR_VEHICULO("SELECT matricula FROM vehiculos WHERE matricula = ? FOR UPDATE"),
+
+	// Los identificadores se asignan desde AsignadorIdentificadores
+	INSERTAR_RESERVA("INSERT INTO reservas (idReserva, cliente, matricula, fecha_ini, fecha_fin) VALUES (?, ?, ?, ?, ?)"),
+
+	DATOS_FACTURACION("SELECT m.precio_cada_dia, m.capacidad_deposito, m.tipo_combustible, pc.precio_por_litro, m.id_modelo " +
+			"FROM vehiculos v JOIN modelos m ON v.id_modelo = m.id_modelo " +
+			"JOIN precio_combustible pc ON m.tipo_combustible = pc.tipo_combustible " +
+			"WHERE v.matricula = ?"),
+
+	// Recarga de entradas sueltas de CacheDatosReferencia
+	DATOS_MODELO("SELECT precio_cada_dia, capacidad_deposito, tipo_combustible FROM modelos WHERE id_modelo = ?"),
+
+	PRECIO_COMBUSTIBLE("SELECT precio_por_litro FROM precio_combustible WHERE tipo_combustible = ?"),
+
+	INSERTAR_FACTURA("INSERT INTO facturas (nroFactura, importe, cliente) VALUES (?, ?, ?)"),
+
+	INSERTAR_LINEA_FACTURA("INSERT INTO lineas_factura (nroFactura, concepto, importe) VALUES (?, ?, ?)"),
+
+	// Alquiler completo en un solo viaje (BackendAlquilerPLSQL)
+	ALQUILAR_VEHICULO("{call alquilar_vehiculo(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)}"),
+
+	// Alquiler por lotes (AlquilerLote): las listas IN tienen siempre AlquilerLote.MAX_PARAMETROS_IN huecos,
+	// rellenando con NULL los que sobran, para que el texto de la sentencia no cambie con el tamaño del lote
+	CLIENTES_EXISTENTES("SELECT NIF FROM clientes WHERE NIF IN " + listaParametros(AlquilerLote.MAX_PARAMETROS_IN)),
+
+	DATOS_FACTURACION_LOTE("SELECT v.matricula, m.precio_cada_dia, m.capacidad_deposito, m.tipo_combustible, pc.precio_por_litro, m.id_modelo " +
+			"FROM vehiculos v JOIN modelos m ON v.id_modelo = m.id_modelo " +
+			"JOIN precio_combustible pc ON m.tipo_combustible = pc.tipo_combustible " +
+			"WHERE v.matricula IN " + listaParametros(AlquilerLote.MAX_PARAMETROS_IN)),
+
+	// Reservas de los vehículos que solapan con la ventana de fechas del lote, con su fin efectivo (ver RESERVAS_SOLAPADAS)
+	RESERVAS_LOTE("SELECT matricula, fecha_ini, NVL(fecha_fin, fecha_ini + " + ServicioImpl.DIAS_DE_ALQUILER + ") FROM reservas " +
+			"WHERE NVL(fecha_fin, fecha_ini + " + ServicioImpl.DIAS_DE_ALQUILER + ") > ? AND fecha_ini < ? AND matricula IN " +
+			listaParametros(AlquilerLote.MAX_PARAMETROS_IN)),
+
+	// Consultas de ConsultasCliente, paginadas por clave: los que siguen a la clave ?desde, como mucho ?n. El índice
+	// (cliente, clave) las da ya ordenadas y la consulta para en la fila n, así que una página profunda cuesta lo mismo
+	// que la primera. Parámetros: NIF, desde y n.
+	RESERVAS_CLIENTE("SELECT * FROM (SELECT idReserva, matricula, fecha_ini, fecha_fin FROM reservas " +
+			"WHERE cliente = ? AND idReserva > ? ORDER BY idReserva) WHERE rownum <= ?"),
+
+	// Las facturas de la página con sus líneas en un solo viaje
+	FACTURAS_CLIENTE("SELECT f.nroFactura, f.importe, l.concepto, l.importe FROM " +
+			"(SELECT * FROM (SELECT nroFactura, importe FROM facturas WHERE cliente = ? AND nroFactura > ? " +
+			"ORDER BY nroFactura) WHERE rownum <= ?) f " +
+			"LEFT JOIN lineas_factura l ON l.nroFactura = f.nroFactura ORDER BY f.nroFactura, l.concepto");
+
+	private final String sql;
+
+	private SentenciasAlquiler(String sql) {
+		this.sql = sql;
+	}
+
+	@Override
+	public String getSql() {
+		return sql;
+	}
+
+	// "(?, ?, ..., ?)" con n parámetros
+	private static String listaParametros(int n) {
+		StringBuilder sb = new StringBuilder("(?");
+		for (int i = 1; i < n; i++) {
+			sb.append(", ?");
+		}
+		return sb.append(')').toString();
+	}
+}
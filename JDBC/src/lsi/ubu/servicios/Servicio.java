@@ -2,8 +2,25 @@ package lsi.ubu.servicios;
 
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 
 public interface Servicio {
 
-	public void alquilar(String nifCliente, String matricula, Date fechaIni, Date fechaFin) throws SQLException;
+	public ReciboAlquiler alquilar(String nifCliente, String matricula, Date fechaIni, Date fechaFin) throws SQLException;
+
+	public List<ResultadoAlquiler> alquilarLote(List<SolicitudAlquiler> solicitudes) throws SQLException;
+
+	public List<ResultadoAlquiler> alquilarLote(List<SolicitudAlquiler> solicitudes, int tamanoBloque) throws SQLException;
+
+	public Presupuesto presupuestar(String matricula, Date fechaIni, Date fechaFin) throws SQLException;
+
+	public List<Presupuesto> presupuestarLote(List<SolicitudPresupuesto> solicitudes) throws SQLException;
+
+	public boolean estaDisponible(String matricula, Date fechaIni, Date fechaFin) throws SQLException;
+
+	public List<String> vehiculosDisponibles(Date fechaIni, Date fechaFin) throws SQLException;
+
+	public Pagina<Reserva> reservasCliente(String nifCliente, long desde, int tamano) throws SQLException;
+
+	public Pagina<Factura> facturasCliente(String nifCliente, long desde, int tamano) throws SQLException;
 }
@@ -0,0 +1,20 @@
+package lsi.ubu.servicios;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ServicioAsincrono: variante no bloqueante de Servicio. Las operaciones devuelven enseguida un CompletableFuture que
+ * se completa al confirmarse el alquiler, o excepcionalmente con la misma SQLException (normalmente una
+ * AlquilerCochesException) que lanzaría Servicio.
+ * @version 1.0
+ * @since 1.1
+ */
+public interface ServicioAsincrono extends AutoCloseable {
+
+	public CompletableFuture<ReciboAlquiler> alquilar(String nifCliente, String matricula, Date fechaIni, Date fechaFin);
+
+	// Deja de aceptar alquileres; los que están en curso terminan
+	@Override
+	public void close();
+}
@@ -0,0 +1,149 @@
+package lsi.ubu.servicios;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import lsi.ubu.util.Ejecutores;
+import lsi.ubu.util.PoolDeConexiones;
+
+/**
+ * ServicioAsincronoImpl: ejecuta los alquileres de ServicioImpl en hilos virtuales (Java 21 o posterior; en versiones
+ * anteriores, en un pool de hilos de plataforma del mismo tamaño que el de conexiones).
+ * <p>
+ * Como mucho hay tantos alquileres en curso como conexiones tiene PoolDeConexiones: el resto espera en un semáforo
+ * dentro de su hilo virtual, que apenas cuesta memoria, en lugar de esperar en el pool con el tiempo de adquisición
+ * corriendo. Así una sola máquina virtual puede aceptar miles de solicitudes simultáneas.
+ * <p>
+ * Creado sin límite explícito sigue al pool: antes de cada alquiler vuelve a leer su tamaño máximo y, si ha cambiado
+ * (PoolDeConexiones.resizePool), ajusta el semáforo y, sin hilos virtuales, los hilos del ejecutor. Con un límite
+ * explícito se queda con él.
+ * @version 1.1
+ * @since 1.1
+ */
+public class ServicioAsincronoImpl implements ServicioAsincrono {
+
+	// Si el pool no publica su tamaño máximo (no es de UCP), el mismo valor por defecto que PoolDeConexiones
+	private static final int EN_CURSO_POR_DEFECTO = Integer.getInteger("pool.tamanoMaximo", 10);
+
+	// Semáforo al que se le pueden quitar permisos (reducePermits es protegido)
+	private static final class Permisos extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		Permisos(int permisos) {
+			super(permisos);
+		}
+
+		void reducir(int permisos) {
+			reducePermits(permisos);
+		}
+	}
+
+	private final ServicioImpl servicio;
+	private final Permisos permisos;
+	private final ExecutorService ejecutor;
+	// Si el límite se vuelve a leer del pool antes de cada alquiler
+	private final boolean sigueAlPool;
+	private volatile int maxEnCurso;
+
+	public ServicioAsincronoImpl() {
+		this(new ServicioImpl());
+	}
+
+	public ServicioAsincronoImpl(ServicioImpl servicio) {
+		this(servicio, tamanoPool(), true);
+	}
+
+	public ServicioAsincronoImpl(ServicioImpl servicio, int maxEnCurso) {
+		this(servicio, maxEnCurso, false);
+	}
+
+	private ServicioAsincronoImpl(ServicioImpl servicio, int maxEnCurso, boolean sigueAlPool) {
+		if (maxEnCurso < 1) {
+			throw new IllegalArgumentException("El número de alquileres en curso debe ser positivo: " + maxEnCurso);
+		}
+		this.servicio = servicio;
+		this.permisos = new Permisos(maxEnCurso);
+		this.ejecutor = Ejecutores.nuevo(true, maxEnCurso);
+		this.sigueAlPool = sigueAlPool;
+		this.maxEnCurso = maxEnCurso;
+	}
+
+	private static int tamanoPool() {
+		int tamano = PoolDeConexiones.getInstance().getTamanoMaximo();
+		return tamano > 0 ? tamano : EN_CURSO_POR_DEFECTO;
+	}
+
+	// Pone el límite al tamaño actual del pool. Los alquileres en curso terminan con sus permisos: si baja, los nuevos
+	// esperan hasta que queden por debajo del límite nuevo.
+	private void seguirAlPool() {
+		int nuevo = tamanoPool();
+		if (nuevo == maxEnCurso) {
+			return;
+		}
+		synchronized (permisos) {
+			int anterior = maxEnCurso;
+			if (nuevo > anterior) {
+				permisos.release(nuevo - anterior);
+			} else if (nuevo < anterior) {
+				permisos.reducir(anterior - nuevo);
+			}
+			if (ejecutor instanceof ThreadPoolExecutor) {
+				// Pool fijo de hilos de plataforma: sin hilos virtuales cada alquiler en curso ocupa uno
+				ThreadPoolExecutor hilos = (ThreadPoolExecutor) ejecutor;
+				if (nuevo > hilos.getMaximumPoolSize()) {
+					hilos.setMaximumPoolSize(nuevo);
+					hilos.setCorePoolSize(nuevo);
+				} else {
+					hilos.setCorePoolSize(nuevo);
+					hilos.setMaximumPoolSize(nuevo);
+				}
+			}
+			maxEnCurso = nuevo;
+		}
+	}
+
+	public CompletableFuture<ReciboAlquiler> alquilar(final String nifCliente, final String matricula,
+			final Date fechaIni, final Date fechaFin) {
+		if (sigueAlPool) {
+			seguirAlPool();
+		}
+		final CompletableFuture<ReciboAlquiler> resultado = new CompletableFuture<ReciboAlquiler>();
+		ejecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					permisos.acquire();
+					try {
+						resultado.complete(servicio.alquilar(nifCliente, matricula, fechaIni, fechaFin));
+					} finally {
+						permisos.release();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					resultado.completeExceptionally(e);
+				} catch (Throwable e) {
+					resultado.completeExceptionally(e);
+				}
+			}
+		});
+		return resultado;
+	}
+
+	// Alquileres que esperan turno para ir a la base de datos
+	public int getEnEspera() {
+		return permisos.getQueueLength();
+	}
+
+	// Límite actual de alquileres en curso
+	public int getMaxEnCurso() {
+		return maxEnCurso;
+	}
+
+	@Override
+	public void close() {
+		ejecutor.shutdown();
+	}
+}
@@ -1,20 +1,22 @@
 package lsi.ubu.servicios;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import lsi.ubu.excepciones.AlquilerCochesException;
 import lsi.ubu.util.PoolDeConexiones;
+import lsi.ubu.util.RegistroSentencias;
+import lsi.ubu.util.dialectos.Dialectos;
+import lsi.ubu.util.exceptions.RegistroSGBDErrorUtil;
 import lsi.ubu.util.exceptions.SGBDError;
-import lsi.ubu.util.exceptions.oracle.OracleSGBDErrorUtil;
 import lsi.ubu.Misc;
 
 /**
@@ -31,176 +33,266 @@ public class ServicioImpl implements Servicio {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ServicioImpl.class);
 	
 	// En caso de no estar indicada la fecha final del alquiler, se utilizaŕá por defecto un alquiler de 4 días.
-	private static final int DIAS_DE_ALQUILER = 4;
+	// Está copiado como literal en alquiler_coches.sql (índice reservas_disponibilidad y alquilar_vehiculo) y en
+	// GeneradorCarga: si cambia, hay que cambiarlo también allí.
+	static final int DIAS_DE_ALQUILER = 4;
+
+	// Secuencias de las que salen los identificadores de reservas y facturas
+	public static final String SECUENCIA_RESERVAS = "seq_reservas";
+	public static final String SECUENCIA_FACTURAS = "seq_num_fact";
+
+	// Tamaño de bloque por defecto de alquilarLote: solicitudes confirmadas en cada commit
+	public static final int TAMANO_BLOQUE_POR_DEFECTO = 500;
+
+	// Propiedad de sistema para elegir el backend: "plsql" (un solo viaje) o "jdbc" (sentencia a sentencia). Por defecto
+	// plsql si el dialecto en uso tiene los procedimientos de alquiler_coches.sql y jdbc si no (H2)
+	public static final String PROPIEDAD_BACKEND = "alquiler.backend";
+
+	// Backend que ejecuta la parte transaccional del alquiler
+	private final BackendAlquiler backend;
+
+	// Cómo se serializan los alquileres simultáneos del mismo vehículo
+	private final ControlConcurrencia control;
+
+	// Regla con la que se facturan los alquileres que se calculan en Java (lotes y presupuestos)
+	private final PoliticaPrecios politica;
+
+	// Ocupación en memoria para las consultas de disponibilidad, se actualiza tras cada alquiler confirmado
+	private final IndiceDisponibilidad indice;
+
+	// Solo un hilo calienta el índice y los demás esperan a que termine. Es un ReentrantLock y no un monitor porque se
+	// mantiene durante la carga desde la base de datos: un hilo virtual bloqueado en un synchronized no suelta su hilo
+	// portador.
+	private static final ReentrantLock CALENTANDO_INDICE = new ReentrantLock();
+
+	public ServicioImpl() {
+		this(ControlConcurrencia.configurado());
+	}
+
+	public ServicioImpl(ControlConcurrencia control) {
+		this(backendConfigurado(), IndiceDisponibilidad.getInstance(), control);
+	}
+
+	private static BackendAlquiler backendConfigurado() {
+		String valor = System.getProperty(PROPIEDAD_BACKEND);
+		boolean plsql = valor != null ? "plsql".equalsIgnoreCase(valor) : Dialectos.getActual().isPLSQL();
+		return plsql ? new BackendAlquilerPLSQL() : new BackendAlquilerJDBC();
+	}
+
+	public ServicioImpl(BackendAlquiler backend) {
+		this(backend, IndiceDisponibilidad.getInstance());
+	}
+
+	public ServicioImpl(BackendAlquiler backend, IndiceDisponibilidad indice) {
+		this(backend, indice, ControlConcurrencia.configurado());
+	}
+
+	public ServicioImpl(BackendAlquiler backend, IndiceDisponibilidad indice, ControlConcurrencia control) {
+		this(backend, indice, control, CalculadoraPrecios.getInstance());
+	}
+
+	// El presupuesto, los lotes y la factura del alquiler individual tienen que salir de la misma regla: el backend PL/SQL
+	// solo sabe la estándar y el JDBC tiene que usar la del servicio. Si no, IllegalArgumentException.
+	public ServicioImpl(BackendAlquiler backend, IndiceDisponibilidad indice, ControlConcurrencia control,
+			PoliticaPrecios politica) {
+		if (backend instanceof BackendAlquilerPLSQL && politica.getClass() != CalculadoraPrecios.class) {
+			throw new IllegalArgumentException("El backend PL/SQL solo factura con CalculadoraPrecios: "
+					+ politica.getClass().getName() + " necesita BackendAlquilerJDBC");
+		}
+		if (backend instanceof BackendAlquilerJDBC && ((BackendAlquilerJDBC) backend).getPoliticaPrecios() != politica) {
+			throw new IllegalArgumentException(
+					"El backend JDBC tiene que facturar con la misma política de precios que el servicio");
+		}
+		this.backend = backend;
+		this.indice = indice;
+		this.control = control;
+		this.politica = politica;
+	}
+
+	ControlConcurrencia getControl() {
+		return control;
+	}
+
+	PoliticaPrecios getPoliticaPrecios() {
+		return politica;
+	}
+
+	// Alquiler por lotes: valida y guarda las solicitudes por bloques, confirmando cada bloque por separado.
+	// Una solicitud errónea no detiene la carga, su error queda en el resultado correspondiente. Con BLOQUEO_LOCAL
+	// los bloques no pasan de AlquilerLote.MAX_BLOQUE_LOCAL solicitudes para no frenar a los alquileres individuales.
+	public List<ResultadoAlquiler> alquilarLote(List<SolicitudAlquiler> solicitudes) throws SQLException {
+		return alquilarLote(solicitudes, TAMANO_BLOQUE_POR_DEFECTO);
+	}
+
+	public List<ResultadoAlquiler> alquilarLote(List<SolicitudAlquiler> solicitudes, int tamanoBloque) throws SQLException {
+		if (tamanoBloque < 1) {
+			throw new IllegalArgumentException("El tamaño de bloque debe ser positivo: " + tamanoBloque);
+		}
+		return new AlquilerLote(this).alquilar(solicitudes, tamanoBloque);
+	}
+
+	// Presupuestos: lo que costaría el alquiler, con la misma regla que la factura pero sin escribir nada. Los datos
+	// salen de la cache de referencia, así que normalmente no van a la base de datos.
+	public Presupuesto presupuestar(String matricula, Date fechaIni, Date fechaFin) throws SQLException {
+		Presupuesto presupuesto = presupuestarLote(
+				Collections.singletonList(new SolicitudPresupuesto(matricula, fechaIni, fechaFin))).get(0);
+		if (!presupuesto.isCorrecto()) {
+			throw presupuesto.getError();
+		}
+		return presupuesto;
+	}
+
+	public List<Presupuesto> presupuestarLote(List<SolicitudPresupuesto> solicitudes) throws SQLException {
+		return new Presupuestador(politica).presupuestar(solicitudes);
+	}
+
+	// Consultas de disponibilidad contra el índice en memoria, sin tocar la base de datos salvo para calentarlo la
+	// primera vez. Son orientativas: alquilar vuelve a comprobarlo en la transacción.
+	public boolean estaDisponible(String matricula, Date fechaIni, Date fechaFin) throws SQLException {
+		calentarIndice();
+		return indice.estaLibre(matricula, fechaIni, calcularFechaFin(fechaIni, fechaFin));
+	}
+
+	public List<String> vehiculosDisponibles(Date fechaIni, Date fechaFin) throws SQLException {
+		calentarIndice();
+		return indice.vehiculosLibres(fechaIni, calcularFechaFin(fechaIni, fechaFin));
+	}
+
+	// Reservas y facturas de un cliente por páginas de como mucho tamano elementos, en orden de idReserva y nroFactura.
+	// La primera página se pide con desde = 0 y las siguientes con el getSiguiente() de la anterior.
+	public Pagina<Reserva> reservasCliente(String nifCliente, long desde, int tamano) throws SQLException {
+		comprobarTamanoPagina(tamano);
+		return ConsultasCliente.reservas(nifCliente, desde, tamano);
+	}
+
+	public Pagina<Factura> facturasCliente(String nifCliente, long desde, int tamano) throws SQLException {
+		comprobarTamanoPagina(tamano);
+		return ConsultasCliente.facturas(nifCliente, desde, tamano);
+	}
+
+	private static void comprobarTamanoPagina(int tamano) {
+		if (tamano < 1) {
+			throw new IllegalArgumentException("El tamaño de página debe ser positivo: " + tamano);
+		}
+	}
+
+	private void calentarIndice() throws SQLException {
+		if (indice.isCaliente()) {
+			return;
+		}
+		CALENTANDO_INDICE.lock();
+		try {
+			if (indice.isCaliente()) {
+				return;
+			}
+			Connection con = PoolDeConexiones.getInstance().getConnection();
+			try {
+				indice.calentar(con);
+			} finally {
+				con.close();
+			}
+		} finally {
+			CALENTANDO_INDICE.unlock();
+		}
+	}
 
 	// La función alquilar recibe como parámetros el cliente, la matrícula del vehículo a alquilar y los días de alquiler.
 	// Realizará las comprobaciones necesarias y, si todo está bien, insertará una nueva reserva y una nueva factura, incluyendo
-	// líneas de detalle, en la base de datos.
-	public void alquilar(String nifCliente, String matricula, Date fechaIni, Date fechaFin) throws SQLException {
+	// líneas de detalle, en la base de datos. Devuelve el recibo con lo generado, sin volver a consultarlo.
+	public ReciboAlquiler alquilar(String nifCliente, String matricula, Date fechaIni, Date fechaFin) throws SQLException {
+		// Tiempo total y resultado para MetricasAlquiler
+		long inicio = MetricasAlquiler.inicio();
+		try {
+			ReciboAlquiler recibo = ejecutarAlquiler(nifCliente, matricula, fechaIni, fechaFin);
+			MetricasAlquiler.terminar(inicio, null);
+			return recibo;
+		} catch (SQLException e) {
+			MetricasAlquiler.terminar(inicio, e);
+			throw e;
+		}
+	}
+
+	private ReciboAlquiler ejecutarAlquiler(String nifCliente, String matricula, Date fechaIni, Date fechaFin)
+			throws SQLException {
 		// Declaramos variables necesarias para manejo de BBDD en JDBC
 		PoolDeConexiones pool = PoolDeConexiones.getInstance();
 
 		Connection con = null;
-		// Utilizaremos solo una variable de PreparedStatement y ResultSet, las iremos actualizando 
-		PreparedStatement st = null;
-		ResultSet rs = null;
-
-		/*
-		 * El calculo de los dias se da hecho
-		 */
-		long diasDiff = DIAS_DE_ALQUILER;
-		Date fechaFinAlq = new java.util.Date();
-		if (fechaFin != null) {
-			diasDiff = TimeUnit.MILLISECONDS.toDays(fechaFin.getTime() - fechaIni.getTime());
-
-			if (diasDiff < 1) {
-				throw new AlquilerCochesException(AlquilerCochesException.SIN_DIAS);
-			}
+		// Sentencias preparadas de la conexión, se cierran todas juntas al terminar
+		RegistroSentencias sentencias = null;
+
+		long diasDiff = calcularDias(fechaIni, fechaFin);
+		Date fechaFinAlq = calcularFechaFin(fechaIni, fechaFin);
+
+		// Con BLOQUEO_LOCAL se espera al alquiler en curso del mismo vehículo antes de pedir la conexión
+		long inicio = MetricasAlquiler.inicio();
+		List<ReentrantLock> cerrojos;
+		if (control == ControlConcurrencia.BLOQUEO_LOCAL) {
+			cerrojos = CerrojosVehiculo.bloquear(Collections.singleton(matricula));
+			MetricasAlquiler.registrar(EtapaAlquiler.CERROJO, inicio);
+		} else {
+			cerrojos = Collections.<ReentrantLock>emptyList();
 		}
-		else fechaFinAlq = Misc.addDays(fechaIni, DIAS_DE_ALQUILER); // Si no se indica fecha final, se suman 4 días a la inicial.
 
 		try {
+			inicio = MetricasAlquiler.inicio();
 			con = pool.getConnection();
+			MetricasAlquiler.registrar(EtapaAlquiler.CONEXION, inicio);
+			sentencias = new RegistroSentencias(con);
 
-			/* Utilizamos programación defensiva para cada caso
-			* Para pasar todos los tests tal y como están, es importante que la comprobación 
-			* del vehículo vaya antes que la del cliente, ya que, en el caso del test de vehículo inexistente,
-			* el cliente también es inexistente.
-			* Si no existe la matrícula del vehículo en la base de datos, lanzamos excepción
-			*/
-			st = con.prepareStatement("SELECT id_modelo FROM vehiculos WHERE matricula = ?");
-			st.setString(1, matricula); 
-			rs = st.executeQuery();
-			if (!rs.next()) throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_NO_EXIST);
-			st.close();
-			rs.close();
-			
-			// Si no existe el NIF del cliente en la base de datos, lanzamos excepción
-			st = con.prepareStatement("SELECT NIF FROM clientes WHERE NIF = ?");
-			st.setString(1, nifCliente);
-			rs = st.executeQuery();
-			if (!rs.next()) throw new AlquilerCochesException(AlquilerCochesException.CLIENTE_NO_EXIST);
-			st.close();
-			rs.close();
-			
-			/* Verificar que el vehículo no está ocupado en las fechas solicitadas.
-			* Es un cálculo complejo, bastante más que el que se había planteado inicialmente (realmente no estaba definido, solo era para tener la estructura)
-			* Debemos validar que no se cumple ninguna de estas 3 condiciones para confirmar que no hay ningún alquiler para ese vehículo en las fechas solicitadas
-			*/
-			st = con.prepareStatement(
-					"SELECT matricula FROM reservas WHERE matricula = ? AND " + 
-					"((fecha_ini <= ? AND fecha_fin >= ?) OR " + // Condición 1: la fecha de inicio del alquiler no está dentro del plazo de una reserva
-					"(fecha_ini <= ? AND fecha_fin >= ?) OR " + // Condición 2: la fecha de fin no está dentro del plazo de una reserva
-					"(fecha_ini >= ? AND fecha_fin <= ?))"); // Condición 3: las fechas no están ya reservadas
-			
-			st.setString(1, matricula);
-			// Condición 1 - La fecha de inicio del alquiler no puede ser mayor que la fecha de inicio y menor que la de fin de otra reserva
-			// No puede empezar más tarde de lo que empieza otra si se supone que acaba antes.
-			st.setDate(2, new java.sql.Date(fechaIni.getTime()));
-			st.setDate(3, new java.sql.Date(fechaIni.getTime()));
-			// Condición 2 - La fecha de final del alquiler no puede ser mayor que la fecha de inicio y menor que la de fin de otra reserva (mismo caso que 1)
-			// No puede acabar más tarde de lo que empieza otra si se supone que acaba antes.
-			st.setDate(4, new java.sql.Date(fechaFinAlq.getTime()));
-			st.setDate(5, new java.sql.Date(fechaFinAlq.getTime()));
-			// Condición 3 - La fecha de inicio del alquiler no puede ser menor que la de inicio si a su vez, la final es mayor que la de fin de otra reserva.
-			// En este caso, la fecha de inicio de la otra reserva estaría dentro del plazo de la reserva a añadir.
-			st.setDate(6, new java.sql.Date(fechaIni.getTime()));
-			st.setDate(7, new java.sql.Date(fechaFinAlq.getTime()));
-			
-			// Si hay algún caso que cumpla alguna de las 3 condiciones, lanzamos excepción
-			rs = st.executeQuery();
-			if (rs.next()) throw new AlquilerCochesException(AlquilerCochesException.VEHICULO_OCUPADO);
-			st.close();
-			rs.close();
-			
-			// Insertamos nueva reserva (manejamos correctamente el caso de fechaFin nula)
-			st = con.prepareStatement("INSERT into reservas (idReserva, cliente, matricula, fecha_ini, fecha_fin) VALUES (seq_reservas.nextval, ?, ?, ?, ?)");
-			st.setString(1, nifCliente); // Corregido: índice 1 en lugar de 0
-			st.setString(2, matricula); // Corregido: índice 2 en lugar de 1
-			st.setDate(3, new java.sql.Date(fechaIni.getTime())); // Corregido: índice 3 en lugar de 2
-			
-			// Si fechaFin es null, establecemos el parámetro como NULL
-			if (fechaFin != null) {
-				st.setDate(4, new java.sql.Date(fechaFin.getTime())); // Corregido: índice 4 en lugar de 3
-			} else {
-				st.setNull(4, java.sql.Types.DATE);
-			}
-			
-			st.executeUpdate();
-			
-			// Obtenemos datos del vehículo para generar factura
-			st = con.prepareStatement(
-					"SELECT m.precio_cada_dia, m.capacidad_deposito, m.tipo_combustible, pc.precio_por_litro, m.id_modelo " +
-					"FROM vehiculos v JOIN modelos m ON v.id_modelo = m.id_modelo " +
-					"JOIN precio_combustible pc ON m.tipo_combustible = pc.tipo_combustible " +
-					"WHERE v.matricula = ?");
-			st.setString(1, matricula);
-			rs = st.executeQuery();
-			
-			// Almacenamos precios de alquiler y combustible
-			if (rs.next()) {
-				BigDecimal precioDia = rs.getBigDecimal(1);
-				int capacidadDeposito = rs.getInt(2);
-				String tipoCombustible = rs.getString(3);
-				BigDecimal precioLitro = rs.getBigDecimal(4);
-				int idModelo = rs.getInt(5);
-				
-				// Realizamos cálculos utilizando las operaciones necesarias con bigDecimal
-				BigDecimal importeAlquiler = precioDia.multiply(new BigDecimal(diasDiff));
-				BigDecimal importeCombustible = precioLitro.multiply(new BigDecimal(capacidadDeposito));
-				BigDecimal importeTotal = importeAlquiler.add(importeCombustible);
-				
-				st = con.prepareStatement(
-						"INSERT INTO facturas (nroFactura, importe, cliente) " +
-						"VALUES (seq_num_fact.nextval, ?, ?)");
-				st.setBigDecimal(1, importeTotal);
-				st.setString(2, nifCliente);
-				st.executeUpdate();
-				st.close();
-				
-				// Obtenemos el número de factura generado para generar líneas
-				st = con.prepareStatement("SELECT seq_num_fact.currval FROM dual");
-				rs = st.executeQuery();
-				rs.next();
-				int nroFactura = rs.getInt(1);
-				rs.close();
-				st.close();
-				
-				// Añadimos línea de factura con coste alquiler
-				st = con.prepareStatement(
-						"INSERT INTO lineas_factura (nroFactura, concepto, importe) VALUES (?, ?, ?)");
-				st.setInt(1, nroFactura);
-				st.setString(2, diasDiff + " dias de alquiler, vehiculo modelo " + idModelo + "   ");
-				st.setBigDecimal(3, importeAlquiler);
-				st.executeUpdate();
-				st.close();
-				
-				// Añadimos línea de factura con coste combustible
-				st = con.prepareStatement(
-						"INSERT INTO lineas_factura (nroFactura, concepto, importe) VALUES (?, ?, ?)");
-				st.setInt(1, nroFactura);
-				st.setString(2, "Deposito lleno de " + capacidadDeposito + " litros de " + tipoCombustible + " ");
-				st.setBigDecimal(3, importeCombustible);
-				st.executeUpdate();
-			}
+			// Comprobaciones, reserva, factura y líneas de factura las hace el backend
+			ReciboAlquiler recibo = backend.alquilar(sentencias, nifCliente, matricula, fechaIni, fechaFin, fechaFinAlq, diasDiff,
+					control == ControlConcurrencia.BLOQUEO_FILA);
 			
 			// Confirmamos los cambios
+			inicio = MetricasAlquiler.inicio();
 			con.commit();
-			
+			MetricasAlquiler.registrar(EtapaAlquiler.COMMIT, inicio);
+			indice.registrar(matricula, fechaIni, fechaFin);
+			return recibo;
 
 		} catch (SQLException e) {
-			if (con!=null) con.rollback();
+			if (con!=null) {
+				inicio = MetricasAlquiler.inicio();
+				con.rollback();
+				MetricasAlquiler.registrar(EtapaAlquiler.ROLLBACK, inicio);
+			}
 			if (e instanceof AlquilerCochesException) throw (AlquilerCochesException) e;
-			if(new OracleSGBDErrorUtil().checkExceptionToCode(e, SGBDError.FK_VIOLATED)) {
+			if(RegistroSGBDErrorUtil.getInstance().checkExceptionToCode(e, SGBDError.FK_VIOLATED)) {
 				LOGGER.debug(e.getMessage());
 				throw e;
 			}
             throw e;
 
 		} finally {
-			if(st!= null) st.close();
-			if(rs!=null) rs.close();
-			if(con!=null) con.close();
+			try {
+				if(sentencias!=null) sentencias.close();
+			} finally {
+				try {
+					if(con!=null) con.close();
+				} finally {
+					CerrojosVehiculo.liberar(cerrojos);
+				}
+			}
+		}
+	}
+
+	/*
+	 * El calculo de los dias se da hecho: si no se indica fecha final se alquila DIAS_DE_ALQUILER días
+	 */
+	static long calcularDias(Date fechaIni, Date fechaFin) throws AlquilerCochesException {
+		if (fechaFin == null) {
+			return DIAS_DE_ALQUILER;
+		}
+		long diasDiff = TimeUnit.MILLISECONDS.toDays(fechaFin.getTime() - fechaIni.getTime());
+		if (diasDiff < 1) {
+			throw new AlquilerCochesException(AlquilerCochesException.SIN_DIAS);
 		}
+		return diasDiff;
+	}
+
+	// Fecha de fin efectiva para comprobar la disponibilidad: si no se indica, se suman 4 días a la inicial.
+	static Date calcularFechaFin(Date fechaIni, Date fechaFin) {
+		return fechaFin != null ? fechaFin : Misc.addDays(fechaIni, DIAS_DE_ALQUILER);
 	}
 }
@@ -0,0 +1,46 @@
+package lsi.ubu.servicios;
+
+import java.util.Date;
+
+/**
+ * SolicitudAlquiler: datos de un alquiler dentro de una carga por lotes (ver Servicio.alquilarLote).
+ * Los campos tienen el mismo significado que los parámetros de Servicio.alquilar. Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class SolicitudAlquiler {
+
+	private final String nifCliente;
+	private final String matricula;
+	private final Date fechaIni;
+	private final Date fechaFin;
+
+	public SolicitudAlquiler(String nifCliente, String matricula, Date fechaIni, Date fechaFin) {
+		this.nifCliente = nifCliente;
+		this.matricula = matricula;
+		this.fechaIni = fechaIni == null ? null : new Date(fechaIni.getTime());
+		this.fechaFin = fechaFin == null ? null : new Date(fechaFin.getTime());
+	}
+
+	public String getNifCliente() {
+		return nifCliente;
+	}
+
+	public String getMatricula() {
+		return matricula;
+	}
+
+	public Date getFechaIni() {
+		return fechaIni == null ? null : new Date(fechaIni.getTime());
+	}
+
+	// Puede ser nula: en ese caso se alquila por el número de días por defecto
+	public Date getFechaFin() {
+		return fechaFin == null ? null : new Date(fechaFin.getTime());
+	}
+
+	@Override
+	public String toString() {
+		return "SolicitudAlquiler[" + nifCliente + ", " + matricula + ", " + fechaIni + ", " + fechaFin + "]";
+	}
+}
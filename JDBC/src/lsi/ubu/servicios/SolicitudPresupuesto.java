@@ -0,0 +1,40 @@
+package lsi.ubu.servicios;
+
+import java.util.Date;
+
+/**
+ * SolicitudPresupuesto: vehículo y fechas de un presupuesto dentro de una petición múltiple (ver
+ * Servicio.presupuestarLote). Las fechas tienen el mismo significado que en Servicio.alquilar. Es inmutable.
+ * @version 1.0
+ * @since 1.1
+ */
+public final class SolicitudPresupuesto {
+
+	private final String matricula;
+	private final Date fechaIni;
+	private final Date fechaFin;
+
+	public SolicitudPresupuesto(String matricula, Date fechaIni, Date fechaFin) {
+		this.matricula = matricula;
+		this.fechaIni = fechaIni == null ? null : new Date(fechaIni.getTime());
+		this.fechaFin = fechaFin == null ? null : new Date(fechaFin.getTime());
+	}
+
+	public String getMatricula() {
+		return matricula;
+	}
+
+	public Date getFechaIni() {
+		return fechaIni == null ? null : new Date(fechaIni.getTime());
+	}
+
+	// Puede ser nula: en ese caso se presupuesta el número de días por defecto
+	public Date getFechaFin() {
+		return fechaFin == null ? null : new Date(fechaFin.getTime());
+	}
+
+	@Override
+	public String toString() {
+		return "SolicitudPresupuesto[" + matricula + ", " + fechaIni + ", " + fechaFin + "]";
+	}
+}
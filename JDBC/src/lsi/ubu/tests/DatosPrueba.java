@@ -0,0 +1,296 @@
+package lsi.ubu.tests;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lsi.ubu.servicios.CacheDatosReferencia;
+import lsi.ubu.servicios.IndiceDisponibilidad;
+import lsi.ubu.servicios.ServicioImpl;
+import lsi.ubu.util.AsignadorIdentificadores;
+import lsi.ubu.util.EjecutorScript;
+import lsi.ubu.util.dialectos.Dialecto;
+import lsi.ubu.util.dialectos.Dialectos;
+
+/**
+ * Instantanea de los datos de prueba para volver a dejarlos igual entre caso y
+ * caso sin llamar a inicializa_test. Se captura una vez (por ejemplo, justo
+ * despues de ejecutar el script, o con {@link #cargarScript(Connection)}, que
+ * hace las dos cosas) y se restaura antes de cada caso.
+ * <p>
+ * Restaurar cuenta las filas de todas las tablas en una sola consulta y solo
+ * toca las que han cambiado: las borra de hijas a padres y las vuelve a cargar
+ * de padres a hijas con un lote por tabla. Una tabla con otro numero de filas
+ * ha cambiado; si tiene las mismas, se leen y se comparan con la instantanea,
+ * asi que tambien se detectan los UPDATE y los borrados seguidos de
+ * inserciones. Despues reinicia las secuencias de reservas y facturas con el
+ * dialecto en uso, asi que sirve igual en Oracle que en H2.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class DatosPrueba {
+
+	// Padres antes que hijas: se cargan en este orden y se borran en el contrario
+	private static final String[] TABLAS = { "clientes", "precio_combustible", "modelos", "vehiculos", "reservas",
+			"facturas", "lineas_factura" };
+
+	// Las de datos de referencia, que guarda CacheDatosReferencia
+	private static final int TABLAS_REFERENCIA = 4;
+
+	private static final String[] SECUENCIAS = { ServicioImpl.SECUENCIA_RESERVAS, ServicioImpl.SECUENCIA_FACTURAS };
+
+	// Scripts con el esquema y los datos de partida: el de Oracle termina con inicializa_test, que H2 no tiene
+	public static final String SCRIPT_ORACLE = "sql/alquiler_coches.sql";
+	public static final String SCRIPT_H2 = "sql/alquiler_coches_h2.sql";
+
+	// Filas de una tabla y la sentencia para volver a insertarlas
+	private static final class Tabla {
+		final String nombre;
+		final String insert;
+		final int[] tipos;
+		final List<Object[]> filas;
+
+		Tabla(String nombre, String insert, int[] tipos, List<Object[]> filas) {
+			this.nombre = nombre;
+			this.insert = insert;
+			this.tipos = tipos;
+			this.filas = filas;
+		}
+	}
+
+	private final List<Tabla> tablas;
+	private final String sqlCuentas;
+
+	private DatosPrueba(List<Tabla> tablas) {
+		this.tablas = tablas;
+		StringBuilder sql = new StringBuilder("SELECT ");
+		for (int i = 0; i < TABLAS.length; i++) {
+			sql.append(i > 0 ? ", " : "").append("(SELECT COUNT(*) FROM ").append(TABLAS[i]).append(')');
+		}
+		this.sqlCuentas = sql.append(" FROM dual").toString();
+	}
+
+	/**
+	 * Vuelve a crear el esquema con el script del dialecto en uso (SCRIPT_ORACLE
+	 * si tiene PL/SQL, SCRIPT_H2 si no) y captura sus datos. Sirve en las dos
+	 * bases de datos, a diferencia de llamar a inicializa_test.
+	 *
+	 * @param con conexion con la que ejecutar el script; se confirma
+	 * @return instantanea de los datos que deja el script
+	 * @throws SQLException si no se puede leer el script o falla alguna de sus
+	 *                      sentencias
+	 */
+	public static DatosPrueba cargarScript(Connection con) throws SQLException {
+		String nombre = Dialectos.getActual().isPLSQL() ? SCRIPT_ORACLE : SCRIPT_H2;
+		try {
+			Reader script = new InputStreamReader(new FileInputStream(nombre), StandardCharsets.UTF_8);
+			try {
+				EjecutorScript.ejecutar(con, script, nombre);
+			} finally {
+				script.close();
+			}
+		} catch (IOException e) {
+			throw new SQLException("No se puede leer el script " + nombre, e);
+		}
+
+		// Secuencias, vehiculos y reservas han cambiado por debajo
+		AsignadorIdentificadores.invalidarTodos();
+		CacheDatosReferencia.getInstance().invalidarTodo();
+		IndiceDisponibilidad.getInstance().invalidar();
+		return capturar(con);
+	}
+
+	/**
+	 * Guarda en memoria todas las filas de las tablas del esquema.
+	 *
+	 * @param con conexion con la que leer
+	 * @return instantanea
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	public static DatosPrueba capturar(Connection con) throws SQLException {
+		List<Tabla> tablas = new ArrayList<Tabla>(TABLAS.length);
+		Statement st = con.createStatement();
+		try {
+			for (String tabla : TABLAS) {
+				ResultSet rs = st.executeQuery("SELECT * FROM " + tabla);
+				try {
+					ResultSetMetaData meta = rs.getMetaData();
+					int columnas = meta.getColumnCount();
+					StringBuilder nombres = new StringBuilder();
+					StringBuilder valores = new StringBuilder();
+					int[] tipos = new int[columnas];
+					for (int i = 1; i <= columnas; i++) {
+						nombres.append(i > 1 ? ", " : "").append(meta.getColumnName(i));
+						valores.append(i > 1 ? ", ?" : "?");
+						tipos[i - 1] = meta.getColumnType(i);
+					}
+					List<Object[]> filas = new ArrayList<Object[]>();
+					while (rs.next()) {
+						Object[] fila = new Object[columnas];
+						for (int i = 0; i < columnas; i++) {
+							fila[i] = rs.getObject(i + 1);
+						}
+						filas.add(fila);
+					}
+					tablas.add(new Tabla(tabla,
+							"INSERT INTO " + tabla + " (" + nombres + ") VALUES (" + valores + ")", tipos, filas));
+				} finally {
+					rs.close();
+				}
+			}
+		} finally {
+			st.close();
+		}
+		return new DatosPrueba(tablas);
+	}
+
+	/**
+	 * Deja las tablas como en la instantanea, reinicia las secuencias de
+	 * reservas y facturas y descarta lo que tuvieran en memoria
+	 * AsignadorIdentificadores, CacheDatosReferencia e IndiceDisponibilidad.
+	 *
+	 * @param con conexion con la que restaurar; se confirma
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	public void restaurar(Connection con) throws SQLException {
+		boolean[] cambiadas = cambiadas(con);
+
+		Statement st = con.createStatement();
+		try {
+			for (int i = tablas.size() - 1; i >= 0; i--) {
+				if (cambiadas[i]) {
+					st.executeUpdate("DELETE FROM " + tablas.get(i).nombre);
+				}
+			}
+		} finally {
+			st.close();
+		}
+		for (int i = 0; i < tablas.size(); i++) {
+			if (cambiadas[i]) {
+				cargar(con, tablas.get(i));
+			}
+		}
+		con.commit();
+
+		// En Oracle reiniciar una secuencia es DDL y confirma, por eso va despues de los datos
+		Dialecto dialecto = Dialectos.getActual();
+		st = con.createStatement();
+		try {
+			for (String secuencia : SECUENCIAS) {
+				st.execute(dialecto.reiniciarSecuencia(secuencia));
+			}
+		} finally {
+			st.close();
+		}
+
+		AsignadorIdentificadores.invalidarTodos();
+		IndiceDisponibilidad.getInstance().invalidar();
+		for (int i = 0; i < TABLAS_REFERENCIA; i++) {
+			if (cambiadas[i]) {
+				CacheDatosReferencia.getInstance().invalidarTodo();
+				break;
+			}
+		}
+	}
+
+	// Tablas que no estan como en la instantanea: las de otro numero de filas, con una sola consulta, y las de las
+	// mismas filas cuyo contenido no coincide. Las que van detras de una cambiada tambien se rehacen, porque pueden
+	// tener filas que apunten a las que se van a borrar.
+	private boolean[] cambiadas(Connection con) throws SQLException {
+		boolean[] cambiadas = new boolean[tablas.size()];
+		PreparedStatement st = con.prepareStatement(sqlCuentas);
+		try {
+			ResultSet rs = st.executeQuery();
+			rs.next();
+			for (int i = 0; i < cambiadas.length; i++) {
+				cambiadas[i] = (i > 0 && cambiadas[i - 1]) || rs.getLong(i + 1) != tablas.get(i).filas.size();
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+
+		Statement consulta = con.createStatement();
+		try {
+			for (int i = 0; i < cambiadas.length; i++) {
+				cambiadas[i] = cambiadas[i] || (i > 0 && cambiadas[i - 1]) || !mismasFilas(consulta, tablas.get(i));
+			}
+		} finally {
+			consulta.close();
+		}
+		return cambiadas;
+	}
+
+	// Compara las filas de la tabla con las de la instantanea sin tener en cuenta el orden. Solo se llama con el
+	// mismo numero de filas, asi que cuesta lo que ocupa la instantanea.
+	private static boolean mismasFilas(Statement st, Tabla tabla) throws SQLException {
+		if (tabla.filas.isEmpty()) {
+			return true;
+		}
+		Map<List<Object>, Integer> pendientes = new HashMap<List<Object>, Integer>();
+		for (Object[] fila : tabla.filas) {
+			List<Object> clave = Arrays.asList(fila);
+			Integer veces = pendientes.get(clave);
+			pendientes.put(clave, veces == null ? 1 : veces + 1);
+		}
+		ResultSet rs = st.executeQuery("SELECT * FROM " + tabla.nombre);
+		try {
+			int columnas = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				Object[] fila = new Object[columnas];
+				for (int i = 0; i < columnas; i++) {
+					fila[i] = rs.getObject(i + 1);
+				}
+				List<Object> clave = Arrays.asList(fila);
+				Integer veces = pendientes.get(clave);
+				if (veces == null) {
+					return false;
+				}
+				if (veces == 1) {
+					pendientes.remove(clave);
+				} else {
+					pendientes.put(clave, veces - 1);
+				}
+			}
+		} finally {
+			rs.close();
+		}
+		return pendientes.isEmpty();
+	}
+
+	private static void cargar(Connection con, Tabla tabla) throws SQLException {
+		if (tabla.filas.isEmpty()) {
+			return;
+		}
+		PreparedStatement st = con.prepareStatement(tabla.insert);
+		try {
+			for (Object[] fila : tabla.filas) {
+				for (int i = 0; i < fila.length; i++) {
+					if (fila[i] != null) {
+						st.setObject(i + 1, fila[i]);
+					} else {
+						st.setNull(i + 1, tabla.tipos[i]);
+					}
+				}
+				st.addBatch();
+			}
+			st.executeBatch();
+		} finally {
+			st.close();
+		}
+	}
+}
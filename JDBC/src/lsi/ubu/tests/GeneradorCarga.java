@@ -0,0 +1,261 @@
+package lsi.ubu.tests;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.servicios.MetricasAlquiler;
+import lsi.ubu.servicios.Servicio;
+import lsi.ubu.servicios.ServicioImpl;
+import lsi.ubu.util.Ejecutores;
+import lsi.ubu.util.PoolDeConexiones;
+import lsi.ubu.util.metricas.Histograma;
+
+/**
+ * Generador de carga concurrente para alquilar: tras cargar los datos del
+ * script (ver DatosPrueba.cargarScript, en Oracle y en H2) da de alta
+ * carga.clientes clientes y carga.vehiculos vehiculos y lanza carga.operaciones
+ * alquileres desde carga.hilos hilos a la vez (de plataforma, o virtuales con
+ * carga.virtuales=true en Java 21 o posterior).
+ * <p>
+ * Las solicitudes imitan un uso real: la mayoria de los alquileres van a una
+ * fraccion de vehiculos muy demandados (carga.calientes, por ciento), empiezan
+ * en los proximos carga.dias dias y duran de 1 a 7 dias, algunos sin fecha de
+ * fin, y unos pocos llevan un cliente o un vehiculo que no existen. Asi varios
+ * clientes compiten por el mismo coche en fechas que se solapan.
+ * <p>
+ * Informa del rendimiento, de los percentiles de latencia y del resultado de
+ * las solicitudes por codigo de error, y al final comprueba con un autojoin que
+ * no haya dos reservas solapadas del mismo vehiculo. Con alquiler.metricas=true
+ * informa tambien del tiempo de cada etapa (ver MetricasAlquiler). Salvo con
+ * carga.conservar=true, vuelve a dejar los datos del script.
+ * <p>
+ * No forma parte de Tests; se lanza aparte con su main.
+ */
+public class GeneradorCarga {
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(GeneradorCarga.class);
+
+	private static final int HILOS = Integer.getInteger("carga.hilos", 16);
+	private static final boolean VIRTUALES = Boolean.getBoolean("carga.virtuales");
+	private static final int OPERACIONES = Integer.getInteger("carga.operaciones", 10000);
+	private static final int CLIENTES = Integer.getInteger("carga.clientes", 200);
+	private static final int VEHICULOS = Integer.getInteger("carga.vehiculos", 50);
+	private static final int CALIENTES = Integer.getInteger("carga.calientes", 20);
+	private static final int DIAS = Integer.getInteger("carga.dias", 60);
+	private static final boolean CONSERVAR = Boolean.getBoolean("carga.conservar");
+
+	private static final long UN_DIA = TimeUnit.DAYS.toMillis(1);
+
+	// Resultados por codigo: 0 correcto, 1..4 los de AlquilerCochesException, 5 otros errores
+	private static final int OTROS = 5;
+	private static final String[] NOMBRES_RESULTADO = { "correctos", "cliente inexistente", "vehiculo inexistente",
+			"sin dias", "vehiculo ocupado", "otros errores" };
+
+	private static final String INSERTAR_CLIENTE = "INSERT INTO clientes VALUES (?, 'Carga', 'Carga', 'Carga', NULL)";
+	private static final String INSERTAR_VEHICULO = "INSERT INTO vehiculos VALUES (?, ?, 'BLANCO')";
+	// Fin efectivo como en SentenciasAlquiler.RESERVAS_SOLAPADAS: el 4 tiene que coincidir con ServicioImpl.DIAS_DE_ALQUILER
+	private static final String RESERVAS_SOLAPADAS = "SELECT COUNT(*) FROM reservas a JOIN reservas b "
+			+ "ON a.matricula = b.matricula AND a.idReserva < b.idReserva "
+			+ "AND a.fecha_ini < NVL(b.fecha_fin, b.fecha_ini + 4) AND b.fecha_ini < NVL(a.fecha_fin, a.fecha_ini + 4)";
+
+	private final Servicio servicio = new ServicioImpl();
+	private final Histograma latencias = new Histograma();
+	private final AtomicLongArray resultados = new AtomicLongArray(NOMBRES_RESULTADO.length);
+	private final Date inicio;
+
+	public GeneradorCarga() {
+		Calendar calendario = Calendar.getInstance();
+		calendario.clear();
+		calendario.set(2030, Calendar.JANUARY, 1);
+		inicio = calendario.getTime();
+	}
+
+	public static void main(String[] args) throws Exception {
+		new GeneradorCarga().ejecutar();
+	}
+
+	public void ejecutar() throws Exception {
+		PoolDeConexiones pool = PoolDeConexiones.getInstance();
+
+		DatosPrueba datosPrueba = reiniciar(pool);
+		try {
+			cargarDatos(pool);
+
+			LOGGER.info("Lanzando " + OPERACIONES + " alquileres desde " + HILOS + " hilos "
+					+ (VIRTUALES && Ejecutores.hayHilosVirtuales() ? "virtuales" : "de plataforma"));
+			long duracion = lanzar();
+
+			LOGGER.info(String.format("Rendimiento: %.1f alquileres/s", OPERACIONES * 1e9 / duracion));
+			LOGGER.info("Latencia: " + latencias.resumen());
+			if (MetricasAlquiler.getInstance().isActivas()) {
+				LOGGER.info("Etapas del alquiler:\n" + MetricasAlquiler.getInstance().getResumen());
+			}
+			for (int i = 0; i < NOMBRES_RESULTADO.length; i++) {
+				LOGGER.info(NOMBRES_RESULTADO[i] + ": " + resultados.get(i));
+			}
+
+			long solapadas = contarSolapadas(pool);
+			if (solapadas == 0) {
+				LOGGER.info("OK Ninguna reserva solapada tras la carga concurrente");
+			} else {
+				LOGGER.info("MAL " + solapadas + " pares de reservas solapadas tras la carga concurrente");
+			}
+		} finally {
+			if (!CONSERVAR) {
+				restaurar(pool, datosPrueba);
+			}
+		}
+	}
+
+	// Lanza las operaciones y devuelve cuanto han tardado en nanosegundos
+	private long lanzar() throws Exception {
+		final AtomicLong pendientes = new AtomicLong(OPERACIONES);
+		ExecutorService ejecutor = Ejecutores.nuevo(VIRTUALES, HILOS);
+		long comienzo = System.nanoTime();
+		try {
+			List<Future<?>> trabajadores = new ArrayList<Future<?>>(HILOS);
+			for (int i = 0; i < HILOS; i++) {
+				trabajadores.add(ejecutor.submit(new Runnable() {
+					@Override
+					public void run() {
+						while (pendientes.getAndDecrement() > 0) {
+							alquilar();
+						}
+					}
+				}));
+			}
+			for (Future<?> trabajador : trabajadores) {
+				trabajador.get();
+			}
+		} finally {
+			ejecutor.shutdown();
+		}
+		return System.nanoTime() - comienzo;
+	}
+
+	private void alquilar() {
+		ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+
+		// Un 1% de clientes y otro 1% de vehiculos inexistentes
+		String cliente = aleatorio.nextInt(100) == 0 ? "00000000X" : nif(aleatorio.nextInt(CLIENTES));
+		String matricula;
+		if (aleatorio.nextInt(100) == 0) {
+			matricula = "0000-XXX";
+		} else if (aleatorio.nextInt(100) < 80) {
+			// El 80% de los alquileres se concentra en los vehiculos calientes
+			matricula = matricula(aleatorio.nextInt(Math.max(1, VEHICULOS * CALIENTES / 100)));
+		} else {
+			matricula = matricula(aleatorio.nextInt(VEHICULOS));
+		}
+		Date fechaIni = new Date(inicio.getTime() + aleatorio.nextInt(DIAS) * UN_DIA);
+		// Un 10% sin fecha de fin: se alquilan los 4 dias por defecto
+		Date fechaFin = aleatorio.nextInt(10) == 0 ? null
+				: new Date(fechaIni.getTime() + (1 + aleatorio.nextInt(7)) * UN_DIA);
+
+		long comienzo = System.nanoTime();
+		int resultado;
+		try {
+			servicio.alquilar(cliente, matricula, fechaIni, fechaFin);
+			resultado = 0;
+		} catch (AlquilerCochesException e) {
+			resultado = e.getErrorCode();
+		} catch (SQLException e) {
+			LOGGER.debug(e.getMessage());
+			resultado = OTROS;
+		}
+		latencias.registrarDesde(comienzo);
+		resultados.incrementAndGet(resultado >= 0 && resultado < OTROS ? resultado : OTROS);
+	}
+
+	private void cargarDatos(PoolDeConexiones pool) throws SQLException {
+		Connection con = pool.getConnection();
+		try {
+			PreparedStatement st = con.prepareStatement(INSERTAR_CLIENTE);
+			try {
+				for (int i = 0; i < CLIENTES; i++) {
+					st.setString(1, nif(i));
+					st.addBatch();
+				}
+				st.executeBatch();
+			} finally {
+				st.close();
+			}
+
+			// Alternando los dos modelos del script
+			st = con.prepareStatement(INSERTAR_VEHICULO);
+			try {
+				for (int i = 0; i < VEHICULOS; i++) {
+					st.setString(1, matricula(i));
+					st.setInt(2, 1 + i % 2);
+					st.addBatch();
+				}
+				st.executeBatch();
+			} finally {
+				st.close();
+			}
+			con.commit();
+		} finally {
+			con.close();
+		}
+	}
+
+	private long contarSolapadas(PoolDeConexiones pool) throws SQLException {
+		Connection con = pool.getConnection();
+		try {
+			PreparedStatement st = con.prepareStatement(RESERVAS_SOLAPADAS);
+			try {
+				ResultSet rs = st.executeQuery();
+				rs.next();
+				return rs.getLong(1);
+			} finally {
+				st.close();
+			}
+		} finally {
+			con.close();
+		}
+	}
+
+	// Deja los datos del script y devuelve su instantanea para restaurarlos al terminar
+	private DatosPrueba reiniciar(PoolDeConexiones pool) throws SQLException {
+		Connection con = pool.getConnection();
+		try {
+			return DatosPrueba.cargarScript(con);
+		} finally {
+			con.close();
+		}
+	}
+
+	private void restaurar(PoolDeConexiones pool, DatosPrueba datosPrueba) throws SQLException {
+		Connection con = pool.getConnection();
+		try {
+			datosPrueba.restaurar(con);
+		} finally {
+			con.close();
+		}
+	}
+
+	private static String nif(int i) {
+		return String.format("%08dC", i);
+	}
+
+	private static String matricula(int i) {
+		return String.format("%04d-CRG", i);
+	}
+}
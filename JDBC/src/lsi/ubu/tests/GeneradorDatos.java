@@ -0,0 +1,376 @@
+package lsi.ubu.tests;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.servicios.CalculadoraPrecios;
+import lsi.ubu.servicios.DatosFacturacion;
+import lsi.ubu.servicios.IndiceDisponibilidad;
+import lsi.ubu.servicios.LineasFactura;
+import lsi.ubu.servicios.PoliticaPrecios;
+import lsi.ubu.servicios.ServicioImpl;
+import lsi.ubu.util.AsignadorIdentificadores;
+import lsi.ubu.util.PoolDeConexiones;
+import lsi.ubu.util.RegistroSentencias;
+
+/**
+ * Generador de datos sinteticos a escala: da de alta datos.clientes clientes,
+ * datos.modelos modelos, datos.vehiculos vehiculos y datos.reservas reservas
+ * que no se solapan, cada una con su factura y sus dos lineas de factura
+ * calculadas con CalculadoraPrecios.
+ * <p>
+ * Con la misma semilla (datos.semilla) genera los mismos datos; solo cambian
+ * los identificadores de modelos, reservas y facturas, que salen de sus
+ * secuencias. Las reservas tienen sesgo configurable: el datos.peso por ciento
+ * va a la fraccion datos.calientes (por ciento) de vehiculos mas demandados, y
+ * el datos.temporada por ciento empieza en temporada alta (julio y agosto).
+ * Todas empiezan en los datos.dias dias siguientes al 1 de enero de 2000, asi
+ * que los vehiculos mas demandados tienen mas reservas en el mismo periodo y no
+ * un calendario que llega decadas mas alla.
+ * <p>
+ * Cada vehiculo tiene un mapa de bits con sus dias ocupados: si el dia elegido
+ * no deja sitio, la reserva pasa al primer hueco libre posterior (o, si no lo
+ * hay, al primero desde el principio), y si el vehiculo esta completo, a otro
+ * vehiculo elegido al azar. Asi nunca se solapan.
+ * <p>
+ * Inserta por lotes de datos.lote filas (sentencias preparadas con addBatch) y
+ * confirma cada lote, con memoria proporcional a vehiculos por dias y no al
+ * numero de reservas. Los datos se quedan en la base de datos; los del script
+ * no se tocan (NIF y matriculas propios, terminados en D).
+ * <p>
+ * No forma parte de Tests; se lanza aparte con su main.
+ */
+public class GeneradorDatos {
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(GeneradorDatos.class);
+
+	private static final long SEMILLA = Long.getLong("datos.semilla", 1);
+	private static final int CLIENTES = Integer.getInteger("datos.clientes", 100000);
+	private static final int MODELOS = Integer.getInteger("datos.modelos", 50);
+	private static final int VEHICULOS = Integer.getInteger("datos.vehiculos", 10000);
+	private static final int RESERVAS = Integer.getInteger("datos.reservas", 1000000);
+	private static final int CALIENTES = Integer.getInteger("datos.calientes", 10);
+	private static final int PESO = Integer.getInteger("datos.peso", 80);
+	private static final int TEMPORADA = Integer.getInteger("datos.temporada", 30);
+	private static final int DIAS = Integer.getInteger("datos.dias", 3650);
+	private static final int LOTE = Integer.getInteger("datos.lote", 5000);
+
+	private static final String[] COLORES = { "BLANCO", "NEGRO", "GRIS", "ROJO", "AZUL", "VERDE" };
+
+	// Reservas de 1 a DURACION_MAXIMA dias
+	private static final int DURACION_MAXIMA = 7;
+	// Vehiculos que se prueban para una reserva antes de dar el periodo por lleno
+	private static final int INTENTOS_VEHICULO = 100;
+
+	private static final String SECUENCIA_MODELOS = "seq_modelos";
+
+	private static final String COMBUSTIBLES = "SELECT tipo_combustible, precio_por_litro FROM precio_combustible "
+			+ "ORDER BY tipo_combustible";
+	private static final String INSERTAR_CLIENTE = "INSERT INTO clientes VALUES (?, ?, ?, ?, ?)";
+	private static final String INSERTAR_MODELO = "INSERT INTO modelos VALUES (?, ?, ?, ?, ?)";
+	private static final String INSERTAR_VEHICULO = "INSERT INTO vehiculos VALUES (?, ?, ?)";
+	private static final String INSERTAR_RESERVA = "INSERT INTO reservas (idReserva, cliente, matricula, fecha_ini, "
+			+ "fecha_fin) VALUES (?, ?, ?, ?, ?)";
+	private static final String INSERTAR_FACTURA = "INSERT INTO facturas (nroFactura, importe, cliente) VALUES (?, ?, ?)";
+	private static final String INSERTAR_LINEA = "INSERT INTO lineas_factura (nroFactura, concepto, importe) "
+			+ "VALUES (?, ?, ?)";
+
+	private final Random aleatorio = new Random(SEMILLA);
+	private final PoliticaPrecios politica = CalculadoraPrecios.getInstance();
+
+	// Fecha de cada dia del periodo desde el 1-1-2000, mas el siguiente para el fin de las que acaban el ultimo
+	private final java.sql.Date[] fechas = new java.sql.Date[DIAS + 1];
+	// Dias del periodo que caen en julio o agosto
+	private final int[] diasTemporada;
+
+	public GeneradorDatos() {
+		if (DIAS < DURACION_MAXIMA) {
+			throw new IllegalArgumentException("datos.dias tiene que ser al menos " + DURACION_MAXIMA + ": " + DIAS);
+		}
+		Calendar calendario = Calendar.getInstance();
+		calendario.clear();
+		calendario.set(2000, Calendar.JANUARY, 1);
+		int[] temporada = new int[DIAS];
+		int enTemporada = 0;
+		for (int dia = 0; dia < fechas.length; dia++) {
+			fechas[dia] = new java.sql.Date(calendario.getTimeInMillis());
+			int mes = calendario.get(Calendar.MONTH);
+			if (dia < DIAS && (mes == Calendar.JULY || mes == Calendar.AUGUST)) {
+				temporada[enTemporada++] = dia;
+			}
+			calendario.add(Calendar.DATE, 1);
+		}
+		diasTemporada = Arrays.copyOf(temporada, enTemporada);
+	}
+
+	public static void main(String[] args) throws SQLException {
+		new GeneradorDatos().generar();
+	}
+
+	public void generar() throws SQLException {
+		Connection con = PoolDeConexiones.getInstance().getConnection();
+		RegistroSentencias sentencias = new RegistroSentencias(con);
+		try {
+			generarClientes(con);
+			DatosFacturacion[] modelos = generarModelos(con, sentencias);
+			int[] modeloVehiculo = generarVehiculos(con, modelos);
+			generarReservas(con, sentencias, modelos, modeloVehiculo);
+		} catch (SQLException e) {
+			con.rollback();
+			throw e;
+		} finally {
+			try {
+				sentencias.close();
+			} finally {
+				con.close();
+			}
+		}
+		// Hay reservas nuevas que el indice no conoce
+		IndiceDisponibilidad.getInstance().invalidar();
+	}
+
+	private void generarClientes(Connection con) throws SQLException {
+		long inicio = System.nanoTime();
+		PreparedStatement st = con.prepareStatement(INSERTAR_CLIENTE);
+		try {
+			for (int i = 0; i < CLIENTES; i++) {
+				st.setString(1, nif(i));
+				st.setString(2, "Nombre" + aleatorio.nextInt(1000));
+				st.setString(3, "Apellido" + aleatorio.nextInt(1000));
+				st.setString(4, "Apellido" + aleatorio.nextInt(1000));
+				st.setString(5, "C/Calle" + aleatorio.nextInt(1000) + " n" + (1 + aleatorio.nextInt(100)));
+				st.addBatch();
+				if ((i + 1) % LOTE == 0) {
+					st.executeBatch();
+					con.commit();
+				}
+			}
+			st.executeBatch();
+			con.commit();
+		} finally {
+			st.close();
+		}
+		informar("clientes", CLIENTES, inicio);
+	}
+
+	// Devuelve los datos de facturacion de cada modelo generado
+	private DatosFacturacion[] generarModelos(Connection con, RegistroSentencias sentencias) throws SQLException {
+		long inicio = System.nanoTime();
+		List<String> tipos = new ArrayList<String>();
+		List<BigDecimal> precios = new ArrayList<BigDecimal>();
+		PreparedStatement st = con.prepareStatement(COMBUSTIBLES);
+		try {
+			ResultSet rs = st.executeQuery();
+			while (rs.next()) {
+				tipos.add(rs.getString(1));
+				precios.add(rs.getBigDecimal(2));
+			}
+			rs.close();
+		} finally {
+			st.close();
+		}
+		if (tipos.isEmpty()) {
+			throw new IllegalStateException("No hay precios de combustible: ejecuta antes el script");
+		}
+
+		DatosFacturacion[] modelos = new DatosFacturacion[MODELOS];
+		long[] ids = AsignadorIdentificadores.get(SECUENCIA_MODELOS).siguientes(sentencias, MODELOS);
+		st = con.prepareStatement(INSERTAR_MODELO);
+		try {
+			for (int i = 0; i < MODELOS; i++) {
+				int combustible = aleatorio.nextInt(tipos.size());
+				// De 10 a 99,99 euros por dia y de 35 a 80 litros
+				BigDecimal precioDia = BigDecimal.valueOf(1000 + aleatorio.nextInt(9000), 2);
+				int capacidad = 35 + aleatorio.nextInt(46);
+				modelos[i] = new DatosFacturacion((int) ids[i], precioDia, capacidad, tipos.get(combustible),
+						precios.get(combustible));
+
+				st.setLong(1, ids[i]);
+				st.setString(2, "Modelo " + i + " " + tipos.get(combustible));
+				st.setBigDecimal(3, precioDia);
+				st.setInt(4, capacidad);
+				st.setString(5, tipos.get(combustible));
+				st.addBatch();
+			}
+			st.executeBatch();
+			con.commit();
+		} finally {
+			st.close();
+		}
+		informar("modelos", MODELOS, inicio);
+		return modelos;
+	}
+
+	// Devuelve el indice del modelo de cada vehiculo
+	private int[] generarVehiculos(Connection con, DatosFacturacion[] modelos) throws SQLException {
+		long inicio = System.nanoTime();
+		int[] modeloVehiculo = new int[VEHICULOS];
+		PreparedStatement st = con.prepareStatement(INSERTAR_VEHICULO);
+		try {
+			for (int i = 0; i < VEHICULOS; i++) {
+				modeloVehiculo[i] = aleatorio.nextInt(modelos.length);
+				st.setString(1, matricula(i));
+				st.setInt(2, modelos[modeloVehiculo[i]].getIdModelo());
+				st.setString(3, COLORES[aleatorio.nextInt(COLORES.length)]);
+				st.addBatch();
+				if ((i + 1) % LOTE == 0) {
+					st.executeBatch();
+					con.commit();
+				}
+			}
+			st.executeBatch();
+			con.commit();
+		} finally {
+			st.close();
+		}
+		informar("vehiculos", VEHICULOS, inicio);
+		return modeloVehiculo;
+	}
+
+	private void generarReservas(Connection con, RegistroSentencias sentencias, DatosFacturacion[] modelos,
+			int[] modeloVehiculo) throws SQLException {
+		long inicio = System.nanoTime();
+		int calientes = Math.max(1, VEHICULOS * CALIENTES / 100);
+		// Dias ocupados de cada vehiculo dentro del periodo, creados segun se necesitan
+		BitSet[] ocupados = new BitSet[VEHICULOS];
+		LineasFactura lineas = new LineasFactura();
+
+		PreparedStatement stReservas = con.prepareStatement(INSERTAR_RESERVA);
+		PreparedStatement stFacturas = con.prepareStatement(INSERTAR_FACTURA);
+		PreparedStatement stLineas = con.prepareStatement(INSERTAR_LINEA);
+		try {
+			for (int hechas = 0; hechas < RESERVAS; hechas += LOTE) {
+				int n = Math.min(LOTE, RESERVAS - hechas);
+				long[] idsReserva = AsignadorIdentificadores.get(ServicioImpl.SECUENCIA_RESERVAS).siguientes(sentencias,
+						n);
+				long[] nrosFactura = AsignadorIdentificadores.get(ServicioImpl.SECUENCIA_FACTURAS)
+						.siguientes(sentencias, n);
+
+				for (int i = 0; i < n; i++) {
+					int vehiculo = aleatorio.nextInt(100) < PESO ? aleatorio.nextInt(calientes)
+							: aleatorio.nextInt(VEHICULOS);
+					int dias = 1 + aleatorio.nextInt(DURACION_MAXIMA);
+					int deseado = inicioDeseado(dias);
+					int ini = hueco(ocupadosDe(ocupados, vehiculo), deseado, dias);
+					// Vehiculo completo en el periodo: a otro cualquiera
+					for (int intentos = 1; ini < 0; intentos++) {
+						if (intentos == INTENTOS_VEHICULO) {
+							throw new IllegalStateException("No caben " + RESERVAS + " reservas en " + DIAS
+									+ " dias: aumenta datos.dias");
+						}
+						vehiculo = aleatorio.nextInt(VEHICULOS);
+						ini = hueco(ocupadosDe(ocupados, vehiculo), deseado, dias);
+					}
+					ocupados[vehiculo].set(ini, ini + dias);
+					String nif = nif(aleatorio.nextInt(CLIENTES));
+					politica.calcular(modelos[modeloVehiculo[vehiculo]], dias, lineas);
+
+					stReservas.setLong(1, idsReserva[i]);
+					stReservas.setString(2, nif);
+					stReservas.setString(3, matricula(vehiculo));
+					stReservas.setDate(4, fecha(ini));
+					stReservas.setDate(5, fecha(ini + dias));
+					stReservas.addBatch();
+
+					stFacturas.setLong(1, nrosFactura[i]);
+					stFacturas.setBigDecimal(2, lineas.getImporteTotal());
+					stFacturas.setString(3, nif);
+					stFacturas.addBatch();
+
+					stLineas.setLong(1, nrosFactura[i]);
+					stLineas.setString(2, lineas.getConceptoAlquiler());
+					stLineas.setBigDecimal(3, lineas.getImporteAlquiler());
+					stLineas.addBatch();
+					stLineas.setLong(1, nrosFactura[i]);
+					stLineas.setString(2, lineas.getConceptoCombustible());
+					stLineas.setBigDecimal(3, lineas.getImporteCombustible());
+					stLineas.addBatch();
+				}
+
+				// Las facturas antes que sus lineas por la clave ajena
+				stReservas.executeBatch();
+				stFacturas.executeBatch();
+				stLineas.executeBatch();
+				con.commit();
+				LOGGER.debug((hechas + n) + " reservas de " + RESERVAS);
+			}
+		} finally {
+			try {
+				stReservas.close();
+			} finally {
+				try {
+					stFacturas.close();
+				} finally {
+					stLineas.close();
+				}
+			}
+		}
+		informar("reservas con factura", RESERVAS, inicio);
+	}
+
+	// Dia del periodo en el que le gustaria empezar a la reserva: uno de julio o agosto con probabilidad
+	// datos.temporada y si no cualquiera, sin pasarse del final
+	private int inicioDeseado(int dias) {
+		if (diasTemporada.length > 0 && aleatorio.nextInt(100) < TEMPORADA) {
+			return Math.min(diasTemporada[aleatorio.nextInt(diasTemporada.length)], DIAS - dias);
+		}
+		return aleatorio.nextInt(DIAS - dias + 1);
+	}
+
+	private static BitSet ocupadosDe(BitSet[] ocupados, int vehiculo) {
+		if (ocupados[vehiculo] == null) {
+			ocupados[vehiculo] = new BitSet(DIAS);
+		}
+		return ocupados[vehiculo];
+	}
+
+	// Primer dia desde el deseado (o, si no hay, desde el principio) con dias libres seguidos dentro del periodo; -1 si
+	// no queda ninguno
+	private static int hueco(BitSet ocupados, int deseado, int dias) {
+		int ini = huecoDesde(ocupados, deseado, dias);
+		return ini >= 0 ? ini : huecoDesde(ocupados, 0, dias);
+	}
+
+	private static int huecoDesde(BitSet ocupados, int desde, int dias) {
+		int ini = ocupados.nextClearBit(desde);
+		while (ini + dias <= DIAS) {
+			int siguienteOcupado = ocupados.nextSetBit(ini);
+			if (siguienteOcupado < 0 || siguienteOcupado >= ini + dias) {
+				return ini;
+			}
+			ini = ocupados.nextClearBit(siguienteOcupado);
+		}
+		return -1;
+	}
+
+	private java.sql.Date fecha(int dia) {
+		return fechas[dia];
+	}
+
+	private static void informar(String que, int filas, long inicio) {
+		long ms = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+		LOGGER.info(filas + " " + que + " en " + ms + "ms (" + (filas * 1000L / ms) + " filas/s)");
+	}
+
+	private static String nif(int i) {
+		return String.format("%08dD", i);
+	}
+
+	private static String matricula(int i) {
+		return String.format("%07dD", i);
+	}
+}
@@ -1,6 +1,12 @@
 package lsi.ubu.tests;
 
-import java.sql.CallableStatement;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -8,14 +14,36 @@ import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import lsi.ubu.excepciones.AlquilerCochesException;
+import lsi.ubu.servicios.ControlConcurrencia;
+import lsi.ubu.servicios.ExportadorFacturas;
+import lsi.ubu.servicios.Factura;
+import lsi.ubu.servicios.Pagina;
+import lsi.ubu.servicios.Presupuesto;
+import lsi.ubu.servicios.ReciboAlquiler;
+import lsi.ubu.servicios.Reserva;
+import lsi.ubu.servicios.ResultadoAlquiler;
 import lsi.ubu.servicios.Servicio;
+import lsi.ubu.servicios.ServicioAsincrono;
+import lsi.ubu.servicios.ServicioAsincronoImpl;
 import lsi.ubu.servicios.ServicioImpl;
+import lsi.ubu.servicios.SolicitudAlquiler;
+import lsi.ubu.servicios.SolicitudPresupuesto;
 import lsi.ubu.util.PoolDeConexiones;
 
 public class Tests {
@@ -29,6 +57,17 @@ public class Tests {
 
 		PoolDeConexiones pool = PoolDeConexiones.getInstance();
 
+		// Datos de partida (los que deja el script) para restaurarlos antes de cada caso
+		DatosPrueba datosPrueba;
+		{
+			Connection con = pool.getConnection();
+			try {
+				datosPrueba = DatosPrueba.capturar(con);
+			} finally {
+				con.close();
+			}
+		}
+
 		SimpleDateFormat formatoFechas = new SimpleDateFormat("dd-MM-yyyy");
 
 		// caso 1 nro dias negativo
@@ -94,17 +133,15 @@ public class Tests {
 			Connection con = null;
 			PreparedStatement st = null;
 			ResultSet rs = null;
-			CallableStatement cst = null;
 
 			try {
 				// Reinicio filas
 				con = pool.getConnection();
-				cst = con.prepareCall("{call inicializa_test}");
-				cst.execute();
+				datosPrueba.restaurar(con);
 
 				fechaIni = formatoFechas.parse("11-3-2013");
 
-				servicio.alquilar("12345678A", "1234-ABC", fechaIni, null);
+				ReciboAlquiler recibo = servicio.alquilar("12345678A", "1234-ABC", fechaIni, null);
 
 				String query = "";
 				query += " SELECT listAgg(matricula||TO_CHAR(fecha_ini, 'DD-MM-YYYY')||TO_CHAR(fecha_fin, 'DD-MM-YYYY')||facturas.importe||cliente||concepto||lineas_factura.importe, '#') ";
@@ -134,6 +171,17 @@ public class Tests {
 					LOGGER.info("Y deberia ser*" + resultadoPrevisto + "*");
 				}
 
+				// El recibo trae lo mismo que se ha guardado
+				if (recibo.getIdReserva() == 1 && recibo.getNroFactura() == 1 && recibo.getDias() == 4
+						&& recibo.getImporteAlquiler().compareTo(new BigDecimal("60")) == 0
+						&& recibo.getImporteCombustible().compareTo(new BigDecimal("75")) == 0
+						&& recibo.getImporteTotal().compareTo(new BigDecimal("135")) == 0) {
+					LOGGER.info("SI Coincide el recibo con la factura  OK");
+				} else {
+					LOGGER.info("NO Coincide el recibo con la factura  MAL");
+					LOGGER.info("Se obtiene...*" + recibo + "*");
+				}
+
 				rs.close();
 
 			} catch (SQLException e) {
@@ -141,9 +189,6 @@ public class Tests {
 			} catch (ParseException e) {
 				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
 			} finally {
-				if (cst != null) {
-					cst.close();
-				}
 				if (rs != null) {
 					rs.close();
 				}
@@ -162,13 +207,11 @@ public class Tests {
 			// Reservo del 2013-3-10 al 12
 			Connection con = null;
 			PreparedStatement st = null;
-			CallableStatement cst = null;
 
 			try {
 				// Reinicio filas
 				con = pool.getConnection();
-				cst = con.prepareCall("{call inicializa_test}");
-				cst.execute();
+				datosPrueba.restaurar(con);
 
 				String query = "";
 				query += " insert into reservas values ";
@@ -194,9 +237,6 @@ public class Tests {
 			} catch (ParseException e1) {
 				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
 			} finally {
-				if (cst != null) {
-					cst.close();
-				}
 				if (st != null) {
 					st.close();
 				}
@@ -211,13 +251,11 @@ public class Tests {
 			// Reservo del 2013-3-10 al 12
 			Connection con = null;
 			PreparedStatement st = null;
-			CallableStatement cst = null;
 
 			try {
 				// Reinicio filas
 				con = pool.getConnection();
-				cst = con.prepareCall("{call inicializa_test}");
-				cst.execute();
+				datosPrueba.restaurar(con);
 
 				String query = "";
 				query += " insert into reservas values ";
@@ -244,9 +282,6 @@ public class Tests {
 			} catch (ParseException e1) {
 				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
 			} finally {
-				if (cst != null) {
-					cst.close();
-				}
 				if (st != null) {
 					st.close();
 				}
@@ -261,13 +296,11 @@ public class Tests {
 			// Reservo del Reservo del 2013-3-9 al 13
 			Connection con = null;
 			PreparedStatement st = null;
-			CallableStatement cst = null;
 
 			try {
 				// Reinicio filas
 				con = pool.getConnection();
-				cst = con.prepareCall("{call inicializa_test}");
-				cst.execute();
+				datosPrueba.restaurar(con);
 
 				String query = "";
 				query += " insert into reservas values ";
@@ -296,9 +329,6 @@ public class Tests {
 			} catch (ParseException e1) {
 				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
 			} finally {
-				if (cst != null) {
-					cst.close();
-				}
 				if (st != null) {
 					st.close();
 				}
@@ -312,14 +342,12 @@ public class Tests {
 		{
 			Connection con = null;
 			PreparedStatement st = null;
-			CallableStatement cst = null;
 			ResultSet rs = null;
 
 			try {
 				// Reinicio filas
 				con = pool.getConnection();
-				cst = con.prepareCall("{call inicializa_test}");
-				cst.execute();
+				datosPrueba.restaurar(con);
 
 				fechaIni = formatoFechas.parse("11-3-2013");
 				fechaFin = formatoFechas.parse("13-3-2013");
@@ -365,13 +393,476 @@ public class Tests {
 				if (st != null) {
 					st.close();
 				}
-				if (cst != null) {
-					cst.close();
+				if (con != null) {
+					con.close();
 				}
+			}
+		}
+
+		// caso 7 Alquiler por lotes: una solicitud correcta y una de cada error, en bloques de 2
+		{
+			Connection con = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+
+				List<SolicitudAlquiler> solicitudes = new ArrayList<SolicitudAlquiler>();
+				solicitudes.add(new SolicitudAlquiler("12345678A", "2222-ABC", fechaIni, fechaFin));
+				solicitudes.add(new SolicitudAlquiler("11111111B", "2222-ABC", fechaIni, fechaFin)); // solapa con la anterior
+				solicitudes.add(new SolicitudAlquiler("12345678A", "9999-ZZZ", fechaIni, fechaFin));
+				solicitudes.add(new SolicitudAlquiler("87654321Z", "1234-ABC", fechaIni, fechaFin));
+				solicitudes.add(new SolicitudAlquiler("12345678A", "1234-ABC", fechaFin, fechaIni));
+
+				List<ResultadoAlquiler> resultados = servicio.alquilarLote(solicitudes, 2);
+
+				int[] previstos = { 0, AlquilerCochesException.VEHICULO_OCUPADO, AlquilerCochesException.VEHICULO_NO_EXIST,
+						AlquilerCochesException.CLIENTE_NO_EXIST, AlquilerCochesException.SIN_DIAS };
+				boolean correcto = resultados.size() == previstos.length && resultados.get(0).getNroFactura() == 1;
+				for (int i = 0; correcto && i < previstos.length; i++) {
+					correcto = resultados.get(i).getCodigoError() == previstos[i];
+				}
+
+				if (correcto) {
+					LOGGER.info("OK Caso alquiler por lotes");
+				} else {
+					LOGGER.info("MAL Caso alquiler por lotes");
+					LOGGER.info("Se obtiene...*" + resultados + "*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} finally {
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+
+		// caso 8 Disponibilidad: el índice en memoria refleja los alquileres confirmados
+		{
+			Connection con = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+
+				boolean libreAntes = servicio.estaDisponible("1234-ABC", fechaIni, fechaFin);
+				servicio.alquilar("12345678A", "1234-ABC", fechaIni, fechaFin);
+				boolean libreSolapado = servicio.estaDisponible("1234-ABC", formatoFechas.parse("12-3-2013"),
+						formatoFechas.parse("14-3-2013"));
+				// Los intervalos son semiabiertos: el día de devolución vuelve a estar libre
+				boolean libreDespues = servicio.estaDisponible("1234-ABC", fechaFin, null);
+				List<String> disponibles = servicio.vehiculosDisponibles(fechaIni, fechaFin);
+
+				if (libreAntes && !libreSolapado && libreDespues && disponibles.size() == 2
+						&& !disponibles.contains("1234-ABC")) {
+					LOGGER.info("OK Caso disponibilidad");
+				} else {
+					LOGGER.info("MAL Caso disponibilidad");
+					LOGGER.info("Se obtiene...*" + libreAntes + ", " + libreSolapado + ", " + libreDespues + ", "
+							+ disponibles + "*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} finally {
 				if (con != null) {
 					con.close();
 				}
 			}
 		}
+
+		// caso 9 Alquileres simultaneos del mismo vehiculo: con cada modo de control de concurrencia solo uno puede
+		// reservarlo, el resto lo encuentran ocupado
+		for (ControlConcurrencia control : new ControlConcurrencia[] { ControlConcurrencia.BLOQUEO_FILA,
+				ControlConcurrencia.BLOQUEO_LOCAL }) {
+			Connection con = null;
+			PreparedStatement st = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+
+				int[] resultados = alquileresSimultaneos(new ServicioImpl(control), ALQUILERES_SIMULTANEOS,
+						"1234-ABC", fechaIni, fechaFin);
+
+				st = con.prepareStatement("SELECT COUNT(*) FROM reservas WHERE matricula = '1234-ABC'");
+				ResultSet rs = st.executeQuery();
+				rs.next();
+				int reservas = rs.getInt(1);
+				rs.close();
+
+				if (resultados[0] == 1 && resultados[AlquilerCochesException.VEHICULO_OCUPADO] == ALQUILERES_SIMULTANEOS - 1
+						&& reservas == 1) {
+					LOGGER.info("OK Caso alquileres simultaneos con " + control);
+				} else {
+					LOGGER.info("MAL Caso alquileres simultaneos con " + control);
+					LOGGER.info("Se obtiene...*" + Arrays.toString(resultados) + ", " + reservas + " reservas*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOGGER.error("Test interrumpido");
+			} finally {
+				if (st != null) {
+					st.close();
+				}
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+
+		// caso 10 Servicio asincrono: alquileres de vehiculos distintos a la vez y un error de negocio en el futuro
+		{
+			Connection con = null;
+			ServicioAsincrono asincrono = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+
+				asincrono = new ServicioAsincronoImpl();
+				List<CompletableFuture<ReciboAlquiler>> futuros = new ArrayList<CompletableFuture<ReciboAlquiler>>();
+				for (String matricula : new String[] { "1234-ABC", "1111-ABC", "2222-ABC" }) {
+					futuros.add(asincrono.alquilar("12345678A", matricula, fechaIni, fechaFin));
+				}
+				CompletableFuture<ReciboAlquiler> inexistente = asincrono.alquilar("12345678A", "9999-ZZZ", fechaIni,
+						fechaFin);
+
+				Set<Integer> facturas = new HashSet<Integer>();
+				for (CompletableFuture<ReciboAlquiler> futuro : futuros) {
+					facturas.add(futuro.get().getNroFactura());
+				}
+				int codigo = 0;
+				try {
+					inexistente.get();
+				} catch (ExecutionException e) {
+					codigo = e.getCause() instanceof AlquilerCochesException
+							? ((AlquilerCochesException) e.getCause()).getErrorCode()
+							: -1;
+				}
+
+				if (facturas.size() == 3 && codigo == AlquilerCochesException.VEHICULO_NO_EXIST) {
+					LOGGER.info("OK Caso servicio asincrono");
+				} else {
+					LOGGER.info("MAL Caso servicio asincrono");
+					LOGGER.info("Se obtiene...*" + facturas + ", " + codigo + "*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} catch (ExecutionException e) {
+				LOGGER.error(e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOGGER.error("Test interrumpido");
+			} finally {
+				if (asincrono != null) {
+					asincrono.close();
+				}
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+
+		// caso 11 Presupuestos: mismos importes que la factura, errores dentro del resultado y sin escribir nada
+		{
+			Connection con = null;
+			PreparedStatement st = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+
+				// 2 dias a 15 mas 50 litros a 1.5, y sin fecha de fin los 4 dias por defecto
+				Presupuesto presupuesto = servicio.presupuestar("1234-ABC", fechaIni, fechaFin);
+				List<Presupuesto> lote = servicio.presupuestarLote(Arrays.asList(
+						new SolicitudPresupuesto("1234-ABC", fechaIni, null),
+						new SolicitudPresupuesto("9999-ZZZ", fechaIni, fechaFin),
+						new SolicitudPresupuesto("1111-ABC", fechaFin, fechaIni)));
+
+				st = con.prepareStatement("SELECT (SELECT COUNT(*) FROM reservas) + (SELECT COUNT(*) FROM facturas) FROM dual");
+				ResultSet rs = st.executeQuery();
+				rs.next();
+				int filas = rs.getInt(1);
+				rs.close();
+
+				if (presupuesto.getDias() == 2 && presupuesto.getImporteTotal().compareTo(new BigDecimal("105")) == 0
+						&& lote.get(0).getImporteTotal().compareTo(new BigDecimal("135")) == 0
+						&& lote.get(1).getCodigoError() == AlquilerCochesException.VEHICULO_NO_EXIST
+						&& lote.get(2).getCodigoError() == AlquilerCochesException.SIN_DIAS && filas == 0) {
+					LOGGER.info("OK Caso presupuestos");
+				} else {
+					LOGGER.info("MAL Caso presupuestos");
+					LOGGER.info("Se obtiene...*" + presupuesto + ", " + lote + ", " + filas + " filas*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} finally {
+				if (st != null) {
+					st.close();
+				}
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+
+		// caso 12 Exportacion de facturas: CSV con una fila por linea de factura y binario comprimido
+		{
+			Connection con = null;
+			File csv = null;
+			File binario = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+				servicio.alquilar("12345678A", "1234-ABC", fechaIni, fechaFin);
+
+				ExportadorFacturas exportador = new ExportadorFacturas();
+				csv = File.createTempFile("facturas", ".csv");
+				binario = File.createTempFile("facturas", ".bin.gz");
+				long facturasCSV = exportador.exportar(csv.toPath(), ExportadorFacturas.Formato.CSV, false);
+				long facturasBinario = exportador.exportar(binario.toPath(), ExportadorFacturas.Formato.BINARIO, true);
+
+				String resultado = new String(Files.readAllBytes(csv.toPath()), StandardCharsets.UTF_8);
+				String resultadoPrevisto = "nroFactura;cliente;importe;concepto;importe_linea\n"
+						+ "1;12345678A;105.00;2 dias de alquiler, vehiculo modelo 1;30.00\n"
+						+ "1;12345678A;105.00;Deposito lleno de 50 litros de Gasolina;75.00\n";
+
+				// Cabecera, factura, dos lineas y fin
+				DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(binario)));
+				byte[] cabecera = new byte[5];
+				in.readFully(cabecera);
+				boolean binarioCorrecto = "FACT".equals(new String(cabecera, 0, 4, StandardCharsets.US_ASCII))
+						&& in.readByte() == 'F' && in.readInt() == 1;
+				in.close();
+
+				if (facturasCSV == 1 && facturasBinario == 1 && resultado.equals(resultadoPrevisto) && binarioCorrecto) {
+					LOGGER.info("OK Caso exportacion de facturas");
+				} else {
+					LOGGER.info("MAL Caso exportacion de facturas");
+					LOGGER.info("Se obtiene...*" + resultado + "*");
+					LOGGER.info("Y deberia ser*" + resultadoPrevisto + "*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (IOException e) {
+				LOGGER.error("Error en el test al escribir o leer la exportacion: " + e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} finally {
+				if (csv != null) {
+					csv.delete();
+				}
+				if (binario != null) {
+					binario.delete();
+				}
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+
+		// caso 13 Consultas paginadas por cliente: tres alquileres de un cliente y uno de otro, en paginas de 2
+		{
+			Connection con = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+				servicio.alquilar("12345678A", "1234-ABC", fechaIni, fechaFin);
+				servicio.alquilar("11111111B", "1111-ABC", fechaIni, fechaFin);
+				servicio.alquilar("12345678A", "2222-ABC", fechaIni, fechaFin);
+				servicio.alquilar("12345678A", "1234-ABC", fechaFin, null);
+
+				Pagina<Reserva> reservas1 = servicio.reservasCliente("12345678A", 0, 2);
+				Pagina<Reserva> reservas2 = servicio.reservasCliente("12345678A", reservas1.getSiguiente(), 2);
+				Pagina<Factura> facturas1 = servicio.facturasCliente("12345678A", 0, 2);
+				Pagina<Factura> facturas2 = servicio.facturasCliente("12345678A", facturas1.getSiguiente(), 2);
+
+				String resultado = reservas1.getElementos().size() + "" + reservas1.isUltima()
+						+ reservas1.getElementos().get(0).getIdReserva() + reservas1.getElementos().get(1).getIdReserva()
+						+ reservas2.getElementos().size() + reservas2.isUltima() + reservas2.getElementos().get(0).getMatricula()
+						+ "#" + facturas1.getElementos().size() + facturas1.isUltima()
+						+ facturas1.getElementos().get(0).getNroFactura() + facturas1.getElementos().get(1).getNroFactura()
+						+ facturas1.getElementos().get(0).getLineas().get(0).getConcepto() + "|"
+						+ facturas1.getElementos().get(0).getLineas().get(1).getConcepto() + facturas2.getElementos().size()
+						+ facturas2.isUltima() + facturas2.getElementos().get(0).getNroFactura();
+				String resultadoPrevisto = "2false131true1234-ABC#2false13"
+						+ "2 dias de alquiler, vehiculo modelo 1|Deposito lleno de 50 litros de Gasolina" + "1true4";
+
+				if (resultado.equals(resultadoPrevisto)
+						&& facturas1.getElementos().get(0).getImporte().compareTo(new BigDecimal("105")) == 0) {
+					LOGGER.info("OK Caso consultas paginadas por cliente");
+				} else {
+					LOGGER.info("MAL Caso consultas paginadas por cliente");
+					LOGGER.info("Se obtiene...*" + resultado + "*");
+					LOGGER.info("Y deberia ser*" + resultadoPrevisto + "*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} finally {
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+
+		// caso 14 Exportacion de facturas sin lineas: la primera y la ultima no tienen, y tambien salen en el CSV
+		{
+			Connection con = null;
+			PreparedStatement st = null;
+			File csv = null;
+
+			try {
+				// Reinicio filas
+				con = pool.getConnection();
+				datosPrueba.restaurar(con);
+
+				fechaIni = formatoFechas.parse("11-3-2013");
+				fechaFin = formatoFechas.parse("13-3-2013");
+				servicio.alquilar("12345678A", "1234-ABC", fechaIni, fechaFin);
+
+				st = con.prepareStatement("INSERT INTO facturas (nroFactura, importe, cliente) VALUES (?, ?, ?)");
+				st.setInt(1, 0);
+				st.setBigDecimal(2, new BigDecimal("10"));
+				st.setString(3, "11111111B");
+				st.addBatch();
+				st.setInt(1, 99);
+				st.setBigDecimal(2, new BigDecimal("20"));
+				st.setString(3, "11111111B");
+				st.addBatch();
+				st.executeBatch();
+				con.commit();
+
+				csv = File.createTempFile("facturas", ".csv");
+				long facturas = new ExportadorFacturas().exportar(csv.toPath(), ExportadorFacturas.Formato.CSV, false);
+
+				String resultado = new String(Files.readAllBytes(csv.toPath()), StandardCharsets.UTF_8);
+				String resultadoPrevisto = "nroFactura;cliente;importe;concepto;importe_linea\n"
+						+ "0;11111111B;10.00;;\n"
+						+ "1;12345678A;105.00;2 dias de alquiler, vehiculo modelo 1;30.00\n"
+						+ "1;12345678A;105.00;Deposito lleno de 50 litros de Gasolina;75.00\n"
+						+ "99;11111111B;20.00;;\n";
+
+				if (facturas == 3 && resultado.equals(resultadoPrevisto)) {
+					LOGGER.info("OK Caso exportacion de facturas sin lineas");
+				} else {
+					LOGGER.info("MAL Caso exportacion de facturas sin lineas");
+					LOGGER.info("Se obtiene...*" + resultado + "*");
+					LOGGER.info("Y deberia ser*" + resultadoPrevisto + "*");
+				}
+
+			} catch (SQLException e) {
+				LOGGER.error(e.getMessage());
+			} catch (IOException e) {
+				LOGGER.error("Error en el test al escribir o leer la exportacion: " + e.getMessage());
+			} catch (ParseException e) {
+				LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+			} finally {
+				if (csv != null) {
+					csv.delete();
+				}
+				if (st != null) {
+					st.close();
+				}
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+	}
+
+	private static final int ALQUILERES_SIMULTANEOS = 8;
+
+	// Lanza n alquileres del mismo vehiculo y fechas a la vez y cuenta los resultados por codigo de error
+	// (0 correctos, 1..4 los de AlquilerCochesException, 5 otros errores)
+	private int[] alquileresSimultaneos(final Servicio servicio, int n, final String matricula, final Date fechaIni,
+			final Date fechaFin) throws InterruptedException {
+		final AtomicIntegerArray resultados = new AtomicIntegerArray(6);
+		final CountDownLatch salida = new CountDownLatch(1);
+		Thread[] hilos = new Thread[n];
+		for (int i = 0; i < n; i++) {
+			final String cliente = i % 2 == 0 ? "12345678A" : "11111111B";
+			hilos[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int codigo;
+					try {
+						salida.await();
+						servicio.alquilar(cliente, matricula, fechaIni, fechaFin);
+						codigo = 0;
+					} catch (AlquilerCochesException e) {
+						codigo = e.getErrorCode();
+					} catch (SQLException e) {
+						LOGGER.error(e.getMessage());
+						codigo = 5;
+					} catch (InterruptedException e) {
+						codigo = 5;
+					}
+					resultados.incrementAndGet(codigo >= 0 && codigo < 5 ? codigo : 5);
+				}
+			});
+			hilos[i].start();
+		}
+		salida.countDown();
+		for (Thread hilo : hilos) {
+			hilo.join();
+		}
+
+		int[] cuentas = new int[resultados.length()];
+		for (int i = 0; i < cuentas.length; i++) {
+			cuentas[i] = resultados.get(i);
+		}
+		return cuentas;
 	}
 }
@@ -0,0 +1,137 @@
+package lsi.ubu.tests;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.servicios.SentenciasAlquiler;
+import lsi.ubu.util.PoolDeConexiones;
+import lsi.ubu.util.dialectos.Dialecto;
+import lsi.ubu.util.dialectos.Dialectos;
+
+/**
+ * Comprueba que la consulta de disponibilidad de alquilar no se degrada cuando un vehiculo acumula muchas reservas
+ * pasadas: mide la mediana de la consulta con los datos del script (ver DatosPrueba.cargarScript), carga en reservas
+ * un historico de test.disponibilidad.filas filas (un millon por defecto) y vuelve a medir. Al terminar deja los datos
+ * del script.
+ * <p>
+ * Es lento, por eso no forma parte de Tests; se lanza aparte con su main.
+ */
+public class TestsDisponibilidad {
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(TestsDisponibilidad.class);
+
+	private static final int FILAS = Integer.getInteger("test.disponibilidad.filas", 1000000);
+	private static final int FILAS_POR_INSERT = 100000;
+	private static final int MEDICIONES = 2000;
+
+	// Cada reserva del historico dura un minuto y deja otro libre, todas antes de 2013
+	private static String historico(Dialecto dialecto) {
+		return "INSERT INTO reservas (idReserva, cliente, matricula, fecha_ini, fecha_fin) "
+				+ "SELECT " + dialecto.siguienteValor("seq_reservas") + ", '11111111B', '1234-ABC', "
+				+ "DATE '1990-01-01' + (? + f.n) * 2 / 1440, DATE '1990-01-01' + ((? + f.n) * 2 + 1) / 1440 "
+				+ "FROM " + dialecto.generadorFilas() + " f";
+	}
+
+	public static void main(String[] args) throws SQLException {
+		new TestsDisponibilidad().ejecutarTests();
+	}
+
+	public void ejecutarTests() throws SQLException {
+		PoolDeConexiones pool = PoolDeConexiones.getInstance();
+		SimpleDateFormat formatoFechas = new SimpleDateFormat("dd-MM-yyyy");
+
+		Connection con = null;
+		CallableStatement cst = null;
+		PreparedStatement st = null;
+
+		try {
+			Date fechaIni = formatoFechas.parse("11-03-2013");
+			Date fechaFin = formatoFechas.parse("13-03-2013");
+
+			// Reinicio filas con el script del dialecto
+			con = pool.getConnection();
+			DatosPrueba datosPrueba = DatosPrueba.cargarScript(con);
+
+			double antes = medianaConsulta(con, fechaIni, fechaFin);
+
+			st = con.prepareStatement(historico(Dialectos.getActual()));
+			for (int cargadas = 0; cargadas < FILAS; cargadas += FILAS_POR_INSERT) {
+				int filas = Math.min(FILAS_POR_INSERT, FILAS - cargadas);
+				st.setInt(1, cargadas);
+				st.setInt(2, cargadas);
+				st.setInt(3, filas);
+				st.executeUpdate();
+				con.commit();
+			}
+			st.close();
+			st = null;
+
+			// Estadisticas al dia para que el optimizador vea el volumen real
+			cst = con.prepareCall(Dialectos.getActual().actualizarEstadisticas("reservas"));
+			cst.execute();
+			cst.close();
+
+			double despues = medianaConsulta(con, fechaIni, fechaFin);
+
+			LOGGER.info("Mediana de la consulta de disponibilidad: " + String.format("%.1f", antes) + "us con "
+					+ "los datos del script, " + String.format("%.1f", despues) + "us con " + FILAS + " reservas mas");
+			// Margen amplio para el ruido de medir tiempos tan cortos
+			if (despues <= antes * 3 || despues - antes < 200) {
+				LOGGER.info("OK La consulta de disponibilidad no crece con el historico de reservas");
+			} else {
+				LOGGER.info("MAL La consulta de disponibilidad crece con el historico de reservas");
+			}
+
+			// Dejamos los datos como estaban
+			datosPrueba.restaurar(con);
+
+		} catch (SQLException e) {
+			LOGGER.error(e.getMessage());
+		} catch (ParseException e) {
+			LOGGER.error("Error en el test al parsear la fechas desde cadena.");
+		} finally {
+			if (st != null) {
+				st.close();
+			}
+			if (cst != null) {
+				cst.close();
+			}
+			if (con != null) {
+				con.close();
+			}
+		}
+	}
+
+	// Mediana en microsegundos de la consulta de disponibilidad de alquilar para el intervalo indicado
+	private double medianaConsulta(Connection con, Date fechaIni, Date fechaFin) throws SQLException {
+		long[] tiempos = new long[MEDICIONES];
+		PreparedStatement st = con.prepareStatement(SentenciasAlquiler.RESERVAS_SOLAPADAS.getSql());
+		try {
+			st.setString(1, "1234-ABC");
+			st.setDate(2, new java.sql.Date(fechaIni.getTime()));
+			st.setDate(3, new java.sql.Date(fechaFin.getTime()));
+			for (int i = 0; i < MEDICIONES; i++) {
+				long inicio = System.nanoTime();
+				ResultSet rs = st.executeQuery();
+				rs.next();
+				rs.close();
+				tiempos[i] = System.nanoTime() - inicio;
+			}
+		} finally {
+			st.close();
+		}
+		Arrays.sort(tiempos);
+		return tiempos[MEDICIONES / 2] / 1000.0;
+	}
+}
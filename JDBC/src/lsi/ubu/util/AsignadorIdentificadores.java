@@ -0,0 +1,186 @@
+package lsi.ubu.util;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lsi.ubu.util.dialectos.Dialectos;
+
+/**
+ * Reparte valores de una secuencia desde memoria. Los valores se piden a la
+ * base de datos en bloques (una sola consulta de varias filas por bloque) y se
+ * entregan de uno en uno o en grupos a los hilos que los necesiten, para
+ * asignarlos explicitamente en los INSERT.
+ * <p>
+ * Como cualquier cache de secuencia, los identificadores son unicos pero no
+ * consecutivos ni en orden de confirmacion: los que queden sin usar al parar la
+ * aplicacion se pierden. Si la secuencia se reinicia (por ejemplo con reset_seq
+ * en los tests) hay que llamar a {@link #invalidarTodos()}.
+ * <p>
+ * Tamano de bloque configurable con la propiedad de sistema
+ * alquiler.secuencias.bloque (20 por defecto). La consulta que reserva el
+ * bloque la da el dialecto en uso (ver Dialecto.bloqueSecuencia).
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class AsignadorIdentificadores {
+
+	public static final String PROPIEDAD_BLOQUE = "alquiler.secuencias.bloque";
+
+	private static final int TAMANO_BLOQUE = Integer.getInteger(PROPIEDAD_BLOQUE, 20);
+
+	private static final ConcurrentMap<String, AsignadorIdentificadores> ASIGNADORES = new ConcurrentHashMap<String, AsignadorIdentificadores>();
+
+	private final String secuencia;
+	private final SentenciaSQL sentenciaBloque;
+
+	// Protege los valores pendientes. Es un ReentrantLock y no synchronized porque
+	// se mantiene mientras se reserva un bloque en la base de datos, y un hilo
+	// virtual bloqueado en un monitor no suelta su hilo portador.
+	private final ReentrantLock cerrojo = new ReentrantLock();
+
+	// Valores reservados pendientes de entregar: valores[siguiente..disponibles)
+	private long[] valores = new long[0];
+	private int siguiente;
+	private int disponibles;
+
+	private AsignadorIdentificadores(final String secuencia) {
+		if (!secuencia.matches("[A-Za-z_][A-Za-z0-9_$#]*")) {
+			throw new IllegalArgumentException("Nombre de secuencia no valido: " + secuencia);
+		}
+		this.secuencia = secuencia;
+		this.sentenciaBloque = new SentenciaSQL() {
+			@Override
+			public String name() {
+				return "BLOQUE_" + secuencia.toUpperCase();
+			}
+
+			@Override
+			public String getSql() {
+				// Se pide al preparar la sentencia en cada conexion, asi sigue al dialecto en uso
+				return Dialectos.getActual().bloqueSecuencia(secuencia);
+			}
+		};
+	}
+
+	/**
+	 * Asignador compartido de la secuencia indicada.
+	 *
+	 * @param secuencia nombre de la secuencia
+	 * @return asignador
+	 */
+	public static AsignadorIdentificadores get(String secuencia) {
+		AsignadorIdentificadores asignador = ASIGNADORES.get(secuencia);
+		if (asignador == null) {
+			AsignadorIdentificadores nuevo = new AsignadorIdentificadores(secuencia);
+			asignador = ASIGNADORES.putIfAbsent(secuencia, nuevo);
+			if (asignador == null) {
+				asignador = nuevo;
+			}
+		}
+		return asignador;
+	}
+
+	/**
+	 * Descarta los valores reservados de todas las secuencias.
+	 */
+	public static void invalidarTodos() {
+		for (AsignadorIdentificadores asignador : ASIGNADORES.values()) {
+			asignador.invalidar();
+		}
+	}
+
+	/**
+	 * Entrega el siguiente valor, reservando un bloque nuevo si no quedan.
+	 *
+	 * @param sentencias registro de la conexion con la que reservar el bloque
+	 * @return valor de la secuencia
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	public long siguiente(RegistroSentencias sentencias) throws SQLException {
+		cerrojo.lock();
+		try {
+			if (siguiente == disponibles) {
+				reservar(sentencias, TAMANO_BLOQUE);
+			}
+			return valores[siguiente++];
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Entrega n valores: primero los ya reservados y el resto con una sola
+	 * consulta.
+	 *
+	 * @param sentencias registro de la conexion con la que reservar
+	 * @param n          numero de valores
+	 * @return valores de la secuencia
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	public long[] siguientes(RegistroSentencias sentencias, int n) throws SQLException {
+		long[] resultado = new long[n];
+		cerrojo.lock();
+		try {
+			int entregados = Math.min(n, disponibles - siguiente);
+			System.arraycopy(valores, siguiente, resultado, 0, entregados);
+			siguiente += entregados;
+
+			if (entregados < n) {
+				// Lo que falta mas un bloque para las siguientes peticiones
+				int faltan = n - entregados;
+				reservar(sentencias, faltan + TAMANO_BLOQUE);
+				System.arraycopy(valores, 0, resultado, entregados, faltan);
+				siguiente = faltan;
+			}
+		} finally {
+			cerrojo.unlock();
+		}
+		return resultado;
+	}
+
+	/**
+	 * Descarta los valores reservados de esta secuencia.
+	 */
+	public void invalidar() {
+		cerrojo.lock();
+		try {
+			siguiente = 0;
+			disponibles = 0;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	// Pide n valores a la base de datos en un solo viaje y sustituye a los pendientes (que ya estan agotados)
+	private void reservar(RegistroSentencias sentencias, int n) throws SQLException {
+		PreparedStatement st = sentencias.get(sentenciaBloque);
+		st.setInt(1, n);
+		st.setFetchSize(n);
+		long[] nuevos = new long[n];
+		int leidos = 0;
+		ResultSet rs = st.executeQuery();
+		try {
+			while (leidos < n && rs.next()) {
+				nuevos[leidos++] = rs.getLong(1);
+			}
+		} finally {
+			rs.close();
+		}
+		if (leidos < n) {
+			throw new SQLException("La secuencia " + secuencia + " ha devuelto " + leidos + " de " + n + " valores");
+		}
+		valores = nuevos;
+		siguiente = 0;
+		disponibles = n;
+	}
+
+	@Override
+	public String toString() {
+		return "AsignadorIdentificadores[" + secuencia + ", pendientes=" + (disponibles - siguiente) + "]";
+	}
+}
@@ -0,0 +1,290 @@
+package lsi.ubu.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lsi.ubu.util.exceptions.RegistroSGBDErrorUtil;
+import lsi.ubu.util.exceptions.SGBDError;
+import lsi.ubu.util.exceptions.SGBDErrorUtil;
+
+/**
+ * Ejecuta scripts SQL al estilo de SQL*Plus por JDBC, sin lanzar procesos ni
+ * necesitar el cliente de Oracle.
+ * <p>
+ * Las sentencias normales terminan en ';'. Los bloques PL/SQL (CREATE
+ * PROCEDURE, FUNCTION, PACKAGE, TRIGGER o TYPE, DECLARE y BEGIN) terminan en
+ * una linea con solo '/'. De los comandos de SQL*Plus, EXEC se convierte en un
+ * bloque BEGIN ... END y el resto (EXIT, SET, PROMPT...) se ignoran.
+ * <p>
+ * Las sentencias DML seguidas se envian en un solo lote; el resto, de una en
+ * una. El tiempo de cada sentencia o lote sale en el log con nivel DEBUG. El
+ * primer error detiene el script con una SQLException que indica la linea,
+ * salvo en los DROP de tablas o secuencias que no existen, que se ignoran para
+ * poder ejecutar el script sobre una base de datos vacia. Los bloques PL/SQL
+ * que compilan con errores tambien detienen el script.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class EjecutorScript {
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(EjecutorScript.class);
+
+	private static final String[] INICIOS_PLSQL = { "CREATE OR REPLACE PROCEDURE", "CREATE OR REPLACE FUNCTION",
+			"CREATE OR REPLACE PACKAGE", "CREATE OR REPLACE TRIGGER", "CREATE OR REPLACE TYPE", "CREATE PROCEDURE",
+			"CREATE FUNCTION", "CREATE PACKAGE", "CREATE TRIGGER", "CREATE TYPE", "DECLARE", "BEGIN" };
+
+	private static final String[] COMANDOS_IGNORADOS = { "EXIT", "QUIT", "SET ", "SHOW ", "PROMPT", "SPOOL", "WHENEVER",
+			"@" };
+
+	/**
+	 * Sentencia de un script, con la linea en la que empieza.
+	 */
+	static final class Sentencia {
+		final String sql;
+		final int linea;
+		final boolean plsql;
+
+		Sentencia(String sql, int linea, boolean plsql) {
+			this.sql = sql;
+			this.linea = linea;
+			this.plsql = plsql;
+		}
+
+		boolean isDML() {
+			String inicio = primeraPalabra(sql);
+			return !plsql && ("INSERT".equals(inicio) || "UPDATE".equals(inicio) || "DELETE".equals(inicio)
+					|| "MERGE".equals(inicio));
+		}
+
+		boolean isDrop() {
+			return !plsql && "DROP".equals(primeraPalabra(sql));
+		}
+
+		@Override
+		public String toString() {
+			return "linea " + linea + ": " + sql;
+		}
+	}
+
+	private EjecutorScript() {
+	}
+
+	/**
+	 * Ejecuta un script y confirma los cambios.
+	 *
+	 * @param con    conexion con la que ejecutarlo
+	 * @param script texto del script
+	 * @param nombre nombre del script para el log y los errores
+	 * @return numero de sentencias ejecutadas
+	 * @throws IOException  si no se puede leer el script
+	 * @throws SQLException  en el primer error de la base de datos
+	 */
+	public static int ejecutar(Connection con, Reader script, String nombre) throws IOException, SQLException {
+		long inicio = System.nanoTime();
+		List<Sentencia> sentencias = leer(script);
+		// Los errores se traducen segun la base de datos de la conexion, que puede no ser la del pool
+		SGBDErrorUtil errores = RegistroSGBDErrorUtil.get(con.getMetaData().getDatabaseProductName());
+		if (errores == null) {
+			errores = RegistroSGBDErrorUtil.getInstance();
+		}
+
+		Statement st = con.createStatement();
+		try {
+			st.setEscapeProcessing(false);
+			List<Sentencia> lote = new ArrayList<Sentencia>();
+			for (Sentencia sentencia : sentencias) {
+				if (sentencia.isDML()) {
+					st.addBatch(sentencia.sql);
+					lote.add(sentencia);
+					continue;
+				}
+				enviarLote(st, lote, nombre);
+				ejecutarUna(st, sentencia, nombre, errores);
+			}
+			enviarLote(st, lote, nombre);
+		} finally {
+			st.close();
+		}
+		con.commit();
+
+		LOGGER.info(nombre + ": " + sentencias.size() + " sentencias en "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + "ms");
+		return sentencias.size();
+	}
+
+	private static void ejecutarUna(Statement st, Sentencia sentencia, String nombre, SGBDErrorUtil errores)
+			throws SQLException {
+		long inicio = System.nanoTime();
+		try {
+			st.execute(sentencia.sql);
+		} catch (SQLException e) {
+			// Lo que se quiere borrar ya no esta: el script se puede lanzar sobre un esquema vacio
+			if (sentencia.isDrop() && (errores.checkExceptionToCode(e, SGBDError.NOT_EXISTS_TABLE)
+					|| errores.checkExceptionToCode(e, SGBDError.NOT_EXISTS_SEQUENCE))) {
+				LOGGER.debug("Ignorado (no existe): " + sentencia.sql);
+				return;
+			}
+			throw error(nombre, sentencia, e);
+		}
+		// Oracle crea los procedimientos con errores de compilacion y solo deja un aviso
+		SQLWarning aviso = st.getWarnings();
+		st.clearWarnings();
+		if (sentencia.plsql && aviso != null) {
+			throw error(nombre, sentencia, aviso);
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(String.format("%.1fms %s", (System.nanoTime() - inicio) / 1e6, resumir(sentencia.sql)));
+		}
+	}
+
+	private static void enviarLote(Statement st, List<Sentencia> lote, String nombre) throws SQLException {
+		if (lote.isEmpty()) {
+			return;
+		}
+		long inicio = System.nanoTime();
+		try {
+			st.executeBatch();
+		} catch (BatchUpdateException e) {
+			// Las que van antes de la que ha fallado se han ejecutado
+			int fallida = Math.min(e.getUpdateCounts() == null ? 0 : e.getUpdateCounts().length, lote.size() - 1);
+			throw error(nombre, lote.get(fallida), e);
+		} finally {
+			st.clearBatch();
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(String.format("%.1fms lote de %d sentencias desde la linea %d", (System.nanoTime() - inicio) / 1e6,
+					lote.size(), lote.get(0).linea));
+		}
+		lote.clear();
+	}
+
+	private static SQLException error(String nombre, Sentencia sentencia, SQLException causa) {
+		return new SQLException(nombre + ", " + sentencia + " -> " + causa.getMessage(), causa.getSQLState(),
+				causa.getErrorCode(), causa);
+	}
+
+	/**
+	 * Divide un script en sentencias ejecutables por JDBC.
+	 *
+	 * @param script texto del script
+	 * @return sentencias en orden
+	 * @throws IOException si no se puede leer
+	 */
+	static List<Sentencia> leer(Reader script) throws IOException {
+		List<Sentencia> sentencias = new ArrayList<Sentencia>();
+		BufferedReader lector = new BufferedReader(script);
+
+		StringBuilder actual = new StringBuilder();
+		boolean plsql = false;
+		boolean enCadena = false;
+		int lineaInicio = 0;
+		int numero = 0;
+		String linea;
+		while ((linea = lector.readLine()) != null) {
+			numero++;
+			String recortada = linea.trim();
+
+			if (plsql) {
+				// El bloque llega tal cual, comentarios incluidos, hasta la barra
+				if ("/".equals(recortada)) {
+					sentencias.add(new Sentencia(actual.toString().trim(), lineaInicio, true));
+					actual.setLength(0);
+					plsql = false;
+				} else {
+					actual.append(linea).append('\n');
+				}
+				continue;
+			}
+
+			if (actual.length() == 0 && !enCadena) {
+				String mayusculas = recortada.toUpperCase(Locale.ROOT);
+				if (recortada.isEmpty() || recortada.startsWith("--") || "/".equals(recortada)
+						|| empiezaPor(mayusculas, COMANDOS_IGNORADOS)) {
+					continue;
+				}
+				if (mayusculas.startsWith("EXEC ") || mayusculas.startsWith("EXECUTE ")) {
+					String llamada = recortada.substring(recortada.indexOf(' ') + 1).trim();
+					if (llamada.endsWith(";")) {
+						llamada = llamada.substring(0, llamada.length() - 1);
+					}
+					sentencias.add(new Sentencia("BEGIN " + llamada + "; END;", numero, true));
+					continue;
+				}
+				lineaInicio = numero;
+				if (empiezaPor(mayusculas.replaceAll("\\s+", " "), INICIOS_PLSQL)) {
+					plsql = true;
+					actual.append(linea).append('\n');
+					continue;
+				}
+			}
+
+			// Sentencia normal: se quitan los comentarios y se corta en cada ';' fuera de las cadenas
+			for (int i = 0; i < linea.length(); i++) {
+				char c = linea.charAt(i);
+				if (c == '\'') {
+					enCadena = !enCadena;
+				} else if (!enCadena && c == '-' && i + 1 < linea.length() && linea.charAt(i + 1) == '-') {
+					break;
+				} else if (!enCadena && c == ';') {
+					String sql = actual.toString().trim();
+					if (!sql.isEmpty()) {
+						sentencias.add(new Sentencia(sql, lineaInicio, false));
+					}
+					actual.setLength(0);
+					lineaInicio = numero;
+					continue;
+				}
+				actual.append(c);
+			}
+			if (actual.length() > 0) {
+				actual.append('\n');
+			}
+			if (actual.toString().trim().isEmpty()) {
+				actual.setLength(0);
+			}
+		}
+
+		String resto = actual.toString().trim();
+		if (!resto.isEmpty()) {
+			sentencias.add(new Sentencia(resto, lineaInicio, plsql));
+		}
+		return sentencias;
+	}
+
+	private static boolean empiezaPor(String texto, String[] inicios) {
+		for (String inicio : inicios) {
+			if (texto.startsWith(inicio)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String primeraPalabra(String sql) {
+		int fin = 0;
+		while (fin < sql.length() && Character.isLetter(sql.charAt(fin))) {
+			fin++;
+		}
+		return sql.substring(0, fin).toUpperCase(Locale.ROOT);
+	}
+
+	private static String resumir(String sql) {
+		String unaLinea = sql.replaceAll("\\s+", " ");
+		return unaLinea.length() > 80 ? unaLinea.substring(0, 77) + "..." : unaLinea;
+	}
+}
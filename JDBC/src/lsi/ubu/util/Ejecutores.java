@@ -0,0 +1,56 @@
+package lsi.ubu.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creacion de ejecutores con hilos virtuales cuando la maquina virtual los
+ * tiene (Java 21 o posterior). El proyecto compila para Java 8, por eso se
+ * buscan por reflexion; en versiones anteriores se usa un pool de hilos de
+ * plataforma.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Ejecutores {
+
+	private static final Method HILOS_VIRTUALES = buscarHilosVirtuales();
+
+	private Ejecutores() {
+	}
+
+	private static Method buscarHilosVirtuales() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true si la maquina virtual tiene hilos virtuales
+	 */
+	public static boolean hayHilosVirtuales() {
+		return HILOS_VIRTUALES != null;
+	}
+
+	/**
+	 * Ejecutor con un hilo virtual por tarea si se piden y los hay, o con un pool
+	 * fijo de hilos de plataforma.
+	 *
+	 * @param virtuales true para usar hilos virtuales si es posible
+	 * @param hilos     hilos del pool de plataforma
+	 * @return ejecutor
+	 */
+	public static ExecutorService nuevo(boolean virtuales, int hilos) {
+		if (virtuales && HILOS_VIRTUALES != null) {
+			try {
+				return (ExecutorService) HILOS_VIRTUALES.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("No se pueden crear hilos virtuales", e);
+			}
+		}
+		return Executors.newFixedThreadPool(hilos);
+	}
+}
@@ -1,62 +1,55 @@
 package lsi.ubu.util;
 
-import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
 
 /**
  * Utilidad para ejecutar el script sql de borrado y creacion de datos. Permite
  * la ejecucion de los "tests" con independencia.
+ * <p>
+ * El script se ejecuta por JDBC con una conexion del pool (ver
+ * {@link EjecutorScript}), sin lanzar sqlplus.
  * 
  * @author <a href="mailto:jmaudes@ubu.es">Jesus Maudes</a>
  * @author <a href="mailto:rmartico@ubu.es">Raul Marticorena</a>
  */
 public class ExecuteScript {
-	/** Logger. */
-	private static final Logger LOGGER = LoggerFactory.getLogger(ExecuteScript.class);;
 
 	/**
 	 * Principal.
 	 * 
 	 * @param args el primer argumento incluye el nombre del script a ejecutar
+	 * @throws SQLException si falla alguna sentencia del script
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws SQLException {
 		run(args[0]);
-		// run();
 	}
 
 	/**
 	 * Ejecuta el script sql.
 	 * 
 	 * @param file_name nombre del script .sql a ejecutar
+	 * @throws SQLException si no se puede leer el script o falla alguna de sus
+	 *                      sentencias; las anteriores quedan ejecutadas
 	 */
-	public static void run(String file_name) {
-		String os = System.getProperty("os.name").toLowerCase();
-
+	public static void run(String file_name) throws SQLException {
+		Connection con = PoolDeConexiones.getInstance().getConnection();
 		try {
-
-			String line;
-			Process p = null;
-
-			// if is linux
-			if (os.indexOf("nux") >= 0) {
-				String sqlLauncher = "sql/lanza_sqlplus.sh";
-				p = Runtime.getRuntime().exec(new String[] { sqlLauncher, "hr/hr", "@" + file_name });
-			} else if (os.indexOf("win") >= 0) { // if is windows
-				p = Runtime.getRuntime().exec("sqlplus hr/hr @" + file_name);
-			} else {
-				throw (new Exception("lsi.ubu.util.ExecuteScript.java" + " Sistema operativo incompatible"));
-			}
-
-			BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			while ((line = input.readLine()) != null) {
-				LOGGER.debug(line);
+			Reader script = new InputStreamReader(new FileInputStream(file_name), StandardCharsets.UTF_8);
+			try {
+				EjecutorScript.ejecutar(con, script, file_name);
+			} finally {
+				script.close();
 			}
-			input.close();
-		} catch (Exception err) {
-			LOGGER.error(err.getMessage());
+		} catch (IOException e) {
+			throw new SQLException("No se puede leer el script " + file_name, e);
+		} finally {
+			con.close();
 		}
 	}
 }
@@ -1,8 +1,15 @@
 package lsi.ubu.util;
 
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -15,8 +22,17 @@ import org.slf4j.LoggerFactory;
 import oracle.ucp.jdbc.PoolDataSource;
 import oracle.ucp.jdbc.PoolDataSourceFactory;
 
+import lsi.ubu.util.dialectos.Dialectos;
+import lsi.ubu.util.metricas.Histograma;
+import lsi.ubu.util.traza.TrazaJDBC;
+
 /**
  * Pool de conexiones.
+ * <p>
+ * Se registra como MBean (lsi.ubu:type=PoolDeConexiones) para poder consultar
+ * las conexiones prestadas y disponibles, los tiempos de espera al obtener
+ * conexion y los aciertos de la cache de sentencias, y redimensionar el pool en
+ * caliente.
  * 
  * @author <a href="mailto:jmaudes@ubu.es">Jesus Maudes</a>
  * @author <a href="mailto:rmartico@ubu.es">Raul Marticorena</a>
@@ -24,7 +40,7 @@ import oracle.ucp.jdbc.PoolDataSourceFactory;
  * @since 1.0
  */
 
-public class PoolDeConexiones {
+public class PoolDeConexiones implements PoolDeConexionesMBean {
 
 	/** Logger. */
 	private static final Logger LOGGER = LoggerFactory.getLogger(PoolDeConexiones.class);
@@ -49,66 +65,209 @@ public class PoolDeConexiones {
 	// hr/hr.
 	private static final String PASSWORD = "hr";
 
-	/** Pool de conexiones. */
-	private static PoolDeConexiones poolDeConexiones;
+	/**
+	 * Tamano de la cache de sentencias preparadas por conexion. Debe superar el
+	 * numero de sentencias distintas de un alquiler (ver SentenciasAlquiler) mas
+	 * las de los tests, o se expulsan unas a otras en cada transaccion.
+	 */
+	public static final int MAX_SENTENCIAS = 20;
+
+	/**
+	 * Propiedad de sistema con el tiempo maximo de espera, en segundos, para
+	 * obtener una conexion del pool cuando estan todas prestadas.
+	 */
+	public static final String PROPIEDAD_TIMEOUT_ADQUISICION = "pool.timeoutAdquisicion";
+
+	/** Tiempo maximo de espera por defecto para obtener una conexion (segundos). */
+	public static final int TIMEOUT_ADQUISICION = 3;
+
+	// Tamanos que publica reconfigurarPool, modificables con pool.tamanoInicial,
+	// pool.tamanoMinimo y pool.tamanoMaximo
+	private static final int TAMANO_INICIAL = Integer.getInteger("pool.tamanoInicial", 5);
+	private static final int TAMANO_MINIMO = Integer.getInteger("pool.tamanoMinimo", 3);
+	private static final int TAMANO_MAXIMO = Integer.getInteger("pool.tamanoMaximo", 10);
+
+	/** Nombre con el que se registra el MBean. */
+	public static final String NOMBRE_MBEAN = "lsi.ubu:type=PoolDeConexiones";
+
+	/** Nivel de aislamiento de todas las conexiones entregadas. */
+	private static final int NIVEL_AISLAMIENTO = Connection.TRANSACTION_READ_COMMITTED;
+	// Connection.TRANSACTION_SERIALIZABLE);
+	// No v�lidos en Oracle:
+	// Connection.TRANSACTION_REPEATABLE_READ
+	// Connection.TRANSACTION_SERIALIZABLE
+
+	/**
+	 * Pool de conexiones. Volatil para que la inicializacion con doble
+	 * comprobacion publique la instancia completa al resto de hilos.
+	 */
+	private static volatile PoolDeConexiones poolDeConexiones;
 
 	/** DataSource. */
-	private DataSource ds;
+	private final DataSource ds;
+
+	/** Tiempo que tarda cada getConnection en obtener la conexion. */
+	private final Histograma esperas = new Histograma();
+
+	/** Intentos de obtener conexion fallidos. */
+	private final AtomicLong fallosAdquisicion = new AtomicLong();
 
 	/**
 	 * Constructor del pool de conexiones, siguiendo el patron de dise�o Singleton.
 	 * 
+	 * @param ds data source del que se obtienen las conexiones
+	 */
+	private PoolDeConexiones(DataSource ds) {
+		this.ds = ds;
+		registrarMBean();
+	}
+
+	/**
+	 * Publica el pool en el servidor JMX de la plataforma. Si no se puede, se
+	 * sigue sin gestion remota.
+	 */
+	private void registrarMBean() {
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			ObjectName nombre = new ObjectName(NOMBRE_MBEAN);
+			if (!servidor.isRegistered(nombre)) {
+				servidor.registerMBean(this, nombre);
+			}
+		} catch (JMException e) {
+			LOGGER.warn("No se ha podido registrar el MBean del pool: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Busca el data source publicado en el contexto JNDI y le aplica el tiempo de
+	 * espera configurado.
+	 * 
+	 * @return data source
 	 * @throws RuntimeException si no encuentra el el recurso JNDI, y por tanto no
 	 *                          logra instanciar el pool
 	 */
-	private PoolDeConexiones() {
+	private static DataSource buscarDataSource() {
 		try {
 			Properties properties = new Properties();
 			properties.setProperty(Context.INITIAL_CONTEXT_FACTORY, FILE_SYSTEM_CONTEXT_FACTORY);
 			properties.setProperty(Context.PROVIDER_URL, FILE_RES);
 			Context context = new InitialContext(properties);
 
-			ds = (DataSource) context.lookup(JDBC_TESTDB_DS);
+			DataSource ds = (DataSource) context.lookup(JDBC_TESTDB_DS);
+
+			Integer timeout = Integer.getInteger(PROPIEDAD_TIMEOUT_ADQUISICION);
+			if (timeout != null && ds instanceof PoolDataSource) {
+				((PoolDataSource) ds).setConnectionWaitTimeout(timeout);
+			}
+			return ds;
 
 		} catch (NamingException e) {
 			LOGGER.error("Problema: no se encuentra el nombre del recurso en el contexto JNDI");
 			LOGGER.error(e.getMessage());
 
 			// La aplicacion ya no puede seguir si no se instancia un pool
-			throw new RuntimeException();
+			throw new RuntimeException(e);
+		} catch (SQLException e) {
+			LOGGER.error("Problema: no se puede configurar el tiempo de espera del pool");
+			LOGGER.error(e.getMessage());
+
+			throw new RuntimeException(e);
 		}
 	}
 
 	/**
-	 * Obtiene la instancia del pool de conexiones si no existia.
+	 * Obtiene la instancia del pool de conexiones si no existia. La busqueda JNDI
+	 * se hace una sola vez aunque varios hilos llamen a la vez.
 	 * 
+	 * @return pool de conexiones
 	 */
 	public static PoolDeConexiones getInstance() {
-		if (poolDeConexiones == null) {
-			poolDeConexiones = new PoolDeConexiones();
+		PoolDeConexiones pool = poolDeConexiones;
+		if (pool == null) {
+			synchronized (PoolDeConexiones.class) {
+				pool = poolDeConexiones;
+				if (pool == null) {
+					pool = new PoolDeConexiones(buscarDataSource());
+					poolDeConexiones = pool;
+				}
+			}
 		}
-		return poolDeConexiones;
+		return pool;
 	}
 
 	/**
-	 * Obtiene una conexion.
+	 * Inicializa el pool con un data source concreto en lugar del publicado en
+	 * JNDI (por ejemplo, una base de datos embebida). Debe llamarse antes del
+	 * primer getInstance(). El dialecto SQL se detecta de la base de datos.
+	 * 
+	 * @param ds data source
+	 * @return pool de conexiones
+	 * @throws IllegalStateException si el pool ya estaba inicializado
+	 */
+	public static PoolDeConexiones inicializar(DataSource ds) {
+		synchronized (PoolDeConexiones.class) {
+			if (poolDeConexiones != null) {
+				throw new IllegalStateException("El pool de conexiones ya esta inicializado");
+			}
+			poolDeConexiones = new PoolDeConexiones(ds);
+			detectarDialecto(poolDeConexiones);
+			return poolDeConexiones;
+		}
+	}
+
+	/**
+	 * Elige el dialecto SQL segun la base de datos del data source. Si no se
+	 * puede, se sigue con el configurado.
+	 * 
+	 * @param pool pool recien creado
+	 */
+	private static void detectarDialecto(PoolDeConexiones pool) {
+		try {
+			Connection con = pool.ds.getConnection();
+			try {
+				LOGGER.info("Dialecto SQL: " + Dialectos.detectar(con).getNombre());
+			} finally {
+				con.close();
+			}
+		} catch (SQLException e) {
+			LOGGER.warn("No se ha podido detectar el dialecto SQL: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Obtiene una conexion sin autocommit y con el nivel de aislamiento del pool.
+	 * Solo se cambia el estado de la conexion si no es ya el adecuado.
+	 * Con pool.traza=true se entrega envuelta por TrazaJDBC.
 	 * 
 	 * @return conexion
 	 * @throws SQLException si hay un error con la base de datos
 	 */
 	public Connection getConnection() throws SQLException {
-		Connection conn = ds.getConnection();
+		long inicio = System.nanoTime();
+		Connection conn;
+		try {
+			conn = ds.getConnection();
+		} catch (SQLException e) {
+			fallosAdquisicion.incrementAndGet();
+			throw e;
+		}
+		esperas.registrarDesde(inicio);
 
-		conn.setAutoCommit(false);
-		LOGGER.debug("Activacion de Autocommit={}", conn.getAutoCommit());
+		if (conn.getAutoCommit()) {
+			conn.setAutoCommit(false);
+		}
+		if (conn.getTransactionIsolation() != NIVEL_AISLAMIENTO) {
+			conn.setTransactionIsolation(NIVEL_AISLAMIENTO);
+		}
 
-		conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
-		// Connection.TRANSACTION_SERIALIZABLE);
-		// No v�lidos en Oracle:
-		// conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
-		// conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(traceConnectionSettings(conn));
+		}
 
-		LOGGER.debug(traceConnectionSettings(conn));
+		// Traza de sentencias, transacciones y fugas solo si se ha pedido con pool.traza
+		if (TrazaJDBC.isActiva()) {
+			conn = TrazaJDBC.envolver(conn);
+		}
 
 		return conn;
 	}
@@ -136,13 +295,14 @@ public class PoolDeConexiones {
 		pds.setURL(url);
 
 		//// Configuracion del pool
-		pds.setMinPoolSize(3);
-		pds.setMaxPoolSize(10);
-		pds.setInitialPoolSize(5);
+		pds.setMinPoolSize(TAMANO_MINIMO);
+		pds.setMaxPoolSize(TAMANO_MAXIMO);
+		pds.setInitialPoolSize(TAMANO_INICIAL);
 		pds.setTimeToLiveConnectionTimeout(18000);
+		pds.setConnectionWaitTimeout(TIMEOUT_ADQUISICION);
 
-		//// Activacion de la cache de sentencias prepradas (6 sentencias)
-		pds.setMaxStatements(6);
+		//// Activacion de la cache de sentencias prepradas
+		pds.setMaxStatements(MAX_SENTENCIAS);
 
 		context.rebind(JDBC_TESTDB_DS, pds);
 
@@ -174,7 +334,7 @@ public class PoolDeConexiones {
 			retorno += "TRANSACTION_REPEATABLE_READ";
 			break;
 		case Connection.TRANSACTION_SERIALIZABLE:
-			retorno += "TRANSACTION_REPEATABLE_READ";
+			retorno += "TRANSACTION_SERIALIZABLE";
 			break;
 		default:
 			throw new RuntimeException("Nivel de aislamiento no detectado. Revisar configuracion.");
@@ -183,28 +343,41 @@ public class PoolDeConexiones {
 	}
 
 	/**
-	 * Redimensiona el pool.
+	 * Redimensiona el pool en caliente.
 	 * 
 	 * @param initialLimit tama�o inicial
 	 * @param minLimit     tama�o minimo
 	 * @param maxLimit     tama�o maximo
 	 * @throws SQLException si hay un error con la cache de conexiones
 	 */
-	private void resizePool(int initialLimit, int minLimit, int maxLimit) throws SQLException {
-		((PoolDataSource) ds).setMinPoolSize(minLimit);
-		((PoolDataSource) ds).setMaxPoolSize(maxLimit);
-		((PoolDataSource) ds).setInitialPoolSize(initialLimit);
+	@Override
+	public void resizePool(int initialLimit, int minLimit, int maxLimit) throws SQLException {
+		if (minLimit < 0 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException(
+					"Tamanos no validos: inicial=" + initialLimit + " minimo=" + minLimit + " maximo=" + maxLimit);
+		}
+		PoolDataSource pds = getPoolDataSource();
+		// El orden evita que el minimo supere al maximo en algun momento
+		if (maxLimit >= pds.getMaxPoolSize()) {
+			pds.setMaxPoolSize(maxLimit);
+			pds.setMinPoolSize(minLimit);
+		} else {
+			pds.setMinPoolSize(minLimit);
+			pds.setMaxPoolSize(maxLimit);
+		}
+		pds.setInitialPoolSize(initialLimit);
+		LOGGER.info("Pool redimensionado: inicial={} minimo={} maximo={}", initialLimit, minLimit, maxLimit);
 	}
 
 	/**
 	 * Consulta la configuracion del data source de Oracle.
 	 * 
-	 * @param conn conexion
 	 * @return texto con las caracteristicas actuales
 	 * @throws SQLException si hay un error con la base de datos
 	 */
-	private String traceOracleSettings() throws SQLException {
-		PoolDataSource pds = (PoolDataSource) ds;
+	@Override
+	public String traceOracleSettings() throws SQLException {
+		PoolDataSource pds = getPoolDataSource();
 
 		String retorno = "trabajando con OracleDataSource\n";
 		retorno += "Activacion de Cache de Sentencias Preparadas con " + pds.getMaxStatements() + " sentencias \n";
@@ -214,8 +387,108 @@ public class PoolDeConexiones {
 		retorno += "Tama�o Maximo Pool de Conexiones=" + pds.getMaxPoolSize() + "\n";
 
 		retorno += "Tiempo maximo de conexion viva=" + pds.getTimeToLiveConnectionTimeout() + "\n";
+		retorno += "Tiempo maximo de espera de conexion=" + pds.getConnectionWaitTimeout() + "\n";
 
 		return retorno;
 	}
 
+	/**
+	 * Data source de UCP que hay detras del pool.
+	 * 
+	 * @return data source de UCP
+	 * @throws IllegalStateException si el pool usa otro tipo de data source
+	 */
+	private PoolDataSource getPoolDataSource() {
+		if (!(ds instanceof PoolDataSource)) {
+			throw new IllegalStateException("El data source no es un pool de UCP: " + ds.getClass().getName());
+		}
+		return (PoolDataSource) ds;
+	}
+
+	// Estadisticas y tamanos (-1 si el data source no es de UCP)
+
+	@Override
+	public int getConexionesPrestadas() throws SQLException {
+		return ds instanceof PoolDataSource ? ((PoolDataSource) ds).getBorrowedConnectionsCount() : -1;
+	}
+
+	@Override
+	public int getConexionesDisponibles() throws SQLException {
+		return ds instanceof PoolDataSource ? ((PoolDataSource) ds).getAvailableConnectionsCount() : -1;
+	}
+
+	@Override
+	public int getTamanoInicial() {
+		return ds instanceof PoolDataSource ? ((PoolDataSource) ds).getInitialPoolSize() : -1;
+	}
+
+	@Override
+	public int getTamanoMinimo() {
+		return ds instanceof PoolDataSource ? ((PoolDataSource) ds).getMinPoolSize() : -1;
+	}
+
+	@Override
+	public int getTamanoMaximo() {
+		return ds instanceof PoolDataSource ? ((PoolDataSource) ds).getMaxPoolSize() : -1;
+	}
+
+	@Override
+	public long getAdquisiciones() {
+		return esperas.getTotal();
+	}
+
+	@Override
+	public long getFallosAdquisicion() {
+		return fallosAdquisicion.get();
+	}
+
+	@Override
+	public double getEsperaMedia() {
+		return esperas.getMedia(TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public double getEsperaP50() {
+		return esperas.getPercentil(50, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public double getEsperaP99() {
+		return esperas.getPercentil(99, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public double getEsperaP999() {
+		return esperas.getPercentil(99.9, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public double getEsperaMaxima() {
+		return esperas.getMaximo(TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public double getRatioAciertosSentencias() {
+		long reutilizadas = RegistroSentencias.getReutilizadas();
+		long total = reutilizadas + RegistroSentencias.getPreparadas();
+		return total == 0 ? 0 : (double) reutilizadas / total;
+	}
+
+	@Override
+	public long getSentenciasReutilizadas() {
+		return RegistroSentencias.getReutilizadas();
+	}
+
+	@Override
+	public long getSentenciasPreparadas() {
+		return RegistroSentencias.getPreparadas();
+	}
+
+	@Override
+	public void reiniciarEstadisticas() {
+		esperas.reiniciar();
+		fallosAdquisicion.set(0);
+		RegistroSentencias.reiniciarEstadisticas();
+	}
+
 }
@@ -0,0 +1,64 @@
+package lsi.ubu.util;
+
+import java.sql.SQLException;
+
+/**
+ * Interfaz de gestion JMX del pool de conexiones (MBean estandar registrado
+ * como lsi.ubu:type=PoolDeConexiones). Los tiempos se dan en milisegundos.
+ * 
+ * @version 1.0
+ * @since 1.1
+ */
+public interface PoolDeConexionesMBean {
+
+	int getConexionesPrestadas() throws SQLException;
+
+	int getConexionesDisponibles() throws SQLException;
+
+	int getTamanoInicial();
+
+	int getTamanoMinimo();
+
+	int getTamanoMaximo();
+
+	/**
+	 * Cambia el tamano del pool en caliente.
+	 * 
+	 * @param initialLimit tamano inicial
+	 * @param minLimit     tamano minimo
+	 * @param maxLimit     tamano maximo
+	 * @throws SQLException si hay un error con la cache de conexiones
+	 */
+	void resizePool(int initialLimit, int minLimit, int maxLimit) throws SQLException;
+
+	long getAdquisiciones();
+
+	/** Intentos de obtener conexion que han fallado, casi siempre por agotar el tiempo de espera. */
+	long getFallosAdquisicion();
+
+	double getEsperaMedia();
+
+	double getEsperaP50();
+
+	double getEsperaP99();
+
+	double getEsperaP999();
+
+	double getEsperaMaxima();
+
+	/**
+	 * Ratio de aciertos de la cache de sentencias: sentencias servidas sin volver
+	 * a analizarlas entre todas las pedidas. Lo cuenta RegistroSentencias por
+	 * conexion fisica, asi que incluye las que vienen de prestamos anteriores de
+	 * la misma conexion. Tambien estan los aciertos y fallos por separado.
+	 */
+	double getRatioAciertosSentencias();
+
+	long getSentenciasReutilizadas();
+
+	long getSentenciasPreparadas();
+
+	String traceOracleSettings() throws SQLException;
+
+	void reiniciarEstadisticas();
+}
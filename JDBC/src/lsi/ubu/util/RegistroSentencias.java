@@ -0,0 +1,189 @@
+package lsi.ubu.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registro de sentencias preparadas asociado a una conexion. Cada sentencia con
+ * nombre se prepara como mucho una vez mientras dura el registro y se cierran
+ * todas al cerrarlo, de modo que no quedan cursores abiertos.
+ * <p>
+ * Las sentencias se marcan como "poolable" para que, al cerrarlas, vuelvan a la
+ * cache de sentencias del pool (ver {@link PoolDeConexiones#MAX_SENTENCIAS}) y
+ * la siguiente transaccion sobre la misma conexion fisica no las vuelva a
+ * analizar.
+ * <p>
+ * No es seguro entre hilos: igual que la conexion, lo usa un solo hilo.
+ * <p>
+ * Las estadisticas son aciertos y fallos de la cache de sentencias de cada
+ * conexion fisica, que dura mas que el prestamo: el registro lleva, por
+ * conexion fisica, las ultimas {@link PoolDeConexiones#MAX_SENTENCIAS}
+ * sentencias preparadas en ella en orden de uso, igual que la cache LRU del
+ * driver. Una sentencia ya abierta en el registro o que sigue en esa lista
+ * cuenta como reutilizada; el resto, como preparada (la base de datos la
+ * analiza). La conexion fisica se saca con unwrap a oracle.jdbc.OracleConnection,
+ * que atraviesa UCP y TrazaJDBC; si no se puede (por ejemplo en H2) se usa la
+ * conexion recibida, y la cuenta es por prestamo.
+ * 
+ * @version 1.0
+ * @since 1.1
+ */
+public class RegistroSentencias implements AutoCloseable {
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(RegistroSentencias.class);
+
+	// Estadisticas globales de todos los registros: aciertos y fallos de la cache de sentencias
+	private static final AtomicLong REUTILIZADAS = new AtomicLong();
+	private static final AtomicLong PREPARADAS = new AtomicLong();
+
+	// Interfaz de la conexion fisica de Oracle (null si el driver no esta en el classpath)
+	private static final Class<? extends Connection> CONEXION_ORACLE = claseConexion("oracle.jdbc.OracleConnection");
+
+	// Conexion fisica -> SQL de las sentencias que tiene en su cache, de la menos a la mas usada recientemente. Las
+	// claves son debiles: al cerrar el pool la conexion fisica, su entrada desaparece.
+	private static final Map<Object, Map<String, Boolean>> CACHES = Collections
+			.synchronizedMap(new WeakHashMap<Object, Map<String, Boolean>>());
+
+	private final Connection con;
+	private final Map<SentenciaSQL, PreparedStatement> sentencias = new IdentityHashMap<SentenciaSQL, PreparedStatement>();
+	// Cache de la conexion fisica; solo la usa quien tiene prestada la conexion
+	private final Map<String, Boolean> cache;
+
+	/**
+	 * Crea un registro vacio sobre la conexion.
+	 * 
+	 * @param con conexion sobre la que se preparan las sentencias
+	 */
+	public RegistroSentencias(Connection con) {
+		this.con = con;
+		this.cache = cacheDe(con);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Connection> claseConexion(String nombre) {
+		try {
+			return (Class<? extends Connection>) Class.forName(nombre);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static Map<String, Boolean> cacheDe(Connection con) {
+		Object fisica = con;
+		try {
+			if (CONEXION_ORACLE != null && con.isWrapperFor(CONEXION_ORACLE)) {
+				fisica = con.unwrap(CONEXION_ORACLE);
+			}
+		} catch (SQLException e) {
+			LOGGER.debug("No se puede obtener la conexion fisica: " + e.getMessage());
+		}
+		synchronized (CACHES) {
+			Map<String, Boolean> cache = CACHES.get(fisica);
+			if (cache == null) {
+				cache = new LinkedHashMap<String, Boolean>(PoolDeConexiones.MAX_SENTENCIAS * 2, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, Boolean> mayor) {
+						return size() > PoolDeConexiones.MAX_SENTENCIAS;
+					}
+				};
+				CACHES.put(fisica, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Obtiene la sentencia preparada, preparandola solo la primera vez. Los
+	 * parametros de una sentencia reutilizada se limpian antes de devolverla.
+	 * 
+	 * @param sentencia sentencia declarada
+	 * @return sentencia preparada lista para asignar parametros
+	 * @throws SQLException si hay un error con la base de datos
+	 */
+	public PreparedStatement get(SentenciaSQL sentencia) throws SQLException {
+		PreparedStatement st = sentencias.get(sentencia);
+		if (st != null) {
+			REUTILIZADAS.incrementAndGet();
+			st.clearParameters();
+			return st;
+		}
+
+		String sql = sentencia.getSql();
+		// Si la conexion fisica ya la tiene en cache el driver no la vuelve a analizar
+		if (cache.put(sql, Boolean.TRUE) != null) {
+			REUTILIZADAS.incrementAndGet();
+		} else {
+			PREPARADAS.incrementAndGet();
+		}
+		st = sql.startsWith("{") ? con.prepareCall(sql) : con.prepareStatement(sql);
+		st.setPoolable(true);
+		sentencias.put(sentencia, st);
+		return st;
+	}
+
+	/**
+	 * Cierra todas las sentencias preparadas por el registro. La conexion no se
+	 * cierra.
+	 * 
+	 * @throws SQLException si falla el cierre de alguna sentencia
+	 */
+	@Override
+	public void close() throws SQLException {
+		SQLException error = null;
+		for (Map.Entry<SentenciaSQL, PreparedStatement> entrada : sentencias.entrySet()) {
+			try {
+				entrada.getValue().close();
+			} catch (SQLException e) {
+				LOGGER.debug("Error cerrando la sentencia {}", entrada.getKey().name());
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+		sentencias.clear();
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Aciertos: sentencias servidas sin volver a analizarlas, porque seguian
+	 * abiertas en el registro o en la cache de la conexion fisica.
+	 * 
+	 * @return sentencias reutilizadas
+	 */
+	public static long getReutilizadas() {
+		return REUTILIZADAS.get();
+	}
+
+	/**
+	 * Fallos: sentencias que no estaban en la cache de la conexion fisica y la
+	 * base de datos ha tenido que analizar.
+	 * 
+	 * @return sentencias preparadas
+	 */
+	public static long getPreparadas() {
+		return PREPARADAS.get();
+	}
+
+	/**
+	 * Pone a cero las estadisticas.
+	 */
+	public static void reiniciarEstadisticas() {
+		REUTILIZADAS.set(0);
+		PREPARADAS.set(0);
+	}
+}
@@ -0,0 +1,25 @@
+package lsi.ubu.util;
+
+/**
+ * Sentencia SQL con nombre, declarada de antemano para que RegistroSentencias pueda reutilizarla.
+ * Lo normal es implementarla con un enum que agrupe las sentencias de un servicio.
+ * 
+ * @version 1.0
+ * @since 1.1
+ */
+public interface SentenciaSQL {
+
+	/**
+	 * Nombre de la sentencia, para trazas y estadisticas.
+	 * 
+	 * @return nombre
+	 */
+	String name();
+
+	/**
+	 * Texto SQL. Si empieza por "{" se prepara como llamada a procedimiento.
+	 * 
+	 * @return texto SQL con parametros posicionales
+	 */
+	String getSql();
+}
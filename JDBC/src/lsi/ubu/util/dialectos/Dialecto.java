@@ -0,0 +1,79 @@
+package lsi.ubu.util.dialectos;
+
+import lsi.ubu.util.exceptions.SGBDErrorUtil;
+
+/**
+ * SQL que cambia de un SGBD a otro. Lo comun (consultas, NVL, ROWNUM) se sigue
+ * escribiendo en las sentencias; aqui solo va lo que no tiene una forma
+ * portable: secuencias, generacion de filas, estadisticas y traduccion de errores.
+ * Los dialectos no guardan estado y se comparten (ver {@link Dialectos}).
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public interface Dialecto {
+
+	/**
+	 * Nombre del producto, el que devuelve
+	 * DatabaseMetaData.getDatabaseProductName.
+	 *
+	 * @return nombre del SGBD
+	 */
+	String getNombre();
+
+	/**
+	 * Expresion que obtiene el siguiente valor de una secuencia.
+	 *
+	 * @param secuencia nombre de la secuencia
+	 * @return expresion SQL
+	 */
+	String siguienteValor(String secuencia);
+
+	/**
+	 * Origen de filas para un FROM: tantas filas como indique su unico
+	 * parametro, con una columna n numerada desde 1.
+	 *
+	 * @return subconsulta SQL, con un parametro
+	 */
+	String generadorFilas();
+
+	/**
+	 * Consulta que reserva varios valores de una secuencia en un solo viaje:
+	 * devuelve una fila por valor y su unico parametro es el numero de valores.
+	 *
+	 * @param secuencia nombre de la secuencia
+	 * @return consulta SQL, con un parametro
+	 */
+	String bloqueSecuencia(String secuencia);
+
+	/**
+	 * Sentencia que vuelve a empezar una secuencia desde 1.
+	 *
+	 * @param secuencia nombre de la secuencia
+	 * @return sentencia SQL, sin parametros
+	 */
+	String reiniciarSecuencia(String secuencia);
+
+	/**
+	 * Sentencia que actualiza las estadisticas del optimizador de una tabla.
+	 *
+	 * @param tabla tabla
+	 * @return sentencia SQL, sin parametros
+	 */
+	String actualizarEstadisticas(String tabla);
+
+	/**
+	 * Indica si la base de datos tiene los procedimientos PL/SQL de
+	 * alquiler_coches.sql (BackendAlquilerPLSQL).
+	 *
+	 * @return true si se pueden llamar
+	 */
+	boolean isPLSQL();
+
+	/**
+	 * Traductor de los codigos de error del SGBD.
+	 *
+	 * @return traductor compartido
+	 */
+	SGBDErrorUtil getErrorUtil();
+}
@@ -0,0 +1,58 @@
+package lsi.ubu.util.dialectos;
+
+import lsi.ubu.util.exceptions.SGBDErrorUtil;
+import lsi.ubu.util.exceptions.h2.H2SGBDErrorUtil;
+
+/**
+ * Dialecto de H2 en modo Oracle, el de sql/alquiler_coches_h2.sql. Permite
+ * ejecutar el servicio, los benchmarks y las pruebas de carga dentro de la
+ * maquina virtual, sin servidor Oracle. No tiene PL/SQL, asi que se usa con el
+ * backend JDBC.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class DialectoH2 implements Dialecto {
+
+	private final SGBDErrorUtil errores = new H2SGBDErrorUtil();
+
+	@Override
+	public String getNombre() {
+		return "H2";
+	}
+
+	@Override
+	public String siguienteValor(String secuencia) {
+		return "NEXT VALUE FOR " + secuencia;
+	}
+
+	@Override
+	public String generadorFilas() {
+		return "(SELECT X AS n FROM SYSTEM_RANGE(1, ?))";
+	}
+
+	@Override
+	public String bloqueSecuencia(String secuencia) {
+		return "SELECT " + siguienteValor(secuencia) + " FROM SYSTEM_RANGE(1, ?)";
+	}
+
+	@Override
+	public String reiniciarSecuencia(String secuencia) {
+		return "ALTER SEQUENCE " + secuencia + " RESTART WITH 1";
+	}
+
+	@Override
+	public String actualizarEstadisticas(String tabla) {
+		return "ANALYZE TABLE " + tabla;
+	}
+
+	@Override
+	public boolean isPLSQL() {
+		return false;
+	}
+
+	@Override
+	public SGBDErrorUtil getErrorUtil() {
+		return errores;
+	}
+}
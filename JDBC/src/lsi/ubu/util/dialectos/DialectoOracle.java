@@ -0,0 +1,57 @@
+package lsi.ubu.util.dialectos;
+
+import lsi.ubu.util.exceptions.SGBDErrorUtil;
+import lsi.ubu.util.exceptions.oracle.OracleSGBDErrorUtil;
+
+/**
+ * Dialecto de Oracle, el de sql/alquiler_coches.sql.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class DialectoOracle implements Dialecto {
+
+	private final SGBDErrorUtil errores = new OracleSGBDErrorUtil();
+
+	@Override
+	public String getNombre() {
+		return "Oracle";
+	}
+
+	@Override
+	public String siguienteValor(String secuencia) {
+		return secuencia + ".nextval";
+	}
+
+	// Filas generadas con CONNECT BY sobre dual
+	@Override
+	public String generadorFilas() {
+		return "(SELECT level AS n FROM dual CONNECT BY level <= ?)";
+	}
+
+	@Override
+	public String bloqueSecuencia(String secuencia) {
+		return "SELECT " + siguienteValor(secuencia) + " FROM dual CONNECT BY level <= ?";
+	}
+
+	// Oracle no puede reiniciar una secuencia con ALTER: lo hace el procedimiento reset_seq del script
+	@Override
+	public String reiniciarSecuencia(String secuencia) {
+		return "BEGIN reset_seq('" + secuencia + "'); END;";
+	}
+
+	@Override
+	public String actualizarEstadisticas(String tabla) {
+		return "BEGIN dbms_stats.gather_table_stats(user, '" + tabla.toUpperCase() + "', cascade => true); END;";
+	}
+
+	@Override
+	public boolean isPLSQL() {
+		return true;
+	}
+
+	@Override
+	public SGBDErrorUtil getErrorUtil() {
+		return errores;
+	}
+}
@@ -0,0 +1,112 @@
+package lsi.ubu.util.dialectos;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import lsi.ubu.util.exceptions.RegistroSGBDErrorUtil;
+
+/**
+ * Registro de dialectos por nombre de producto y dialecto en uso. El dialecto
+ * en uso se elige con la propiedad de sistema alquiler.sgbd (Oracle por
+ * defecto, la misma que la del traductor de errores), con {@link #usar(Dialecto)} o detectandolo de una conexion; al
+ * cambiarlo se cambia tambien el traductor de errores de
+ * RegistroSGBDErrorUtil.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Dialectos {
+
+	public static final String PROPIEDAD = RegistroSGBDErrorUtil.PROPIEDAD;
+
+	public static final Dialecto ORACLE = new DialectoOracle();
+	public static final Dialecto H2 = new DialectoH2();
+
+	private static final ConcurrentMap<String, Dialecto> DIALECTOS = new ConcurrentHashMap<String, Dialecto>();
+
+	static {
+		registrar(ORACLE);
+		registrar(H2);
+	}
+
+	private static volatile Dialecto actual;
+
+	private Dialectos() {
+	}
+
+	/**
+	 * Registra (o sustituye) un dialecto y el traductor de sus errores.
+	 *
+	 * @param dialecto dialecto
+	 */
+	public static void registrar(Dialecto dialecto) {
+		DIALECTOS.put(clave(dialecto.getNombre()), dialecto);
+		RegistroSGBDErrorUtil.registrar(dialecto.getNombre(), dialecto.getErrorUtil());
+	}
+
+	/**
+	 * Dialecto registrado para un SGBD.
+	 *
+	 * @param producto nombre del producto
+	 * @return dialecto, null si no hay ninguno registrado
+	 */
+	public static Dialecto get(String producto) {
+		return DIALECTOS.get(clave(producto));
+	}
+
+	/**
+	 * Cambia el dialecto en uso y el traductor de errores por defecto.
+	 *
+	 * @param dialecto dialecto
+	 */
+	public static void usar(Dialecto dialecto) {
+		registrar(dialecto);
+		RegistroSGBDErrorUtil.usar(dialecto.getNombre());
+		actual = dialecto;
+	}
+
+	/**
+	 * Usa el dialecto de la base de datos de la conexion.
+	 *
+	 * @param con conexion
+	 * @return dialecto en uso
+	 * @throws SQLException si no hay dialecto para ese SGBD o no se pueden leer
+	 *                      los metadatos
+	 */
+	public static Dialecto detectar(Connection con) throws SQLException {
+		String producto = con.getMetaData().getDatabaseProductName();
+		Dialecto dialecto = get(producto);
+		if (dialecto == null) {
+			throw new SQLException("No hay dialecto para " + producto);
+		}
+		usar(dialecto);
+		return dialecto;
+	}
+
+	/**
+	 * Dialecto en uso.
+	 *
+	 * @return dialecto
+	 * @throws IllegalArgumentException si la propiedad nombra un SGBD sin
+	 *                                  dialecto
+	 */
+	public static Dialecto getActual() {
+		Dialecto dialecto = actual;
+		if (dialecto == null) {
+			String producto = System.getProperty(PROPIEDAD, ORACLE.getNombre());
+			dialecto = get(producto);
+			if (dialecto == null) {
+				throw new IllegalArgumentException("No hay dialecto para " + producto);
+			}
+			usar(dialecto);
+		}
+		return dialecto;
+	}
+
+	private static String clave(String producto) {
+		return producto.trim().toUpperCase(Locale.ROOT);
+	}
+}
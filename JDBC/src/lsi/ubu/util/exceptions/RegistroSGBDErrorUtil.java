@@ -0,0 +1,98 @@
+package lsi.ubu.util.exceptions;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import lsi.ubu.util.exceptions.h2.H2SGBDErrorUtil;
+import lsi.ubu.util.exceptions.oracle.OracleSGBDErrorUtil;
+
+/**
+ * Registro de traductores de errores por SGBD. Los traductores no guardan
+ * estado, asi que se comparte una instancia de cada uno en lugar de crear uno
+ * en cada comprobacion.
+ * <p>
+ * Se registran por nombre de producto (el de
+ * DatabaseMetaData.getDatabaseProductName, sin distinguir mayusculas). El que
+ * se usa por defecto se elige con la propiedad de sistema alquiler.sgbd
+ * (Oracle si no se indica) o con usar; lsi.ubu.util.dialectos.Dialectos lo
+ * cambia junto con el dialecto.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class RegistroSGBDErrorUtil {
+
+	public static final String PROPIEDAD = "alquiler.sgbd";
+	public static final String ORACLE = "Oracle";
+	public static final String H2 = "H2";
+
+	private static final ConcurrentMap<String, SGBDErrorUtil> TRADUCTORES = new ConcurrentHashMap<String, SGBDErrorUtil>();
+
+	static {
+		registrar(ORACLE, new OracleSGBDErrorUtil());
+		registrar(H2, new H2SGBDErrorUtil());
+	}
+
+	private static volatile SGBDErrorUtil actual;
+
+	private RegistroSGBDErrorUtil() {
+	}
+
+	/**
+	 * Registra (o sustituye) el traductor de un SGBD.
+	 *
+	 * @param producto nombre del producto
+	 * @param util     traductor de sus errores
+	 */
+	public static void registrar(String producto, SGBDErrorUtil util) {
+		TRADUCTORES.put(clave(producto), util);
+	}
+
+	/**
+	 * Traductor registrado para un SGBD.
+	 *
+	 * @param producto nombre del producto
+	 * @return traductor, null si no hay ninguno registrado
+	 */
+	public static SGBDErrorUtil get(String producto) {
+		return TRADUCTORES.get(clave(producto));
+	}
+
+	/**
+	 * Cambia el traductor por defecto.
+	 *
+	 * @param producto nombre del producto, ya registrado
+	 * @throws IllegalArgumentException si no hay traductor para ese producto
+	 */
+	public static void usar(String producto) {
+		actual = getRegistrado(producto);
+	}
+
+	/**
+	 * Traductor por defecto: el indicado con usar o, si no, el de la propiedad
+	 * alquiler.sgbd.
+	 *
+	 * @return traductor compartido
+	 */
+	public static SGBDErrorUtil getInstance() {
+		SGBDErrorUtil util = actual;
+		if (util == null) {
+			util = getRegistrado(System.getProperty(PROPIEDAD, ORACLE));
+			actual = util;
+		}
+		return util;
+	}
+
+	private static SGBDErrorUtil getRegistrado(String producto) {
+		SGBDErrorUtil util = get(producto);
+		if (util == null) {
+			throw new IllegalArgumentException("No hay traductor de errores registrado para " + producto);
+		}
+		return util;
+	}
+
+	private static String clave(String producto) {
+		return producto.trim().toUpperCase(Locale.ROOT);
+	}
+}
@@ -13,6 +13,7 @@ public enum SGBDError {
 	FK_VIOLATED_DELETE, // Violaci�n de clave for�nea por hijo existente => con delete/udate
 	PK_VIOLATED, // Violaci�n de clave primaria
 	NOT_EXISTS_SEQUENCE, // No existe la secuencia utilizada
+	NOT_EXISTS_TABLE, // No existe la tabla o vista utilizada
 	// A�adir antes de esta l�nea si fuera necesario
 
 	UNKNOWN; // No determinado.
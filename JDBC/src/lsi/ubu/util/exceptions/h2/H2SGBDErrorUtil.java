@@ -0,0 +1,44 @@
+package lsi.ubu.util.exceptions.h2;
+
+import java.sql.SQLException;
+
+import lsi.ubu.util.exceptions.SGBDError;
+import lsi.ubu.util.exceptions.SGBDErrorUtil;
+
+/**
+ * Errores codificados para H2. Referencia: org.h2.api.ErrorCode.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class H2SGBDErrorUtil implements SGBDErrorUtil {
+
+	// Codigos de error en H2
+	private static final int PK_VIOLATED = 23505; // DUPLICATE_KEY_1
+	private static final int FK_VIOLATED = 23506; // REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1
+	private static final int FK_VIOLATED_DELETE = 23503; // REFERENTIAL_INTEGRITY_VIOLATED_CHILD_EXISTS_1
+	private static final int NOT_EXISTS_SEQUENCE = 90036; // SEQUENCE_NOT_FOUND_1
+	private static final int NOT_EXISTS_TABLE = 42102; // TABLE_OR_VIEW_NOT_FOUND_1
+
+	@Override
+	public SGBDError translate(int errorSGBD) {
+		switch (errorSGBD) {
+		case FK_VIOLATED:
+			return SGBDError.FK_VIOLATED;
+		case PK_VIOLATED:
+			return SGBDError.PK_VIOLATED;
+		case FK_VIOLATED_DELETE:
+			return SGBDError.FK_VIOLATED_DELETE;
+		case NOT_EXISTS_SEQUENCE:
+			return SGBDError.NOT_EXISTS_SEQUENCE;
+		case NOT_EXISTS_TABLE:
+			return SGBDError.NOT_EXISTS_TABLE;
+		}
+		return SGBDError.UNKNOWN;
+	}
+
+	@Override
+	public boolean checkExceptionToCode(SQLException ex, SGBDError error) {
+		return translate(ex.getErrorCode()) == error;
+	}
+}
@@ -20,6 +20,7 @@ public class OracleSGBDErrorUtil implements SGBDErrorUtil {
 	private static final int PK_VIOLATED = 1;
 	private static final int FK_VIOLATED = 2291; //ORA-02291: integrity constraint (la que sea) violated - parent key not found
 	private static final int NOT_EXISTS_SEQUENCE = 2289;
+	private static final int NOT_EXISTS_TABLE = 942; //ORA-00942: table or view does not exist
 	private static final int FK_VIOLATED_DELETE = 2292; //ORA-02292: integrity constraint (la que sea) violated - child record found
 	// Aadir segn sea necesario, por parte del alumno...
 
@@ -49,6 +50,8 @@ public class OracleSGBDErrorUtil implements SGBDErrorUtil {
 			return SGBDError.FK_VIOLATED_DELETE;
 		case NOT_EXISTS_SEQUENCE:
 			return SGBDError.NOT_EXISTS_SEQUENCE;
+		case NOT_EXISTS_TABLE:
+			return SGBDError.NOT_EXISTS_TABLE;
 		}
 		return SGBDError.UNKNOWN;
 	}
@@ -64,6 +67,6 @@ public class OracleSGBDErrorUtil implements SGBDErrorUtil {
 	 */
 	@Override
 	public boolean checkExceptionToCode(SQLException ex, SGBDError error) {
-		return new OracleSGBDErrorUtil().translate(ex.getErrorCode()) == error;
+		return translate(ex.getErrorCode()) == error;
 	}
 }
\ No newline at end of file
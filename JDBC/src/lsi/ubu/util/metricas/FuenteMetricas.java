@@ -0,0 +1,18 @@
+package lsi.ubu.util.metricas;
+
+/**
+ * Algo que publica metricas en el formato de texto de Prometheus (ver
+ * {@link ServidorMetricas}).
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public interface FuenteMetricas {
+
+	/**
+	 * Escribe sus metricas, con sus lineas # TYPE.
+	 *
+	 * @param salida donde escribir
+	 */
+	void exportar(StringBuilder salida);
+}
@@ -0,0 +1,175 @@
+package lsi.ubu.util.metricas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias con cubetas log-lineales, al estilo de HdrHistogram:
+ * los valores menores de 128 se guardan exactos y el resto con 6 bits de
+ * mantisa (error relativo menor del 1,6%). Registrar un valor es un par de
+ * operaciones atomicas, sin reservar memoria ni bloquear, por lo que puede
+ * usarse desde muchos hilos en el camino critico.
+ * <p>
+ * Los valores se registran en nanosegundos y los percentiles se devuelven en
+ * la unidad que se pida.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class Histograma {
+
+	private static final int BITS_MANTISA = 6;
+	private static final int SUBCUBETAS = 1 << BITS_MANTISA; // 64
+	private static final int LINEALES = 2 * SUBCUBETAS; // 0..127 exactos
+	private static final int CUBETAS = LINEALES + (Long.SIZE - 1 - BITS_MANTISA) * SUBCUBETAS;
+
+	// Percentiles del formato de texto de Prometheus (ver exportar)
+	private static final double[] PERCENTILES_EXPORTADOS = { 50, 99, 99.9 };
+	private static final String[] CUANTILES_EXPORTADOS = { "0.5", "0.99", "0.999" };
+
+	private final AtomicLongArray cuentas = new AtomicLongArray(CUBETAS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong suma = new AtomicLong();
+	private final AtomicLong maximo = new AtomicLong();
+
+	/**
+	 * Registra un valor. Los negativos se cuentan como cero.
+	 *
+	 * @param nanos valor en nanosegundos
+	 */
+	public void registrar(long nanos) {
+		long valor = Math.max(0, nanos);
+		cuentas.incrementAndGet(indice(valor));
+		total.incrementAndGet();
+		suma.addAndGet(valor);
+
+		long max = maximo.get();
+		while (valor > max && !maximo.compareAndSet(max, valor)) {
+			max = maximo.get();
+		}
+	}
+
+	/**
+	 * Registra el tiempo transcurrido desde el instante indicado.
+	 *
+	 * @param inicioNanos valor de System.nanoTime() al empezar
+	 */
+	public void registrarDesde(long inicioNanos) {
+		registrar(System.nanoTime() - inicioNanos);
+	}
+
+	/**
+	 * Valor por debajo del cual queda el porcentaje indicado de las muestras.
+	 *
+	 * @param percentil entre 0 y 100 (por ejemplo 99.9)
+	 * @param unidad    unidad del resultado
+	 * @return valor del percentil, 0 si no hay muestras
+	 */
+	public double getPercentil(double percentil, TimeUnit unidad) {
+		long n = total.get();
+		if (n == 0) {
+			return 0;
+		}
+		long objetivo = Math.max(1, (long) Math.ceil(n * percentil / 100.0));
+		long acumulado = 0;
+		for (int i = 0; i < CUBETAS; i++) {
+			acumulado += cuentas.get(i);
+			if (acumulado >= objetivo) {
+				return enUnidad(Math.min(maximoDeCubeta(i), maximo.get()), unidad);
+			}
+		}
+		return enUnidad(maximo.get(), unidad);
+	}
+
+	public long getTotal() {
+		return total.get();
+	}
+
+	public double getMedia(TimeUnit unidad) {
+		long n = total.get();
+		return n == 0 ? 0 : enUnidad(suma.get(), unidad) / n;
+	}
+
+	public double getMaximo(TimeUnit unidad) {
+		return enUnidad(maximo.get(), unidad);
+	}
+
+	/**
+	 * Pone el histograma a cero. Las muestras que se registren a la vez pueden
+	 * quedar contadas solo en parte.
+	 */
+	public void reiniciar() {
+		for (int i = 0; i < CUBETAS; i++) {
+			cuentas.set(i, 0);
+		}
+		total.set(0);
+		suma.set(0);
+		maximo.set(0);
+	}
+
+	/**
+	 * Resumen en una linea con numero de muestras, media y percentiles en
+	 * microsegundos.
+	 *
+	 * @return resumen
+	 */
+	public String resumen() {
+		return String.format("n=%d media=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus", getTotal(),
+				getMedia(TimeUnit.MICROSECONDS), getPercentil(50, TimeUnit.MICROSECONDS),
+				getPercentil(99, TimeUnit.MICROSECONDS), getPercentil(99.9, TimeUnit.MICROSECONDS),
+				getMaximo(TimeUnit.MICROSECONDS));
+	}
+
+	/**
+	 * Escribe el histograma en el formato de texto de Prometheus, como un
+	 * resumen en segundos con los percentiles 50, 99 y 99,9, la suma y el
+	 * numero de muestras. La linea # TYPE la escribe quien lo llama.
+	 *
+	 * @param salida    donde escribir
+	 * @param nombre    nombre de la metrica
+	 * @param etiquetas etiquetas sin llaves (por ejemplo etapa="commit"), o
+	 *                  cadena vacia
+	 */
+	public void exportar(StringBuilder salida, String nombre, String etiquetas) {
+		String previas = etiquetas.isEmpty() ? "" : etiquetas + ",";
+		for (int i = 0; i < PERCENTILES_EXPORTADOS.length; i++) {
+			salida.append(nombre).append('{').append(previas).append("quantile=\"").append(CUANTILES_EXPORTADOS[i])
+					.append("\"} ").append(getPercentil(PERCENTILES_EXPORTADOS[i], TimeUnit.SECONDS)).append('\n');
+		}
+		String llaves = etiquetas.isEmpty() ? "" : "{" + etiquetas + "}";
+		salida.append(nombre).append("_sum").append(llaves).append(' ').append(enUnidad(suma.get(), TimeUnit.SECONDS))
+				.append('\n');
+		salida.append(nombre).append("_count").append(llaves).append(' ').append(getTotal()).append('\n');
+	}
+
+	@Override
+	public String toString() {
+		return "Histograma[" + resumen() + "]";
+	}
+
+	static int indice(long valor) {
+		if (valor < LINEALES) {
+			return (int) valor;
+		}
+		int exponente = Long.SIZE - 1 - Long.numberOfLeadingZeros(valor) - BITS_MANTISA; // >= 1
+		int mantisa = (int) (valor >>> exponente); // 64..127
+		return LINEALES + (exponente - 1) * SUBCUBETAS + (mantisa - SUBCUBETAS);
+	}
+
+	// Mayor valor que cae en la cubeta
+	static long maximoDeCubeta(int indice) {
+		if (indice < LINEALES) {
+			return indice;
+		}
+		int exponente = (indice - LINEALES) / SUBCUBETAS + 1;
+		long mantisa = (indice - LINEALES) % SUBCUBETAS + SUBCUBETAS;
+		long desde = mantisa << exponente;
+		long ancho = 1L << exponente;
+		return desde + ancho - 1 < 0 ? Long.MAX_VALUE : desde + ancho - 1;
+	}
+
+	private static double enUnidad(long nanos, TimeUnit unidad) {
+		return (double) nanos / TimeUnit.NANOSECONDS.convert(1, unidad);
+	}
+}
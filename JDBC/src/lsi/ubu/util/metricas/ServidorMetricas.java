@@ -0,0 +1,86 @@
+package lsi.ubu.util.metricas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor HTTP minimo (el incluido en el JDK) que publica en /metricas las
+ * metricas de varias fuentes en el formato de texto de Prometheus, para que
+ * un recolector las lea cuando quiera. Las metricas se calculan en cada
+ * peticion, no hay nada que mantener entre ellas.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class ServidorMetricas {
+
+	public static final String RUTA = "/metricas";
+
+	private static final String TIPO_CONTENIDO = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer servidor;
+
+	private ServidorMetricas(HttpServer servidor) {
+		this.servidor = servidor;
+	}
+
+	/**
+	 * Arranca el servidor en un hilo propio.
+	 *
+	 * @param puerto  puerto en el que escuchar (0 para uno libre)
+	 * @param fuentes fuentes de metricas, en el orden en que se escriben
+	 * @return servidor arrancado
+	 * @throws IOException si no se puede abrir el puerto
+	 */
+	public static ServidorMetricas arrancar(int puerto, FuenteMetricas... fuentes) throws IOException {
+		final List<FuenteMetricas> lista = Arrays.asList(fuentes.clone());
+		HttpServer servidor = HttpServer.create(new InetSocketAddress(puerto), 0);
+		servidor.createContext(RUTA, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange intercambio) throws IOException {
+				try {
+					if (!"GET".equals(intercambio.getRequestMethod())) {
+						intercambio.sendResponseHeaders(405, -1);
+						return;
+					}
+					StringBuilder salida = new StringBuilder();
+					for (FuenteMetricas fuente : lista) {
+						fuente.exportar(salida);
+					}
+					byte[] cuerpo = salida.toString().getBytes(StandardCharsets.UTF_8);
+					intercambio.getResponseHeaders().set("Content-Type", TIPO_CONTENIDO);
+					intercambio.sendResponseHeaders(200, cuerpo.length);
+					OutputStream os = intercambio.getResponseBody();
+					try {
+						os.write(cuerpo);
+					} finally {
+						os.close();
+					}
+				} finally {
+					intercambio.close();
+				}
+			}
+		});
+		servidor.start();
+		return new ServidorMetricas(servidor);
+	}
+
+	public int getPuerto() {
+		return servidor.getAddress().getPort();
+	}
+
+	/**
+	 * Para el servidor sin esperar a las peticiones en curso.
+	 */
+	public void parar() {
+		servidor.stop(0);
+	}
+}
@@ -0,0 +1,134 @@
+package lsi.ubu.util.traza;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manejador del proxy de una conexion (ver {@link TrazaJDBC}). Lleva las
+ * sentencias abiertas y las cuentas de la transaccion en curso. Como la
+ * conexion, lo usa un solo hilo.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+final class ConexionTrazada implements InvocationHandler {
+
+	private final Connection destino;
+	private Connection proxy;
+
+	private final Set<SentenciaTrazada> abiertas = new LinkedHashSet<SentenciaTrazada>();
+
+	// Transaccion en curso
+	private int sentencias;
+	private int viajes;
+	private long filas;
+	private long nanos;
+
+	ConexionTrazada(Connection destino) {
+		this.destino = destino;
+	}
+
+	void setProxy(Connection proxy) {
+		this.proxy = proxy;
+	}
+
+	Connection getProxy() {
+		return proxy;
+	}
+
+	@Override
+	public Object invoke(Object yo, Method metodo, Object[] args) throws Throwable {
+		String nombre = metodo.getName();
+		if ("equals".equals(nombre) && args != null && args.length == 1) {
+			return yo == args[0];
+		}
+		if ("hashCode".equals(nombre) && args == null) {
+			return System.identityHashCode(yo);
+		}
+		if ("close".equals(nombre)) {
+			avisarFugas();
+		}
+
+		Object resultado;
+		long inicio = System.nanoTime();
+		try {
+			resultado = metodo.invoke(destino, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+
+		if (("commit".equals(nombre) || "rollback".equals(nombre)) && (args == null || args.length == 0)) {
+			viaje();
+			nanos += System.nanoTime() - inicio;
+			terminarTransaccion(nombre);
+		} else if (resultado instanceof CallableStatement) {
+			return sentencia(resultado, CallableStatement.class, args);
+		} else if (resultado instanceof PreparedStatement) {
+			return sentencia(resultado, PreparedStatement.class, args);
+		} else if (resultado instanceof Statement) {
+			return sentencia(resultado, Statement.class, args);
+		}
+		return resultado;
+	}
+
+	private Object sentencia(Object destino, Class<?> interfaz, Object[] args) {
+		String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+		SentenciaTrazada manejador = new SentenciaTrazada(this, (Statement) destino, sql);
+		Object proxy = Proxy.newProxyInstance(TrazaJDBC.class.getClassLoader(), new Class<?>[] { interfaz },
+				manejador);
+		manejador.setProxy(proxy);
+		abiertas.add(manejador);
+		return proxy;
+	}
+
+	// Llamadas desde las sentencias y ResultSet
+
+	void cerrada(SentenciaTrazada sentencia) {
+		abiertas.remove(sentencia);
+	}
+
+	void ejecutada(long nanos) {
+		sentencias++;
+		viaje();
+		this.nanos += nanos;
+	}
+
+	void viaje() {
+		viajes++;
+		TrazaJDBC.VIAJES.incrementAndGet();
+	}
+
+	void filaLeida() {
+		filas++;
+	}
+
+	private void terminarTransaccion(String fin) {
+		TrazaJDBC.TRANSACCIONES.incrementAndGet();
+		if (TrazaJDBC.LOGGER.isDebugEnabled()) {
+			TrazaJDBC.LOGGER.debug(String.format("Transaccion (%s): %d sentencias, %d viajes, %d filas, %.1fms", fin,
+					sentencias, viajes, filas, nanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+		}
+		sentencias = 0;
+		viajes = 0;
+		filas = 0;
+		nanos = 0;
+	}
+
+	// Lo que sigue abierto al cerrar la conexion es una fuga
+	private void avisarFugas() {
+		for (SentenciaTrazada sentencia : new ArrayList<SentenciaTrazada>(abiertas)) {
+			sentencia.avisarFuga();
+		}
+		abiertas.clear();
+	}
+}
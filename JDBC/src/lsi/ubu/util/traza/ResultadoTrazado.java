@@ -0,0 +1,75 @@
+package lsi.ubu.util.traza;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Manejador del proxy de un ResultSet (ver {@link TrazaJDBC}): cuenta las
+ * filas leidas y estima los viajes que cuestan segun el tamano de fetch.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+final class ResultadoTrazado implements InvocationHandler {
+
+	private final SentenciaTrazada sentencia;
+	private final ResultSet destino;
+	private final int tamanoFetch;
+	private long filas;
+
+	ResultadoTrazado(SentenciaTrazada sentencia, ResultSet destino) {
+		this.sentencia = sentencia;
+		this.destino = destino;
+		this.tamanoFetch = tamanoFetch(destino);
+	}
+
+	long getFilas() {
+		return filas;
+	}
+
+	@Override
+	public Object invoke(Object yo, Method metodo, Object[] args) throws Throwable {
+		String nombre = metodo.getName();
+		if ("equals".equals(nombre) && args != null && args.length == 1) {
+			return yo == args[0];
+		}
+		if ("hashCode".equals(nombre) && args == null) {
+			return System.identityHashCode(yo);
+		}
+		if ("getStatement".equals(nombre)) {
+			return sentencia.getProxy();
+		}
+
+		if ("next".equals(nombre) && filas > 0 && filas % tamanoFetch == 0) {
+			// La primera tanda llega con la ejecucion; cada tanda siguiente es otro viaje
+			sentencia.getConexion().viaje();
+		}
+		Object resultado;
+		try {
+			resultado = metodo.invoke(destino, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+
+		if ("next".equals(nombre) && Boolean.TRUE.equals(resultado)) {
+			filas++;
+			sentencia.getConexion().filaLeida();
+		} else if ("close".equals(nombre)) {
+			sentencia.cerrado(this);
+		}
+		return resultado;
+	}
+
+	// 0 es el valor por defecto del driver, que no se conoce: entonces no se estiman viajes de mas
+	private static int tamanoFetch(ResultSet rs) {
+		try {
+			int tamano = rs.getFetchSize();
+			return tamano > 0 ? tamano : Integer.MAX_VALUE;
+		} catch (SQLException e) {
+			return Integer.MAX_VALUE;
+		}
+	}
+}
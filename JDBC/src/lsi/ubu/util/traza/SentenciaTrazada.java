@@ -0,0 +1,144 @@
+package lsi.ubu.util.traza;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manejador del proxy de una sentencia (ver {@link TrazaJDBC}): mide cada
+ * ejecucion y lleva los parametros asignados y los ResultSet abiertos.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+final class SentenciaTrazada implements InvocationHandler {
+
+	private final ConexionTrazada conexion;
+	private final Statement destino;
+	private final String sql;
+	// Donde se creo, para el aviso de fuga
+	private final Throwable origen;
+	private Object proxy;
+
+	private final Set<ResultadoTrazado> abiertos = new LinkedHashSet<ResultadoTrazado>();
+
+	// Mayor indice de parametro asignado (o numero de asignaciones por nombre) y filas en lote
+	private int parametros;
+	private int lote;
+
+	SentenciaTrazada(ConexionTrazada conexion, Statement destino, String sql) {
+		this.conexion = conexion;
+		this.destino = destino;
+		this.sql = sql;
+		this.origen = TrazaJDBC.ORIGEN ? new Throwable("Sentencia creada aqui") : null;
+	}
+
+	void setProxy(Object proxy) {
+		this.proxy = proxy;
+	}
+
+	Object getProxy() {
+		return proxy;
+	}
+
+	ConexionTrazada getConexion() {
+		return conexion;
+	}
+
+	@Override
+	public Object invoke(Object yo, Method metodo, Object[] args) throws Throwable {
+		String nombre = metodo.getName();
+		if ("equals".equals(nombre) && args != null && args.length == 1) {
+			return yo == args[0];
+		}
+		if ("hashCode".equals(nombre) && args == null) {
+			return System.identityHashCode(yo);
+		}
+		if ("getConnection".equals(nombre)) {
+			return conexion.getProxy();
+		}
+
+		boolean ejecucion = nombre.startsWith("execute");
+		if (ejecucion) {
+			// Ejecutar de nuevo cierra los ResultSet anteriores
+			abiertos.clear();
+		}
+
+		Object resultado;
+		long inicio = System.nanoTime();
+		try {
+			resultado = metodo.invoke(destino, args);
+		} catch (InvocationTargetException e) {
+			if (ejecucion) {
+				ejecutada(nombre, args, System.nanoTime() - inicio);
+			}
+			throw e.getCause();
+		}
+
+		if (ejecucion) {
+			ejecutada(nombre, args, System.nanoTime() - inicio);
+		} else if (nombre.startsWith("set") && args != null && args.length >= 2
+				|| "registerOutParameter".equals(nombre)) {
+			parametros = args[0] instanceof Integer ? Math.max(parametros, (Integer) args[0]) : parametros + 1;
+		} else if ("clearParameters".equals(nombre)) {
+			parametros = 0;
+		} else if ("addBatch".equals(nombre)) {
+			lote++;
+		} else if ("clearBatch".equals(nombre)) {
+			lote = 0;
+		} else if ("close".equals(nombre)) {
+			abiertos.clear();
+			conexion.cerrada(this);
+		}
+
+		if (resultado instanceof ResultSet) {
+			return resultado((ResultSet) resultado);
+		}
+		return resultado;
+	}
+
+	private void ejecutada(String metodo, Object[] args, long nanos) {
+		conexion.ejecutada(nanos);
+		String texto = sql != null ? sql : args != null && args.length > 0 ? String.valueOf(args[0]) : "?";
+		String detalle = texto + " [" + parametros + " parametros" + (lote > 0 ? ", lote de " + lote : "") + "] "
+				+ String.format("%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+		if ("executeBatch".equals(metodo) || "executeLargeBatch".equals(metodo)) {
+			lote = 0;
+		}
+		if (nanos > TrazaJDBC.UMBRAL_NANOS) {
+			TrazaJDBC.SENTENCIAS_LENTAS.incrementAndGet();
+			TrazaJDBC.LOGGER.warn("Sentencia lenta: " + detalle);
+		} else if (TrazaJDBC.LOGGER.isDebugEnabled()) {
+			TrazaJDBC.LOGGER.debug(metodo + ": " + detalle);
+		}
+	}
+
+	private ResultSet resultado(ResultSet destino) {
+		ResultadoTrazado manejador = new ResultadoTrazado(this, destino);
+		abiertos.add(manejador);
+		return (ResultSet) Proxy.newProxyInstance(TrazaJDBC.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				manejador);
+	}
+
+	void cerrado(ResultadoTrazado resultado) {
+		abiertos.remove(resultado);
+	}
+
+	// Sentencia sin cerrar al cerrar la conexion, con sus ResultSet
+	void avisarFuga() {
+		TrazaJDBC.FUGAS_SENTENCIAS.incrementAndGet();
+		TrazaJDBC.LOGGER.warn("Sentencia sin cerrar: " + sql, origen);
+		for (ResultadoTrazado resultado : new ArrayList<ResultadoTrazado>(abiertos)) {
+			TrazaJDBC.FUGAS_RESULTADOS.incrementAndGet();
+			TrazaJDBC.LOGGER.warn("ResultSet sin cerrar de " + sql + " (" + resultado.getFilas() + " filas leidas)");
+		}
+		abiertos.clear();
+	}
+}
@@ -0,0 +1,106 @@
+package lsi.ubu.util.traza;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Traza de JDBC sin herramientas externas: envuelve las conexiones que entrega
+ * PoolDeConexiones en proxies que registran, para cada sentencia, el SQL, el
+ * numero de parametros, el tiempo de ejecucion y las filas leidas, y para cada
+ * transaccion (hasta su commit o rollback) las sentencias, los viajes a la
+ * base de datos y las filas.
+ * <p>
+ * Las sentencias que superan el umbral se avisan como lentas. Al cerrar la
+ * conexion, las sentencias y ResultSet que siguen abiertos se avisan como
+ * fugas, con la pila del punto donde se crearon.
+ * <p>
+ * Se activa con la propiedad de sistema pool.traza=true; el umbral de
+ * sentencia lenta se da en milisegundos con pool.traza.umbral (100 por
+ * defecto) y pool.traza.origen=false evita capturar la pila de creacion de
+ * cada sentencia. El detalle de cada sentencia y transaccion sale con el nivel
+ * DEBUG de este logger; los avisos, con WARN.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class TrazaJDBC {
+
+	static final Logger LOGGER = LoggerFactory.getLogger(TrazaJDBC.class);
+
+	public static final String PROPIEDAD = "pool.traza";
+	public static final String PROPIEDAD_UMBRAL = "pool.traza.umbral";
+	public static final String PROPIEDAD_ORIGEN = "pool.traza.origen";
+
+	private static final boolean ACTIVA = Boolean.getBoolean(PROPIEDAD);
+
+	static final long UMBRAL_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong(PROPIEDAD_UMBRAL, 100));
+
+	static final boolean ORIGEN = !"false".equalsIgnoreCase(System.getProperty(PROPIEDAD_ORIGEN));
+
+	// Totales de todas las conexiones trazadas
+	static final AtomicLong TRANSACCIONES = new AtomicLong();
+	static final AtomicLong VIAJES = new AtomicLong();
+	static final AtomicLong SENTENCIAS_LENTAS = new AtomicLong();
+	static final AtomicLong FUGAS_SENTENCIAS = new AtomicLong();
+	static final AtomicLong FUGAS_RESULTADOS = new AtomicLong();
+
+	private TrazaJDBC() {
+	}
+
+	public static boolean isActiva() {
+		return ACTIVA;
+	}
+
+	/**
+	 * Envuelve una conexion. Las sentencias y ResultSet que se obtengan de ella
+	 * quedan tambien envueltos.
+	 *
+	 * @param con conexion real
+	 * @return conexion trazada
+	 */
+	public static Connection envolver(Connection con) {
+		ConexionTrazada manejador = new ConexionTrazada(con);
+		Connection proxy = (Connection) Proxy.newProxyInstance(TrazaJDBC.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, manejador);
+		manejador.setProxy(proxy);
+		return proxy;
+	}
+
+	public static long getTransacciones() {
+		return TRANSACCIONES.get();
+	}
+
+	/** Viajes a la base de datos: ejecuciones, lecturas de mas filas, commit y rollback. */
+	public static long getViajes() {
+		return VIAJES.get();
+	}
+
+	public static long getSentenciasLentas() {
+		return SENTENCIAS_LENTAS.get();
+	}
+
+	public static long getFugasSentencias() {
+		return FUGAS_SENTENCIAS.get();
+	}
+
+	public static long getFugasResultados() {
+		return FUGAS_RESULTADOS.get();
+	}
+
+	/**
+	 * Resumen en una linea de los totales.
+	 *
+	 * @return resumen
+	 */
+	public static String resumen() {
+		long transacciones = getTransacciones();
+		return String.format("transacciones=%d viajes/transaccion=%.1f lentas=%d fugas sentencias=%d fugas resultsets=%d",
+				transacciones, transacciones == 0 ? 0.0 : (double) getViajes() / transacciones, getSentenciasLentas(),
+				getFugasSentencias(), getFugasResultados());
+	}
+}